@@ -0,0 +1,84 @@
+package rs.raf.pds.v4.z5.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import main.java.rs.raf.pds.v4.z5.CommandParser;
+import main.java.rs.raf.pds.v4.z5.messages.Command;
+import main.java.rs.raf.pds.v4.z5.messages.CreateRoom;
+import main.java.rs.raf.pds.v4.z5.messages.Edit;
+import main.java.rs.raf.pds.v4.z5.messages.GetMoreMessages;
+import main.java.rs.raf.pds.v4.z5.messages.GetRooms;
+import main.java.rs.raf.pds.v4.z5.messages.History;
+import main.java.rs.raf.pds.v4.z5.messages.Invite;
+import main.java.rs.raf.pds.v4.z5.messages.JoinRoom;
+import main.java.rs.raf.pds.v4.z5.messages.LeaveRoom;
+import main.java.rs.raf.pds.v4.z5.messages.Reply;
+
+/**
+ * Command handling cost. {@code stringDispatch} is the server's old
+ * handleCommand: upper-case, split and a startsWith chain on every command.
+ * Now the client parses once ({@code parse}) and the server only looks the
+ * handler up by class ({@code typedDispatch}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandBenchmark {
+
+    @Param({ "/JOIN Sport", "/REPLY 12 slažem se", "/EDIT 7 ispravka teksta", "/LEAVEROOM" })
+    public String input;
+
+    private Command command;
+    private final Map<Class<?>, ToIntFunction<Command>> handlers = new HashMap<>();
+
+    @Setup
+    public void setup() {
+        command = CommandParser.parse(input);
+        Class<?>[] types = { CreateRoom.class, GetRooms.class, JoinRoom.class, Invite.class, History.class,
+                GetMoreMessages.class, LeaveRoom.class, Reply.class, Edit.class };
+        for (int i = 0; i < types.length; i++) {
+            int id = i + 1;
+            handlers.put(types[i], c -> id);
+        }
+    }
+
+    @Benchmark
+    public int stringDispatch() {
+        String trimmed = input.trim();
+        String upper = trimmed.toUpperCase();
+        String[] parts = trimmed.split(" ");
+
+        if (upper.startsWith("/CREATE")) return parts.length >= 2 ? 1 : 0;
+        else if (upper.startsWith("/LISTROOMS")) return 2;
+        else if (upper.startsWith("/JOIN")) return parts.length >= 2 ? 3 : 0;
+        else if (upper.startsWith("/INVITE")) return parts.length >= 3 ? 4 : 0;
+        else if (upper.startsWith("/HISTORY")) return parts.length >= 2 ? 5 : 0;
+        else if (upper.startsWith("/GETMOREMESSAGES")) return 6;
+        else if (upper.startsWith("/LEAVEROOM")) return 7;
+        else if (upper.startsWith("/REPLY")) return parts.length >= 3 ? 8 : 0;
+        else if (upper.startsWith("/EDIT")) return parts.length >= 3 ? 9 : 0;
+        return 0;
+    }
+
+    @Benchmark
+    public Command parse() {
+        return CommandParser.parse(input);
+    }
+
+    @Benchmark
+    public int typedDispatch() {
+        return handlers.get(command.getClass()).applyAsInt(command);
+    }
+}
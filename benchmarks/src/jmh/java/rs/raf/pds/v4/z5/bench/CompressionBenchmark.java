@@ -0,0 +1,84 @@
+package rs.raf.pds.v4.z5.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryonet.KryoSerialization;
+
+import main.java.rs.raf.pds.v4.z5.messages.ChatMessage;
+import main.java.rs.raf.pds.v4.z5.messages.CompressedFrame;
+import main.java.rs.raf.pds.v4.z5.messages.HistoryBatch;
+import main.java.rs.raf.pds.v4.z5.messages.KryoUtil;
+import main.java.rs.raf.pds.v4.z5.server.EncodedFrame;
+import main.java.rs.raf.pds.v4.z5.server.FrameSerialization;
+
+/**
+ * Cost of sending a history page compressed: Deflate of the encoded
+ * HistoryBatch on the server and inflate + decode on the client, against
+ * the plain frame. Frame sizes are printed in setup; pages below
+ * ChatServer.COMPRESSION_THRESHOLD are sent as they are.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompressionBenchmark {
+
+    @Param({ "1", "5", "20" })
+    public int messages;
+
+    private FrameSerialization serialization;
+    private Kryo clientKryo;
+    private HistoryBatch batch;
+    private CompressedFrame packed;
+
+    @Setup
+    public void setup() {
+        serialization = new FrameSerialization(KryoUtil::registerKryoClasses);
+        clientKryo = new KryoSerialization().getKryo();
+        KryoUtil.registerKryoClasses(clientKryo);
+        ChatMessage[] page = new ChatMessage[messages];
+        for (int i = 0; i < messages; i++) {
+            page[i] = new ChatMessage("User" + (i % 7), "Poruka " + i + ": sastanak je pomeren za petak u 10h, sala 3.", "PublicChatRoom");
+            page[i].setIndex(1000 + i);
+        }
+        batch = new HistoryBatch("PublicChatRoom", page, 1000);
+        byte[] frame = serialization.encode(batch).bytes();
+        Deflater deflater = CompressedFrame.newDeflater();
+        packed = CompressedFrame.pack(frame, deflater);
+        deflater.end();
+        System.out.printf("%n%d messages: plain %d B, deflate %s%n", messages, frame.length,
+                packed == null ? "not smaller" : serialization.encode(packed).length() + " B");
+    }
+
+    @TearDown
+    public void tearDown() {
+        serialization.close();
+    }
+
+    @Benchmark
+    public EncodedFrame encode() {
+        return serialization.encode(batch);
+    }
+
+    // novi frame svaki put: compress() inače vraća zapamćen rezultat
+    @Benchmark
+    public EncodedFrame encodeAndCompress() {
+        return serialization.compress(serialization.encode(batch));
+    }
+
+    @Benchmark
+    public Object unpack() {
+        return packed == null ? null : packed.unpack(clientKryo);
+    }
+}
@@ -0,0 +1,120 @@
+package rs.raf.pds.v4.z5.bench;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.esotericsoftware.kryonet.Connection;
+
+import main.java.rs.raf.pds.v4.z5.server.RoomIndex;
+
+/**
+ * Recipient selection for one room broadcast with users spread evenly over
+ * rooms: the old full scan of userActiveRoomsMap, the String-keyed index of
+ * connection sets that replaced it, and RoomIndex over interned int ids.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FanoutBenchmark {
+
+    /** Connection that only counts sends, so the benchmark measures selection cost. */
+    static class CountingConnection extends Connection {
+        long sent;
+
+        @Override
+        public boolean isConnected() { return true; }
+
+        @Override
+        public int sendTCP(Object object) {
+            sent++;
+            return 0;
+        }
+    }
+
+    @Param({ "10000" })
+    public int users;
+
+    @Param({ "1000" })
+    public int rooms;
+
+    private final ConcurrentMap<String, Connection> userConnectionMap = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> userActiveRoomsMap = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<Connection>> stringIndex = new ConcurrentHashMap<>();
+    private final RoomIndex index = new RoomIndex();
+    private String[] roomNames;
+    private int next;
+
+    @Setup
+    public void setup() {
+        roomNames = new String[rooms];
+        for (int r = 0; r < rooms; r++) roomNames[r] = "room" + r;
+        for (int i = 0; i < users; i++) {
+            String user = "user" + i;
+            String room = roomNames[i % rooms];
+            Connection conn = new CountingConnection();
+            userConnectionMap.put(user, conn);
+            userActiveRoomsMap.put(user, room);
+            stringIndex.computeIfAbsent(room, k -> ConcurrentHashMap.newKeySet()).add(conn);
+            index.enter(i, conn, i % rooms);
+        }
+    }
+
+    @Benchmark
+    public long fullScan() {
+        String room = roomNames[nextRoom()];
+        long sent = 0;
+        for (Map.Entry<String, String> e : userActiveRoomsMap.entrySet()) {
+            if (room.equals(e.getValue())) {
+                Connection c = userConnectionMap.get(e.getKey());
+                if (c != null && c.isConnected()) {
+                    c.sendTCP(room);
+                    sent++;
+                }
+            }
+        }
+        return sent;
+    }
+
+    @Benchmark
+    public long stringIndex() {
+        String room = roomNames[nextRoom()];
+        long sent = 0;
+        for (Connection c : stringIndex.get(room)) {
+            if (c.isConnected()) {
+                c.sendTCP(room);
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    @Benchmark
+    public long roomIndex() {
+        int room = nextRoom();
+        String name = roomNames[room];
+        long[] sent = new long[1];
+        index.forEachLive(room, c -> {
+            c.sendTCP(name);
+            sent[0]++;
+        });
+        return sent[0];
+    }
+
+    private int nextRoom() {
+        int r = next++;
+        if (next == rooms) next = 0;
+        return r;
+    }
+}
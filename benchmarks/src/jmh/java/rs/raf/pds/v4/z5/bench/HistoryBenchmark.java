@@ -0,0 +1,81 @@
+package rs.raf.pds.v4.z5.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import main.java.rs.raf.pds.v4.z5.messages.ChatMessage;
+import main.java.rs.raf.pds.v4.z5.server.RoomHistory;
+
+/**
+ * History append and trim under contention: three writers append to one room
+ * while a reader takes the last 10 messages, as a joining user would. The
+ * baseline is the old list trimmed with remove(0), guarded by a lock since it
+ * is not thread-safe on its own; the candidate is the lock-free RoomHistory ring.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HistoryBenchmark {
+
+    @Param({ "10", "1000" })
+    public int capacity;
+
+    private RoomHistory ring;
+    private List<ChatMessage> list;
+    private ChatMessage message;
+
+    @Setup
+    public void setup() {
+        ring = new RoomHistory(capacity);
+        list = new ArrayList<>();
+        message = new ChatMessage("User1", "Hej svima", "PublicChatRoom");
+    }
+
+    @Benchmark
+    @Group("lockedList")
+    @GroupThreads(3)
+    public int lockedListAppend() {
+        ChatMessage msg = new ChatMessage(message.getUser(), message.getTxt(), message.getChatRoom());
+        synchronized (list) {
+            list.add(msg);
+            if (list.size() > capacity) list.remove(0);
+            msg.setIndex(list.size());
+            return list.size();
+        }
+    }
+
+    @Benchmark
+    @Group("lockedList")
+    @GroupThreads(1)
+    public List<ChatMessage> lockedListLast() {
+        synchronized (list) {
+            return new ArrayList<>(list.subList(Math.max(0, list.size() - 10), list.size()));
+        }
+    }
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(3)
+    public int ringAppend() {
+        return ring.append(new ChatMessage(message.getUser(), message.getTxt(), message.getChatRoom()));
+    }
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(1)
+    public List<ChatMessage> ringLast() {
+        return ring.last(10);
+    }
+}
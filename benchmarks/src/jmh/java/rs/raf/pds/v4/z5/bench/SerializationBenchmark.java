@@ -0,0 +1,107 @@
+package rs.raf.pds.v4.z5.bench;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import main.java.rs.raf.pds.v4.z5.messages.ChatMessage;
+import main.java.rs.raf.pds.v4.z5.messages.KryoUtil;
+import main.java.rs.raf.pds.v4.z5.messages.PrivateMessage;
+
+/**
+ * Kryo round trip of ChatMessage / PrivateMessage: the previous encoding
+ * (default field serializer, ISO string timestamps) against the compact
+ * serializers registered by KryoUtil. Frame sizes are printed in setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerializationBenchmark {
+
+    @Param({ "ChatMessage", "PrivateMessage" })
+    public String type;
+
+    private Kryo legacy;
+    private Kryo compact;
+    private Object message;
+    private final Output output = new Output(256, -1);
+    private final Input input = new Input();
+
+    @Setup
+    public void setup() {
+        legacy = legacyKryo();
+        compact = new Kryo();
+        compact.setReferences(false);
+        compact.setRegistrationRequired(true);
+        KryoUtil.registerKryoClasses(compact);
+
+        if (type.equals("ChatMessage")) {
+            ChatMessage chat = new ChatMessage("User1", "Hej svima, ko ide na ručak?", "PublicChatRoom");
+            chat.setIndex(1234);
+            message = chat;
+        } else {
+            message = new PrivateMessage("User1", "Vidimo se u 12.", "User2");
+        }
+        System.out.printf("%n%s frame: legacy %d B, compact %d B%n", type, size(legacy), size(compact));
+    }
+
+    @Benchmark
+    public Object legacyRoundTrip() {
+        return roundTrip(legacy);
+    }
+
+    @Benchmark
+    public Object compactRoundTrip() {
+        return roundTrip(compact);
+    }
+
+    private Object roundTrip(Kryo kryo) {
+        output.clear();
+        kryo.writeClassAndObject(output, message);
+        input.setBuffer(output.getBuffer(), 0, output.position());
+        return kryo.readClassAndObject(input);
+    }
+
+    private int size(Kryo kryo) {
+        output.clear();
+        kryo.writeClassAndObject(output, message);
+        return output.position();
+    }
+
+    // registracija kakva je bila pre ChatMessageSerializer-a
+    private static Kryo legacyKryo() {
+        Kryo kryo = new Kryo();
+        kryo.setReferences(false);
+        kryo.register(String[].class);
+        kryo.register(ArrayList.class);
+        kryo.register(ChatMessage.class);
+        kryo.register(PrivateMessage.class);
+        kryo.register(LocalDateTime.class, new Serializer<LocalDateTime>() {
+            @Override
+            public void write(Kryo kryo, Output output, LocalDateTime obj) {
+                output.writeString(obj == null ? null : obj.toString());
+            }
+
+            @Override
+            public LocalDateTime read(Kryo kryo, Input input, Class<LocalDateTime> type) {
+                String value = input.readString();
+                return value == null ? null : LocalDateTime.parse(value);
+            }
+        });
+        return kryo;
+    }
+}
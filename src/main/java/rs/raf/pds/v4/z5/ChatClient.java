@@ -1,18 +1,27 @@
 package main.java.rs.raf.pds.v4.z5;
 
+import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryonet.Client;
 import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.KryoSerialization;
 import com.esotericsoftware.kryonet.Listener;
-import javafx.application.Platform;
 import main.java.rs.raf.pds.v4.z5.messages.*;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 public class ChatClient {
 
     public static final int DEFAULT_CLIENT_READ_BUFFER_SIZE = 1_000_000;
     public static final int DEFAULT_CLIENT_WRITE_BUFFER_SIZE = 1_000_000;
+    public static final int CONNECT_TIMEOUT_MS = 3000;
+    public static final long RECONNECT_BASE_DELAY_MS = 500;
+    public static final long RECONNECT_MAX_DELAY_MS = 30_000;
 
     private final Client client;
     private final String hostName;
@@ -21,6 +30,29 @@ public class ChatClient {
     private final ChatMessageCallback callback;
 
     private String activeRoom = "GLOBAL";
+    // kursor za stranicenje istorije: indeks najstarije primljene poruke po sobi (0 = nema starijih)
+    private final Map<String, Integer> historyCursors = new ConcurrentHashMap<>();
+    // korisnici aktivne sobe: snimak sa servera plus delte; menja se samo na update niti
+    private final Set<String> roomUsers = new LinkedHashSet<>();
+    private String usersRoom;
+    private long usersVersion;
+    private boolean usersResync;
+    private boolean usersPartial; // stigao je ListUsersPart, kraj snimka još nije
+    // raspakuje CompressedFrame; koristi se samo na update niti, odvojeno od Kryo-a veze
+    private final Kryo frameKryo = new KryoSerialization().getKryo();
+    private final HistoryCache cache; // null: bez keša
+
+    // nastavak sesije posle prekida veze
+    private volatile String sessionToken;
+    private final Map<String, Integer> lastSeen = new ConcurrentHashMap<>();
+    private final Set<String> joinedRooms = Collections.synchronizedSet(new LinkedHashSet<>(List.of("PublicChatRoom")));
+    private final ScheduledExecutorService reconnector = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "chat-reconnect");
+        t.setDaemon(true);
+        return t;
+    });
+    private int reconnectAttempt; // samo na reconnector niti
+    private volatile boolean stopped;
 
     public ChatClient(String hostName, int portNumber, String userName, ChatMessageCallback callback) {
         this.client = new Client(DEFAULT_CLIENT_WRITE_BUFFER_SIZE, DEFAULT_CLIENT_READ_BUFFER_SIZE);
@@ -28,36 +60,96 @@ public class ChatClient {
         this.portNumber = portNumber;
         this.userName = userName;
         this.callback = callback;
+        this.cache = HistoryCache.fromSystemProperties(hostName, portNumber, userName);
 
         KryoUtil.registerKryoClasses(client.getKryo());
+        KryoUtil.registerKryoClasses(frameKryo);
         registerListener();
     }
 
+    /** Called on the client's network thread, in arrival order; a GUI hands the events to its own thread. */
     public interface ChatMessageCallback {
         void handleMessage(String message);
+        /** A room message: new, edited, or repeated by a history page; keyed by its room and index. */
+        void handleChatMessage(ChatMessage message);
         void handleUserListUpdate(List<String> users, String room);
         void handleMessageUpdate(ChatMessage oldMessage, ChatMessage message, String room);
         void handleRoomListUpdate(List<String> rooms);
+        /** The server put {@code user}'s session in another room, on reconnect. */
+        default void handleActiveRoomChange(String user, String room) {
+        }
+        /** The server renumbered the room; indexes seen before this call no longer name the same messages. */
+        default void handleHistoryReset(String room) {
+        }
     }
 
     private void registerListener() {
         client.addListener(new Listener() {
             @Override
             public void connected(Connection connection) {
-                client.sendTCP(new Login(userName));
+                // -Dchat.compression=false: server šalje sve nekompresovano
+                boolean compression = !"false".equalsIgnoreCase(System.getProperty("chat.compression"));
+                String[] codecs = compression ? new String[] { CompressedFrame.DEFLATE } : null;
+                String token = sessionToken;
+                client.sendTCP(token == null ? new Login(userName, codecs) : resume(codecs, token));
             }
 
             @Override
             public void disconnected(Connection connection) {
+                if (stopped) return;
                 printToGUI("⚠️ Disconnected from server.");
+                if (sessionToken != null) reconnector.execute(ChatClient.this::scheduleReconnect);
             }
 
             @Override
             public void received(Connection connection, Object object) {
+                if (object instanceof CompressedFrame frame) object = frame.unpack(frameKryo);
+
                 if (object instanceof ChatMessage msg) {
-                    String formatted = "(" + msg.getIndex() + ") " + msg.getFormattedTimestamp()
-                            + " (" + msg.getChatRoom() + ") " + msg.getUser() + ": " + msg.getTxt();
-                    printToGUI(formatted);
+                    seen(msg);
+                    callback.handleChatMessage(msg);
+                }
+
+                else if (object instanceof HistoryBatch batch) {
+                    if (batch.isReset()) {
+                        // server je izgubio ili prenumerisao istoriju: keširani indeksi više ne važe
+                        if (cache != null) cache.clear(batch.getRoom());
+                        lastSeen.remove(batch.getRoom());
+                        printToGUI("[Server] ♻️ History of '" + batch.getRoom() + "' was reset on the server; cached messages dropped.");
+                        callback.handleHistoryReset(batch.getRoom());
+                    }
+                    historyCursors.put(batch.getRoom(), batch.getBefore());
+                    printToGUI("[Server] 📜 " + batch.getMessages().length + " messages from '" + batch.getRoom() + "':");
+                    for (ChatMessage msg : batch.getMessages()) {
+                        seen(msg);
+                        callback.handleChatMessage(msg);
+                    }
+                }
+
+                else if (object instanceof ResumeBatch batch) {
+                    activeRoom = batch.getRoom();
+                    callback.handleActiveRoomChange(userName, activeRoom);
+                    int missed = 0;
+                    for (HistoryBatch room : batch.getRooms()) missed += room.getMessages().length;
+                    printToGUI("[Server] 🔄 Reconnected to '" + batch.getRoom() + "', " + missed + " missed messages:");
+                    for (HistoryBatch room : batch.getRooms()) {
+                        for (ChatMessage msg : room.getMessages()) {
+                            seen(msg);
+                            callback.handleChatMessage(msg);
+                        }
+                        if (room.getBefore() > 0) {
+                            historyCursors.put(room.getRoom(), room.getBefore());
+                            printToGUI("[Server] ⚠️ Older missed messages of '" + room.getRoom()
+                                    + "' did not fit; use /MORE there to load them.");
+                        }
+                    }
+                }
+
+                else if (object instanceof SessionToken token) {
+                    boolean expired = !token.isResumed() && sessionToken != null;
+                    sessionToken = token.getToken();
+                    if (token.getToken() == null) printToGUI("[Server] ⚠️ Logged in from another place; not reconnecting.");
+                    else if (expired) startOver();
                 }
 
                 else if (object instanceof PrivateMessage pm) {
@@ -70,14 +162,39 @@ public class ChatClient {
                     printToGUI(timestamp + " 📩 [Private] " + pm.getUser() + " → you: " + pm.getTxt());
                 }
 
+                else if (object instanceof InboxBatch batch) {
+                    printToGUI("[Server] 📬 " + batch.getMessages().length + " private messages while you were away"
+                            + (batch.getDropped() > 0 ? " (" + batch.getDropped() + " older ones dropped):" : ":"));
+                    for (PrivateMessage pm : batch.getMessages()) {
+                        String timestamp = pm.getTimestamp() == null ? "" : pm.getFormattedTimestamp();
+                        printToGUI(timestamp + " 📩 [Private] " + pm.getUser() + " → you: " + pm.getTxt());
+                    }
+                }
+
+                else if (object instanceof MulticastMessage mm) {
+                    String timestamp = mm.getTimestamp() == null ? "" : mm.getFormattedTimestamp();
+                    printToGUI(timestamp + " 📡 [Group] " + mm.getUser() + " → " + String.join(", ", mm.getRecipients())
+                            + ": " + mm.getTxt());
+                }
+
                 else if (object instanceof ListUsers lu) {
-                    callback.handleUserListUpdate(Arrays.asList(lu.getUsers()), activeRoom);
+                    // nastavak istog snimka se dodaje; bilo šta drugo počinje listu ispočetka
+                    boolean continued = usersPartial && Objects.equals(lu.getRoom(), usersRoom) && lu.getVersion() == usersVersion;
+                    if (!continued) roomUsers.clear();
+                    usersRoom = lu.getRoom();
+                    usersVersion = lu.getVersion();
+                    usersResync = false;
+                    roomUsers.addAll(Arrays.asList(lu.getUsers()));
+                    usersPartial = lu instanceof ListUsersPart;
+                    if (!usersPartial) callback.handleUserListUpdate(new ArrayList<>(roomUsers), activeRoom);
+                }
+
+                else if (object instanceof PresenceDelta delta) {
+                    applyPresence(delta);
                 }
 
                 else if (object instanceof ListRooms lr) {
-                    Platform.runLater(() ->
-                            callback.handleRoomListUpdate(Arrays.asList(lr.getRooms()))
-                    );
+                    callback.handleRoomListUpdate(Arrays.asList(lr.getRooms()));
                 }
 
                 else if (object instanceof InfoMessage im) {
@@ -93,16 +210,86 @@ public class ChatClient {
         });
     }
 
+    // server nije prihvatio nastavak (npr. istekao token): nova sesija je samo u PublicChatRoom
+    private void startOver() {
+        joinedRooms.retainAll(List.of("PublicChatRoom"));
+        joinedRooms.add("PublicChatRoom");
+        lastSeen.clear();
+        historyCursors.clear();
+        activeRoom = "PublicChatRoom";
+        callback.handleActiveRoomChange(userName, activeRoom);
+        printToGUI("[Server] ⚠️ Session could not be resumed; logged in again to PublicChatRoom.");
+    }
+
+    private void seen(ChatMessage msg) {
+        if (cache != null) cache.put(msg);
+        if (msg.getChatRoom() != null && msg.getIndex() > 0) lastSeen.merge(msg.getChatRoom(), msg.getIndex(), Math::max);
+    }
+
+    // sobe u kojima je korisnik, aktivna prva, sa poslednjom viđenom porukom svake
+    private Resume resume(String[] codecs, String token) {
+        List<String> rooms;
+        synchronized (joinedRooms) {
+            rooms = new ArrayList<>(joinedRooms);
+        }
+        String active = rooms.contains(activeRoom) ? activeRoom : "PublicChatRoom";
+        rooms.remove(active);
+        rooms.add(0, active);
+        int[] seen = new int[rooms.size()];
+        for (int i = 0; i < seen.length; i++) seen[i] = lastSeen.getOrDefault(rooms.get(i), 0);
+        return new Resume(userName, codecs, token, rooms.toArray(new String[0]), seen);
+    }
+
+    /**
+     * Tries to reconnect after a random delay of up to {@value #RECONNECT_BASE_DELAY_MS} ms,
+     * doubled on every failed attempt up to {@value #RECONNECT_MAX_DELAY_MS} ms, so clients
+     * dropped together by a server restart do not all come back in the same moment.
+     */
+    private void scheduleReconnect() {
+        if (stopped) return;
+        long cap = Math.min(RECONNECT_MAX_DELAY_MS, RECONNECT_BASE_DELAY_MS << Math.min(reconnectAttempt, 16));
+        reconnectAttempt++;
+        reconnector.schedule(() -> {
+            if (stopped || client.isConnected()) return;
+            try {
+                // reconnect ne sme da se zove sa update niti, zato posebna nit
+                client.reconnect(CONNECT_TIMEOUT_MS);
+                reconnectAttempt = 0;
+            } catch (IOException e) {
+                scheduleReconnect();
+            }
+        }, ThreadLocalRandom.current().nextLong(cap + 1), TimeUnit.MILLISECONDS);
+    }
+
+    private void applyPresence(PresenceDelta delta) {
+        // delta posle nedovršenog snimka: snimak čiji je kraj istisnut iz reda prati noviji
+        if (usersPartial || !delta.getRoom().equals(usersRoom) || delta.getVersion() <= usersVersion) return;
+        if (delta.getVersion() != usersVersion + 1) {
+            // propuštena delta: traži se novi snimak, jednom
+            if (!usersResync) client.sendTCP(new GetUsers());
+            usersResync = true;
+            return;
+        }
+        usersVersion = delta.getVersion();
+        roomUsers.removeAll(Arrays.asList(delta.getLeft()));
+        roomUsers.addAll(Arrays.asList(delta.getJoined()));
+        callback.handleUserListUpdate(new ArrayList<>(roomUsers), activeRoom);
+    }
+
+    // GUI sam prelazi na FX nit (jednom po frejmu); isti red kao handleChatMessage, pa redosled ostaje
     private void printToGUI(String msg) {
-        Platform.runLater(() -> callback.handleMessage(msg));
+        callback.handleMessage(msg);
     }
 
     public void start() throws IOException {
         client.start();
-        client.connect(3000, hostName, portNumber);
+        client.connect(CONNECT_TIMEOUT_MS, hostName, portNumber);
     }
 
     public void stop() {
+        stopped = true;
+        reconnector.shutdownNow();
+        if (cache != null) cache.close();
         if (client.isConnected()) {
             client.close();
             printToGUI("🔌 Disconnected.");
@@ -117,14 +304,20 @@ public class ChatClient {
         if (input == null || input.trim().isEmpty()) return;
 
         String trimmed = input.trim();
-        String upper = trimmed.toUpperCase(); 
 
-        if (upper.startsWith("/EDIT") || upper.startsWith("/REPLY")) {
-            client.sendTCP(trimmed);  
+        // --- Komande ---
+        if (trimmed.startsWith("/")) {
+            Command command = parseCommand(trimmed);
+            if (command instanceof JoinRoom join) {
+                for (ChatMessage msg : joinRoom(join.getRoomName())) callback.handleChatMessage(msg);
+            } else if (command instanceof LeaveRoom) {
+                leaveRoom();
+            } else if (command != null) {
+                client.sendTCP(command);
+            }
             return;
         }
 
-
         // --- Privatna poruka ---
         if (trimmed.startsWith("@") && !trimmed.startsWith("@{")) {
             int space = trimmed.indexOf(' ');
@@ -138,27 +331,13 @@ public class ChatClient {
 
         // --- Multicast poruka ---
         if (trimmed.startsWith("@{") && trimmed.contains("}")) {
-            ChatMessage multicastMsg = new ChatMessage(userName, trimmed, activeRoom);
-            client.sendTCP(multicastMsg);
-            printToGUI("📡 Sent multicast: " + trimmed);
-            return;
-        }
-
-        // --- LEAVE ROOM ---
-        if (upper.startsWith("/LEAVEROOM")) {
-            client.sendTCP(upper);
-            return;
-        }
-
-        // --- Komande ---
-        if (upper.startsWith("/CREATE") ||
-            upper.startsWith("/LISTROOMS") ||
-            upper.startsWith("/JOIN") ||
-            upper.startsWith("/ROOM") ||
-            upper.startsWith("/INVITE") ||
-            upper.startsWith("/MYROOMS") ||
-            upper.startsWith("/HISTORY")) {
-        	client.sendTCP(trimmed);
+            int close = trimmed.indexOf('}');
+            String text = trimmed.substring(close + 1).trim();
+            if (text.isEmpty()) {
+                printToGUI("⚠️ Missing message text.");
+                return;
+            }
+            sendMulticastMessage(Arrays.asList(trimmed.substring(2, close).split(",")), text);
             return;
         }
 
@@ -167,6 +346,26 @@ public class ChatClient {
         client.sendTCP(msg);
     }
 
+    /** Pretvara tekstualnu komandu u tipiziranu poruku; vraća null i ispisuje grešku ako je neispravna */
+    private Command parseCommand(String input) {
+        Command command;
+        try {
+            command = CommandParser.parse(input);
+        } catch (IllegalArgumentException e) {
+            printToGUI("⚠️ " + e.getMessage());
+            return null;
+        }
+        if (command instanceof GetMoreMessages) {
+            Integer cursor = historyCursors.get(activeRoom);
+            if (cursor != null && cursor == 0) {
+                printToGUI("⚠️ No older messages in '" + activeRoom + "'.");
+                return null;
+            }
+            command = new GetMoreMessages(cursor == null ? 0 : cursor);
+        }
+        return command;
+    }
+
     /** Slanje privatne poruke */
     private void sendPrivateMessage(String to, String text) {
         PrivateMessage pm = new PrivateMessage(userName, text, to);
@@ -176,13 +375,16 @@ public class ChatClient {
 
     /** Slanje multicast poruke (grupi korisnika) */
     public void sendMulticastMessage(List<String> recipients, String text) {
-        StringJoiner joiner = new StringJoiner(", ");
-        for (String u : recipients) joiner.add(u.trim());
-
-        String messageText = "@" + joiner + " " + text;
-        ChatMessage groupMsg = new ChatMessage(userName, messageText, activeRoom);
-        client.sendTCP(groupMsg);
-        printToGUI("📡 You → [" + joiner + "]: " + text);
+        List<String> names = new ArrayList<>();
+        for (String u : recipients) {
+            if (!u.isBlank()) names.add(u.trim());
+        }
+        if (names.isEmpty()) {
+            printToGUI("⚠️ Missing recipients.");
+            return;
+        }
+        client.sendTCP(new MulticastMessage(userName, text, names.toArray(new String[0])));
+        printToGUI("📡 You → [" + String.join(", ", names) + "]: " + text);
     }
 
 
@@ -190,20 +392,42 @@ public class ChatClient {
     /** Kreira sobu preko RPC poziva */
     public void createRoom(String roomName) {
         if (roomName == null || roomName.isEmpty()) return;
-        client.sendTCP("/CREATE " + roomName);
+        client.sendTCP(new CreateRoom(roomName));
     }
 
     /** Vraća listu svih soba */
     public List<String> getAllRooms() {
-        client.sendTCP("/LISTROOMS");
+        client.sendTCP(new GetRooms());
         return new ArrayList<>();
     }
 
-    /** Pridružuje korisnika sobi i ažurira aktivnu sobu */
-    public List<String> joinRoom(String roomName) {
+    /** Odgovor na poruku sa datim indeksom u aktivnoj sobi */
+    public void replyTo(int index, String text) {
+        client.sendTCP(new Reply(index, text));
+    }
+
+    /** Izmena sopstvene poruke sa datim indeksom u aktivnoj sobi */
+    public void editMessage(int index, String text) {
+        client.sendTCP(new Edit(index, text));
+    }
+
+    /** Napušta aktivnu sobu */
+    public void leaveRoom() {
+        joinedRooms.remove(activeRoom);
+        client.sendTCP(new LeaveRoom());
+    }
+
+    /**
+     * Joins the room and returns what the cache already has of it, oldest
+     * first; the server then sends only the messages after the newest one.
+     */
+    public List<ChatMessage> joinRoom(String roomName) {
         if (roomName == null || roomName.isEmpty()) return new ArrayList<>();
-        client.sendTCP("/JOIN " + roomName);
+        List<ChatMessage> cached = cache == null ? new ArrayList<>() : cache.messages(roomName);
+        int since = cached.isEmpty() ? 0 : cached.get(cached.size() - 1).getIndex();
+        client.sendTCP(new JoinRoom(roomName, since));
+        joinedRooms.add(roomName);
         this.activeRoom = roomName;
-        return new ArrayList<>();
+        return cached;
     }
 }
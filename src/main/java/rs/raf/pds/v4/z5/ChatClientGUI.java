@@ -1,5 +1,6 @@
 package main.java.rs.raf.pds.v4.z5;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
@@ -12,14 +13,33 @@ import main.java.rs.raf.pds.v4.z5.messages.ChatMessage;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ChatClientGUI extends Application implements ChatClient.ChatMessageCallback {
 
+    /** Inbound lines applied per frame; a bigger burst spreads over the next frames. */
+    public static final int MAX_LINES_PER_PULSE = 1000;
+
     private String activeUsername = null;
     private final Map<String, ChatClient> clients = new HashMap<>();
     private ChatClient activeClient;
 
-    private ListView<String> messagesList;
+    private final ChatTranscript transcript = ChatTranscript.fromSystemProperties();
+    private ListView<ChatTranscript.Line> messagesList;
+    // mrežne niti samo stavljaju u red; FX nit sve primenjuje jednom po pulsu
+    private final Queue<Object> inbound = new ConcurrentLinkedQueue<>();
+    // u redu između poruka, da reset važi tačno od poruka koje su stigle posle njega
+    private record HistoryReset(String room) {
+    }
+    private final AtomicReference<List<String>> pendingUsers = new AtomicReference<>();
+    private final AtomicReference<List<String>> pendingRooms = new AtomicReference<>();
+    private final AnimationTimer pulse = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            applyInbound();
+        }
+    };
     private TextField inputField;
     private ListView<String> userList;
     private ListView<String> roomList;
@@ -35,20 +55,21 @@ public class ChatClientGUI extends Application implements ChatClient.ChatMessage
 
     @Override
     public void start(Stage stage) {
-        messagesList = new ListView<>();
+        messagesList = new ListView<>(transcript.lines());
         messagesList.setFocusTraversable(false);
 
         messagesList.setCellFactory(list -> {
-            ListCell<String> cell = new ListCell<>() {
+            ListCell<ChatTranscript.Line> cell = new ListCell<>() {
                 @Override
-                protected void updateItem(String msg, boolean empty) {
-                    super.updateItem(msg, empty);
-                    if (empty || msg == null) {
+                protected void updateItem(ChatTranscript.Line line, boolean empty) {
+                    super.updateItem(line, empty);
+                    if (empty || line == null) {
                         setText(null);
                         setGraphic(null);
                         setStyle("");
                         return;
                     }
+                    String msg = line.getText();
 
                     if (msg.contains("💬 Reply to")) {
                         String[] parts = msg.split("\n", 2);
@@ -102,11 +123,11 @@ public class ChatClientGUI extends Application implements ChatClient.ChatMessage
 
             // --- REPLY ---
             replyItem.setOnAction(e -> {
-                String selected = cell.getItem();
-                if (selected == null) return;
+                ChatTranscript.Line selected = cell.getItem();
+                if (selected == null || selected.getMessage() == null) return;
 
-                int index = extractMessageIndex(selected);
-                String cleanText = selected.replaceAll("^\\(\\d+\\).*?:\\s*", "").trim();
+                int index = selected.getIndex();
+                String cleanText = selected.getMessage().getTxt().trim();
 
                 Dialog<String> replyDialog = new Dialog<>();
                 replyDialog.setTitle("Reply to Message");
@@ -120,24 +141,25 @@ public class ChatClientGUI extends Application implements ChatClient.ChatMessage
                 replyDialog.setResultConverter(button -> button == ButtonType.OK ? replyField.getText() : null);
                 replyDialog.showAndWait().ifPresent(replyText -> {
                     if (replyText != null && !replyText.isBlank()) {
-                        activeClient.processUserInput("/REPLY " + index + " " + replyText, activeRoom);
+                        activeClient.replyTo(index, replyText);
                     }
                 });
             });
 
             // --- EDIT ---
             editItem.setOnAction(e -> {
-                String selected = cell.getItem();
-                if (selected == null) return;
+                ChatTranscript.Line selected = cell.getItem();
+                if (selected == null || selected.getMessage() == null) return;
 
-                boolean isMyMessage = selected.contains("] (" + activeRoom + ") " + activeUsername + ":");
+                ChatMessage original = selected.getMessage();
+                boolean isMyMessage = activeRoom.equals(selected.getRoom()) && original.getUser().equals(activeUsername);
                 if (!isMyMessage) {
                     showError("⚠️ You can only edit your own messages.");
                     return;
                 }
 
-                String oldText = selected.replaceAll(".*?:\\s*", "").replace("(Edited)", "").trim();
-                int index = extractMessageIndex(selected);
+                String oldText = original.getTxt().replace("(Edited)", "").trim();
+                int index = selected.getIndex();
 
                 TextInputDialog editDialog = new TextInputDialog(oldText);
                 editDialog.setTitle("Edit Message");
@@ -146,23 +168,8 @@ public class ChatClientGUI extends Application implements ChatClient.ChatMessage
 
                 Optional<String> result = editDialog.showAndWait();
                 result.ifPresent(newText -> {
-                    if (!newText.equals(oldText)) {
-
-                        activeClient.processUserInput("/EDIT " + index + " " + newText, activeRoom);
-
-
-                        Platform.runLater(() -> {
-                            List<String> items = new ArrayList<>(messagesList.getItems());
-                            for (int i = 0; i < items.size(); i++) {
-                                if (items.get(i).contains("(" + index + ")")) {
-                                    String updated = items.get(i).replace(oldText, newText + " (Edited)");
-                                    items.set(i, updated);
-                                    break;
-                                }
-                            }
-                            messagesList.getItems().setAll(items);
-                        });
-                    }
+                    // server vraća izmenjenu poruku sa istim indeksom; transcript menja taj red
+                    if (!newText.equals(oldText)) activeClient.editMessage(index, newText);
                 });
             });
 
@@ -282,6 +289,7 @@ public class ChatClientGUI extends Application implements ChatClient.ChatMessage
         stage.setScene(scene);
         stage.show();
 
+        pulse.start();
         connectUser(initialUser);
         userList.getSelectionModel().selectFirst();
         activeRoom = "PublicChatRoom";
@@ -302,7 +310,7 @@ public class ChatClientGUI extends Application implements ChatClient.ChatMessage
         result.ifPresent(name -> {
             activeClient.createRoom(name);
             Platform.runLater(() -> {
-                messagesList.getItems().add("Room '" + name + "' created successfully.");
+                transcript.add("Room '" + name + "' created successfully.");
                 refreshRooms();
             });
         });
@@ -318,10 +326,10 @@ public class ChatClientGUI extends Application implements ChatClient.ChatMessage
             showError("Please select a room from the list first.");
             return;
         }
-        List<String> lastMessages = activeClient.joinRoom(selectedRoom);
+        List<ChatMessage> lastMessages = activeClient.joinRoom(selectedRoom);
         Platform.runLater(() -> {
-            messagesList.getItems().add("Welcome to the room '" + selectedRoom + "'.");
-            messagesList.getItems().addAll(lastMessages);
+            transcript.add("Welcome to the room '" + selectedRoom + "'.");
+            transcript.addAll(lastMessages);
         });
         activeRoom = selectedRoom;
         activeRoomLabel.setText("Active room: " + selectedRoom);
@@ -333,8 +341,9 @@ public class ChatClientGUI extends Application implements ChatClient.ChatMessage
             showError("No active room to leave.");
             return;
         }
-        activeClient.processUserInput("/LEAVEROOM", activeRoom);
-        Platform.runLater(() -> messagesList.getItems().add("🚪 You have left the room '" + activeRoom + "'."));
+        activeClient.leaveRoom();
+        String leftRoom = activeRoom;
+        Platform.runLater(() -> transcript.add("🚪 You have left the room '" + leftRoom + "'."));
         activeRoom = "";
         activeRoomLabel.setText("Active room: (none)");
         roomList.getSelectionModel().clearSelection();
@@ -372,67 +381,76 @@ public class ChatClientGUI extends Application implements ChatClient.ChatMessage
         inputField.clear();
     }
 
-    private int extractMessageIndex(String messageText) {
-        try {
-            if (messageText.startsWith("(")) {
-                int end = messageText.indexOf(")");
-                return Integer.parseInt(messageText.substring(1, end));
+    /**
+     * Runs once per frame on the FX thread: everything that arrived since the
+     * last frame goes to the transcript as one batch, and of several user or
+     * room lists only the newest is shown.
+     */
+    private void applyInbound() {
+        if (!inbound.isEmpty()) {
+            List<Object> batch = new ArrayList<>();
+            Object entry;
+            int taken = 0;
+            while (taken++ < MAX_LINES_PER_PULSE && (entry = inbound.poll()) != null) {
+                if (entry instanceof HistoryReset reset) {
+                    transcript.addAll(batch);
+                    batch.clear();
+                    transcript.reset(reset.room());
+                } else {
+                    batch.add(entry);
+                }
             }
-        } catch (Exception ignored) {}
-        return -1;
+            transcript.addAll(batch);
+        }
+        List<String> users = pendingUsers.getAndSet(null);
+        if (users != null) {
+            userList.getItems().setAll(users);
+            userList.refresh();
+        }
+        List<String> rooms = pendingRooms.getAndSet(null);
+        if (rooms != null) {
+            roomList.getItems().setAll(rooms);
+            roomList.refresh();
+        }
     }
 
     @Override
     public void handleMessage(String message) {
-        Platform.runLater(() -> {
-            if (message.contains("(Edited)")) {
-                List<String> items = new ArrayList<>(messagesList.getItems());
-                for (int i = 0; i < items.size(); i++) {
-                    if (items.get(i).substring(0, Math.min(10, items.get(i).length()))
-                            .equals(message.substring(0, Math.min(10, message.length())))) {
-                        items.set(i, message);
-                        messagesList.getItems().setAll(items);
-                        return;
-                    }
-                }
-            }
-            messagesList.getItems().add(message);
-        });
+        inbound.add(message);
+    }
+
+    @Override
+    public void handleChatMessage(ChatMessage message) {
+        inbound.add(message);
     }
 
     @Override
     public void handleUserListUpdate(List<String> users, String room) {
         if (!room.equals(activeRoom)) return;
-        Platform.runLater(() -> {
-            userList.getItems().setAll(users);
-            userList.refresh();
-        });
+        pendingUsers.set(users);
     }
 
     @Override
     public void handleMessageUpdate(ChatMessage oldMsg, ChatMessage newMsg, String room) {
-        Platform.runLater(() -> {
-            List<String> items = new ArrayList<>(messagesList.getItems());
-            for (int i = 0; i < items.size(); i++) {
-                if (items.get(i).startsWith("(" + oldMsg.getIndex() + ")")) {
-                    String updated = "(" + newMsg.getIndex() + ") "
-                            + newMsg.getFormattedTimestamp()
-                            + " (" + newMsg.getChatRoom() + ") "
-                            + newMsg.getUser() + ": " + newMsg.getTxt();
-                    items.set(i, updated);
-                    break;
-                }
-            }
-            messagesList.getItems().setAll(items);
-        });
+        inbound.add(newMsg);
     }
 
+    @Override
+    public void handleRoomListUpdate(List<String> rooms) {
+        pendingRooms.set(rooms);
+    }
 
+    @Override
+    public void handleHistoryReset(String room) {
+        inbound.add(new HistoryReset(room));
+    }
 
     @Override
-    public void handleRoomListUpdate(List<String> rooms) {
+    public void handleActiveRoomChange(String user, String room) {
         Platform.runLater(() -> {
-            roomList.getItems().setAll(rooms);
+            if (!user.equals(activeUsername)) return;
+            activeRoom = room;
+            activeRoomLabel.setText("Active room: " + room);
             roomList.refresh();
         });
     }
@@ -453,7 +471,7 @@ public class ChatClientGUI extends Application implements ChatClient.ChatMessage
 
         Platform.runLater(() -> {
             activeUserLabel.setText("Active user: " + selected);
-            messagesList.getItems().add("=== Switched to user: " + selected + " ===");
+            transcript.add("=== Switched to user: " + selected + " ===");
             userList.refresh();
         });
 
@@ -1,43 +1,128 @@
 package main.java.rs.raf.pds.v4.z5;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import com.esotericsoftware.kryonet.Connection;
 import com.esotericsoftware.kryonet.Listener;
 import com.esotericsoftware.kryonet.Server;
 
+import main.java.rs.raf.pds.v4.z5.cluster.ClusterNode;
+import main.java.rs.raf.pds.v4.z5.cluster.RoomHandoff;
+import main.java.rs.raf.pds.v4.z5.cluster.RoomPost;
+import main.java.rs.raf.pds.v4.z5.grpc.ChatGrpcServer;
 import main.java.rs.raf.pds.v4.z5.messages.*;
-
-public class ChatServer implements Runnable {
-
-    private volatile Thread thread;
-    private volatile boolean running;
+import main.java.rs.raf.pds.v4.z5.server.EncodedFrame;
+import main.java.rs.raf.pds.v4.z5.server.FrameSerialization;
+import main.java.rs.raf.pds.v4.z5.server.HistoryStore;
+import main.java.rs.raf.pds.v4.z5.server.MessageLog;
+import main.java.rs.raf.pds.v4.z5.server.OfflineInbox;
+import main.java.rs.raf.pds.v4.z5.server.OutboundQueues;
+import main.java.rs.raf.pds.v4.z5.server.OutboxPolicy;
+import main.java.rs.raf.pds.v4.z5.server.PresenceTracker;
+import main.java.rs.raf.pds.v4.z5.server.RoomDispatcher;
+import main.java.rs.raf.pds.v4.z5.server.RoomHistory;
+import main.java.rs.raf.pds.v4.z5.server.RoomIndex;
+import main.java.rs.raf.pds.v4.z5.server.RoomSubscribers;
+import main.java.rs.raf.pds.v4.z5.server.ServerMetrics;
+import main.java.rs.raf.pds.v4.z5.server.Session;
+import main.java.rs.raf.pds.v4.z5.server.SessionRegistry;
+import main.java.rs.raf.pds.v4.z5.server.SessionTokens;
+import main.java.rs.raf.pds.v4.z5.server.Symbols;
+
+public class ChatServer {
+
+    public static final int DEFAULT_SERVER_WRITE_BUFFER_SIZE = 16384;
+    public static final int DEFAULT_SERVER_OBJECT_BUFFER_SIZE = 2048;
+    public static final int DEFAULT_ROOM_HISTORY_CAPACITY = 10;
+    public static final String DEFAULT_DATA_DIR = "chat-data";
+    public static final int MORE_MESSAGES_PAGE_SIZE = 20;
+    public static final int MAX_HISTORY_BATCH_BYTES = DEFAULT_SERVER_WRITE_BUFFER_SIZE / 2;
+    /** Frames at least this long go compressed to clients that offered it at login. */
+    public static final int COMPRESSION_THRESHOLD = 256;
+    /** Rooms listed in the /STATS reply; JMX dump() lists all of them. */
+    public static final int STATS_ROOMS = 10;
 
     private final Server server;
+    private final FrameSerialization serialization;
     private final int portNumber;
 
-    private final ConcurrentMap<String, Connection> userConnectionMap = new ConcurrentHashMap<>();
-    private final ConcurrentMap<Connection, String> connectionUserMap = new ConcurrentHashMap<>();
-    private final ConcurrentMap<String, List<Connection>> chatRooms = new ConcurrentHashMap<>();
-    private final ConcurrentMap<String, String> userActiveRoomsMap = new ConcurrentHashMap<>();
-    private final ConcurrentMap<String, List<ChatMessage>> chatRoomsMessages = new ConcurrentHashMap<>();
-    private final ConcurrentMap<String, Integer> roomMessageCounters = new ConcurrentHashMap<>();
+    private final SessionRegistry sessions = new SessionRegistry();
+    private final HistoryStore chatRoomsMessages = HistoryStore.fromSystemProperties(DEFAULT_ROOM_HISTORY_CAPACITY);
+    private final RoomIndex roomIndex = new RoomIndex();
+    private final MessageLog messageLog;
+    private final OfflineInbox inbox;
+    private final SessionTokens tokens;
+    private final RoomDispatcher dispatcher;
+    private final OutboundQueues outbound;
+    private final ServerMetrics metrics;
+    private final RoomSubscribers subscribers = new RoomSubscribers();
+    private final PresenceTracker presence;
+    private final Map<Class<?>, BiConsumer<Command, Connection>> commandHandlers = new HashMap<>();
+    private volatile ClusterNode cluster;
 
     
+    /**
+     * Data directory from {@code -Dchat.data} (default {@value #DEFAULT_DATA_DIR}); nodes on one host need their own.
+     * {@code -Dchat.inbox.persist=false} keeps the offline inbox only in memory.
+     * Session tokens are signed with {@code -Dchat.session.key} (hex) or a key kept in the data directory.
+     */
     public ChatServer(int portNumber) {
-        this.server = new Server();
+        this(portNumber, Paths.get(System.getProperty("chat.data", DEFAULT_DATA_DIR)), RoomDispatcher.fromSystemProperties());
+    }
+
+    public ChatServer(int portNumber, Path dataDir, RoomDispatcher dispatcher) {
+        this.serialization = new FrameSerialization(KryoUtil::registerKryoClasses);
+        this.server = new Server(DEFAULT_SERVER_WRITE_BUFFER_SIZE, DEFAULT_SERVER_OBJECT_BUFFER_SIZE, serialization);
         this.portNumber = portNumber;
-        KryoUtil.registerKryoClasses(server.getKryo());
-        chatRooms.putIfAbsent("PublicChatRoom", new CopyOnWriteArrayList<>());
+        this.messageLog = new MessageLog(dataDir);
+        // ceo inbox jednog korisnika mora da stane u jedan frame
+        this.inbox = new OfflineInbox(serialization, OfflineInbox.DEFAULT_MAX_PER_USER, MAX_HISTORY_BATCH_BYTES,
+                OfflineInbox.DEFAULT_MAX_PER_SENDER, OfflineInbox.DEFAULT_MAX_TOTAL, OfflineInbox.DEFAULT_TTL_MS,
+                "false".equalsIgnoreCase(System.getProperty("chat.inbox.persist")) ? null : dataDir.resolve("inbox.bin"));
+        this.tokens = SessionTokens.fromSystemProperties(dataDir);
+        this.dispatcher = dispatcher;
+        this.outbound = new OutboundQueues(DEFAULT_SERVER_WRITE_BUFFER_SIZE, MAX_HISTORY_BATCH_BYTES, OutboxPolicy.DEFAULT);
+        this.metrics = new ServerMetrics(portNumber, sessions::size, sessions::roomName, roomIndex::size,
+                chatRoomsMessages, serialization, outbound, dispatcher);
+        this.presence = new PresenceTracker(dispatcher, PresenceTracker.DEFAULT_WINDOW_MILLIS,
+                this::memberNames, this::broadcastToRoom);
+        recoverFromLog();
+        if (sessions.addRoom("PublicChatRoom")) {
+            messageLog.createRoom("PublicChatRoom");
+        }
+        registerCommands();
         registerListener();
         System.out.println("✅ Default room 'PublicChatRoom' created at server startup.");
     }
 
+    /** Rebuilds rooms, sequence counters and recent history from the message log. */
+    private void recoverFromLog() {
+        int[] replayed = new int[1];
+        messageLog.replay((room, bytes) -> {
+            Object obj = serialization.decode(bytes);
+            if (obj instanceof ChatMessage msg) {
+                chatRoomsMessages.history(room).restore(msg);
+                replayed[0]++;
+            }
+        });
+        for (String room : messageLog.rooms()) sessions.addRoom(room);
+        if (!messageLog.rooms().isEmpty()) {
+            System.out.println("📂 Recovered " + messageLog.rooms().size() + " rooms and " + replayed[0] + " log records.");
+        }
+    }
+
+    /**
+     * The listener runs on KryoNet's update thread and only picks a lane:
+     * all handling happens on the dispatcher, keyed by the room it touches.
+     */
     private void registerListener() {
         server.addListener(new Listener() {
 
@@ -45,204 +130,433 @@ public class ChatServer implements Runnable {
             public void received(Connection connection, Object object) {
 
                 if (object instanceof Login login) {
+                    // token se proverava pre registerUser, koji opoziva tokene sesije koju istiskuje
+                    Resume resume = login instanceof Resume r && tokens.verify(login.getUserName(), r.getToken()) ? r : null;
+                    // mape se popunjavaju odmah, da komanda poslata odmah posle login-a (u drugu traku) nađe korisnika
                     registerUser(login, connection);
-                    connection.sendTCP(new InfoMessage("👋 Welcome " + login.getUserName()));
-                    listRooms(connection);
+                    if (resume != null) {
+                        String room = resumeRoom(resume);
+                        dispatcher.dispatch(room, metrics.timed("Resume", () -> resume(resume, room, connection)));
+                        return;
+                    }
+                    dispatcher.dispatch("PublicChatRoom", metrics.timed("Login", () -> {
+                        broadcastInfo("User " + login.getUserName() + " joined the server.");
+                        send(connection, new InfoMessage("👋 Welcome " + login.getUserName()));
+                        send(connection, new SessionToken(tokens.issue(login.getUserName()), false));
+                        listRooms(connection);
+                        sendUserList(connection, "PublicChatRoom");
+                        // traka primaoca: privatna poruka je ili već u inbox-u ili vidi novu sesiju
+                        dispatcher.dispatch("@" + login.getUserName(),
+                                metrics.timed("Inbox", () -> deliverInbox(login.getUserName(), connection)));
+                    }));
                     return;
                 }
 
                 if (object instanceof PrivateMessage pm) {
-                    handlePrivateMessage(pm, connection);
+                    dispatcher.dispatch("@" + pm.getRecipient(),
+                            metrics.timed("PrivateMessage", () -> handlePrivateMessage(pm, connection)));
+                    return;
+                }
+
+                if (object instanceof MulticastMessage mm) {
+                    // traka pošiljaoca: njegove grupne poruke stižu redom
+                    dispatcher.dispatch("@" + mm.getUser(),
+                            metrics.timed("MulticastMessage", () -> handleMulticast(mm, connection)));
                     return;
                 }
 
                 if (object instanceof ChatMessage chatMessage) {
-                    addMessageToChatRoom(chatMessage);
-                    broadcastChatMessage(chatMessage, connection);
+                    String room = roomOf(chatMessage);
+                    dispatcher.dispatch(room, metrics.timed("ChatMessage", () -> {
+                        // samo postojeće sobe: ime sobe iz poruke ne sme da pravi log, istoriju i metrike
+                        if (sessions.hasRoom(room)) submit(room, chatMessage, 0);
+                        else send(connection, new InfoMessage("⚠️ Room '" + room + "' does not exist."));
+                    }));
                     return;
                 }
 
-                if (object instanceof String command) {
-                    handleCommand(command, connection);
+                if (object instanceof Command command) {
+                    dispatcher.dispatch(commandRoom(command, connection),
+                            metrics.timed(command.getClass().getSimpleName(), () -> handleCommand(command, connection)));
                 }
             }
 
+            @Override
+            public void idle(Connection connection) {
+                outbound.drain(connection);
+            }
+
             @Override
             public void disconnected(Connection connection) {
-                String user = connectionUserMap.remove(connection);
-                if (user != null) userConnectionMap.remove(user);
-                broadcastInfo("User " + user + " has disconnected.");
+                outbound.remove(connection);
+                dispatcher.dispatch(activeRoom(connection), () -> {
+                    Session session = endSession(connection);
+                    // sesiju zamenjenu novim login-om je registerUser već zatvorio
+                    if (session != null) broadcastInfo("User " + session.getUser() + " has disconnected.");
+                });
             }
         });
     }
 
+    private static String roomOf(ChatMessage msg) {
+        return msg.getChatRoom() != null ? msg.getChatRoom() : "PublicChatRoom";
+    }
+
+    // JoinRoom i CreateRoom idu u traku ciljne sobe, da bi poruke poslate odmah posle njih stigle iza njih
+    private String commandRoom(Command command, Connection conn) {
+        if (command instanceof JoinRoom join) return join.getRoomName();
+        if (command instanceof CreateRoom create) return create.getRoomName();
+        return activeRoom(conn);
+    }
+
     private void registerUser(Login login, Connection conn) {
         String userName = login.getUserName();
-        if (userConnectionMap.containsKey(userName)) {
-            Connection old = userConnectionMap.get(userName);
-            if (old.isConnected()) old.close();
+        Session old = sessions.find(userName);
+        if (old != null && old.getConnection() != conn) {
+            // frame može da se izgubi pri zatvaranju veze, pa stari token mora da prestane da važi i na serveru
+            tokens.revoke(userName);
+            send(old.getConnection(), new SessionToken(null, false)); // stari klijent ne treba da se vraća
+            endSession(old.getConnection());
+            if (old.getConnection().isConnected()) old.getConnection().close();
         }
-        chatRooms.get("PublicChatRoom").add(conn);
-        userConnectionMap.put(userName, conn);
-        connectionUserMap.put(conn, userName);
-        userActiveRoomsMap.put(userName, "PublicChatRoom");
-        broadcastInfo("User " + userName + " joined the server.");
+        endSession(conn); // drugi Login na istoj vezi počinje ispočetka
+        Session session = sessions.open(conn, userName, acceptsDeflate(login));
+        sessions.join(session, "PublicChatRoom");
+        roomIndex.enter(session.getId(), conn, sessions.roomId("PublicChatRoom"));
+        ClusterNode node = cluster;
+        if (node != null) node.userOnline(userName);
+        localMembersChanged("PublicChatRoom");
     }
 
-    private void handlePrivateMessage(PrivateMessage pm, Connection sender) {
-        String recipient = pm.getRecipient();
-        Connection receiver = userConnectionMap.get(recipient);
-        if (receiver == null || !receiver.isConnected()) {
-            sender.sendTCP(new InfoMessage("⚠️ User '" + recipient + "' is not online."));
-            return;
+    /**
+     * Drops everything kept for the connection: its session with all room
+     * memberships and its place in the active room, then frees the user id.
+     * Returns the closed session, or null if it was already gone. A relogin
+     * under the same name may already hold the id; then only this
+     * connection's own state is dropped.
+     */
+    private Session endSession(Connection conn) {
+        Session session = sessions.close(conn);
+        if (session == null) return null;
+        int room;
+        synchronized (session) {
+            room = roomIndex.leave(session.getId(), conn);
+        }
+        sessions.release(session);
+        if (room != Symbols.NONE) localMembersChanged(sessions.roomName(room));
+        if (sessions.find(session.getUser()) == null) userOffline(session.getUser());
+        return session;
+    }
+
+    // prva navedena soba koja još postoji; u njenoj traci se sesija nastavlja
+    private String resumeRoom(Resume resume) {
+        if (resume.getRooms() != null) {
+            for (String room : resume.getRooms()) {
+                if (room != null && sessions.hasRoom(room)) return room;
+            }
+        }
+        return "PublicChatRoom";
+    }
+
+    /**
+     * Puts a reconnecting user back where they were, without the join
+     * broadcast and welcome a new login gets: back into the rooms the client
+     * listed and active in {@code active}, then one {@link ResumeBatch} of the
+     * messages after the client's last seen ones, with a cursor per room where
+     * the gap did not fit. Runs on the active room's lane, so the batch goes
+     * out before any live message of that room.
+     */
+    private void resume(Resume resume, String active, Connection conn) {
+        Session session = sessions.get(conn);
+        if (session == null) return;
+        String[] rooms = resume.getRooms();
+        int[] lastSeen = resume.getLastSeen();
+        int count = rooms == null ? 0 : rooms.length;
+        for (int i = 0; i < count; i++) {
+            if (rooms[i] != null && sessions.hasRoom(rooms[i])) sessions.join(session, rooms[i]);
         }
-        receiver.sendTCP(pm);
+        if (!active.equals("PublicChatRoom")) {
+            synchronized (session) {
+                if (session.isClosed()) return;
+                roomIndex.enter(session.getId(), conn, sessions.roomId(active));
+            }
+            localMembersChanged("PublicChatRoom");
+            localMembersChanged(active);
+        }
+        send(conn, new SessionToken(tokens.issue(session.getUser()), true));
+        listRooms(conn);
+        sendUserList(conn, active);
+
+        // aktivna soba prva, pa ostale redom dok ima mesta u jednom frame-u
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (rooms[i] == null) continue;
+            if (active.equals(rooms[i])) order.add(0, i);
+            else order.add(i);
+        }
+        List<HistoryBatch> missed = new ArrayList<>();
+        int bytes = 0;
+        for (int i : order) {
+            RoomHistory history = sessions.hasRoom(rooms[i]) ? chatRoomsMessages.find(rooms[i]) : null;
+            if (history == null) continue;
+            int since = lastSeen != null && i < lastSeen.length ? lastSeen[i] : 0;
+            int last = history.lastSequence();
+            if (last <= since) continue;
+            List<ChatMessage> page = bytes < MAX_HISTORY_BATCH_BYTES
+                    ? history.last(Math.min(last - since, history.capacity())) : List.of();
+            // kad ne staje sve, ostaju najnovije poruke sobe
+            int from = page.size();
+            while (from > 0 && bytes + estimatedSize(page.get(from - 1)) <= MAX_HISTORY_BATCH_BYTES) {
+                bytes += estimatedSize(page.get(--from));
+            }
+            List<ChatMessage> sent = page.subList(from, page.size());
+            // kursor kao u HistoryBatch: odavde /MORE nastavlja, ako propuštenog ima i server ga još čuva
+            int oldest = sent.isEmpty() ? last + 1 : sent.get(0).getIndex();
+            int before = oldest - 1 > since && history.get(oldest - 1) != null ? oldest : 0;
+            missed.add(new HistoryBatch(rooms[i], sent.toArray(new ChatMessage[0]), before));
+        }
+        send(conn, new ResumeBatch(active, missed.toArray(new HistoryBatch[0])));
+        dispatcher.dispatch("@" + session.getUser(),
+                metrics.timed("Inbox", () -> deliverInbox(session.getUser(), conn)));
     }
 
-    private void handleCommand(String command, Connection conn) {
-        if (command == null || command.isBlank()) return;
+    private static boolean acceptsDeflate(Login login) {
+        return login.getCompression() != null && Arrays.asList(login.getCompression()).contains(CompressedFrame.DEFLATE);
+    }
 
-        // sačuvaj originalni unos
-        String trimmed = command.trim();
-        // koristi upper samo za prepoznavanje komandi
-        String upper = trimmed.toUpperCase();
+    /** Name of the connection's active room, or null; also the lane of its commands. */
+    private String activeRoom(Connection conn) {
+        Session session = sessions.get(conn);
+        if (session == null) return null;
+        int room = roomIndex.activeRoom(session.getId());
+        return room == Symbols.NONE ? null : sessions.roomName(room);
+    }
 
-        String[] parts = trimmed.split(" ");
+    private void userOffline(String userName) {
+        ClusterNode node = cluster;
+        if (node != null) node.userOffline(userName);
+    }
 
-        if (upper.startsWith("/CREATE")) {
-            if (parts.length >= 2) createRoom(parts[1], conn);
+    private void handlePrivateMessage(PrivateMessage pm, Connection sender) {
+        String recipient = pm.getRecipient();
+        Session receiver = sessions.find(recipient);
+        if (receiver == null || !receiver.getConnection().isConnected()) {
+            ClusterNode node = cluster;
+            if (node != null && node.forwardPrivate(pm)) return;
+            if (inbox.offer(pm)) {
+                send(sender, new InfoMessage("📬 User '" + recipient + "' is offline; the message will be delivered at their next login."));
+            } else {
+                send(sender, new InfoMessage("⚠️ User '" + recipient + "' is not online and the offline inbox has no room for it."));
+            }
+            return;
         }
+        send(receiver.getConnection(), pm);
+    }
 
-        else if (upper.startsWith("/LISTROOMS")) {
-            listRooms(conn);
-        }
+    /** Sends everything queued for the user while offline, as one frame. Runs on the user's "@" lane. */
+    private void deliverInbox(String userName, Connection conn) {
+        Session session = sessions.find(userName);
+        if (session == null || session.getConnection() != conn || !conn.isConnected()) return;
+        InboxBatch batch = inbox.take(userName);
+        if (batch != null) send(conn, batch);
+    }
 
-        else if (upper.startsWith("/JOIN")) {
-            if (parts.length >= 2) joinRoom(parts[1], conn);
+    /** The user logged in on another node: mail kept here follows them there. Runs on the user's "@" lane. */
+    private void forwardInbox(String userName) {
+        ClusterNode node = cluster;
+        if (node == null || sessions.find(userName) != null) return;
+        InboxBatch batch = inbox.take(userName);
+        if (batch == null) return;
+        for (PrivateMessage pm : batch.getMessages()) {
+            if (!node.forwardPrivate(pm)) inbox.offer(pm);
         }
+    }
 
-        else if (upper.startsWith("/INVITE")) {
-            if (parts.length >= 3) {
-                String invitedUser = parts[1].replace("@", "").trim();
-                String roomName = parts[2].replace("@", "").trim();
-                inviteUser(invitedUser, roomName, conn);
+    /**
+     * Delivers the message only to the listed users: it is serialized once and
+     * the same bytes go to every recipient online here, while recipients on
+     * other nodes get it through one forward per node. Recipients nobody could
+     * reach are reported back to the sender in a single reply.
+     */
+    private void handleMulticast(MulticastMessage mm, Connection sender) {
+        Set<String> recipients = new LinkedHashSet<>();
+        if (mm.getRecipients() != null) {
+            for (String recipient : mm.getRecipients()) {
+                if (recipient != null && !recipient.isBlank()) recipients.add(recipient.trim());
             }
         }
-
-        else if (upper.startsWith("/HISTORY")) {
-            if (parts.length >= 2) sendRoomHistory(conn, parts);
+        if (recipients.isEmpty()) {
+            send(sender, new InfoMessage("⚠️ Missing recipients."));
+            return;
         }
-
-        else if (upper.startsWith("/GETMOREMESSAGES")) {
-            String user = connectionUserMap.get(conn);
-            String room = userActiveRoomsMap.getOrDefault(user, "PublicChatRoom");
-            sendMoreMessages(room, conn);
+        mm.setRecipients(recipients.toArray(new String[0]));
+        EncodedFrame frame = null;
+        List<String> elsewhere = new ArrayList<>();
+        for (String recipient : recipients) {
+            Session receiver = sessions.find(recipient);
+            if (receiver == null || !receiver.getConnection().isConnected()) {
+                elsewhere.add(recipient);
+                continue;
+            }
+            if (frame == null) frame = serialization.encode(mm);
+            send(receiver.getConnection(), frame);
         }
-
-        else if (upper.startsWith("/LEAVEROOM")) {
-            String user = connectionUserMap.get(conn);
-            String currentRoom = userActiveRoomsMap.get(user);
-            leaveRoom(currentRoom, user, conn);
+        ClusterNode node = cluster;
+        List<String> missed = node == null || elsewhere.isEmpty() ? elsewhere : node.forwardMulticast(mm, elsewhere);
+        if (!missed.isEmpty()) {
+            send(sender, new InfoMessage("⚠️ Not delivered, offline or unknown: " + String.join(", ", missed) + "."));
         }
+    }
 
-        // ⚡ Popravljeno — koristi originalni tekst (ne upper)
-        else if (upper.startsWith("/REPLY")) {
-            if (parts.length >= 3) replyToMessage(parts, conn);
-        }
+    /** O(1) dispatch table: command class → handler. */
+    private void registerCommands() {
+        onCommand(CreateRoom.class, (cmd, conn) -> {
+            if (isBlank(cmd.getRoomName(), "room name", conn)) return;
+            createRoom(cmd.getRoomName(), conn);
+        });
+        onCommand(GetRooms.class, (cmd, conn) -> listRooms(conn));
+        onCommand(JoinRoom.class, (cmd, conn) -> {
+            if (isBlank(cmd.getRoomName(), "room name", conn)) return;
+            joinRoom(cmd.getRoomName(), conn);
+            if (cmd.getSince() >= 0) sendHistorySince(conn, cmd.getRoomName(), cmd.getSince());
+        });
+        onCommand(Invite.class, (cmd, conn) -> {
+            if (isBlank(cmd.getUserName(), "user name", conn) || isBlank(cmd.getRoomName(), "room name", conn)) return;
+            inviteUser(cmd.getUserName(), cmd.getRoomName(), conn);
+        });
+        onCommand(History.class, (cmd, conn) -> sendRoomHistory(conn, cmd.getCount(), cmd.getBefore()));
+        onCommand(GetMoreMessages.class, (cmd, conn) -> sendMoreMessages(activeRoomOf(conn), conn, cmd.getBefore()));
+        onCommand(LeaveRoom.class, (cmd, conn) -> leaveRoom(activeRoomOf(conn), conn));
+        onCommand(Reply.class, (cmd, conn) -> {
+            if (isBlank(cmd.getText(), "reply text", conn)) return;
+            replyToMessage(cmd.getIndex(), cmd.getText(), conn);
+        });
+        onCommand(Edit.class, (cmd, conn) -> {
+            if (isBlank(cmd.getText(), "message text", conn)) return;
+            editMessage(cmd.getIndex(), cmd.getText(), conn);
+        });
+        onCommand(GetUsers.class, (cmd, conn) -> {
+            String room = activeRoom(conn);
+            if (room != null) sendUserList(conn, room);
+        });
+        onCommand(Stats.class, (cmd, conn) -> {
+            ClusterNode node = cluster;
+            // brojači prosleđivanja (privatne, multicast, objave) su po čvoru
+            String clusterStats = node == null ? "" : node + "\n";
+            send(conn, new InfoMessage("📊 Server stats\n" + metrics.dump(STATS_ROOMS) + clusterStats));
+        });
+    }
+
+    private boolean isBlank(String value, String what, Connection conn) {
+        if (value != null && !value.isBlank()) return false;
+        send(conn, new InfoMessage("⚠️ Missing " + what + "."));
+        return true;
+    }
 
-        else if (upper.startsWith("/EDIT")) {
-            if (parts.length >= 3) editMessage(parts, conn);
+    private <C extends Command> void onCommand(Class<C> type, BiConsumer<C, Connection> handler) {
+        commandHandlers.put(type, (cmd, conn) -> handler.accept(type.cast(cmd), conn));
+    }
+
+    private void handleCommand(Command command, Connection conn) {
+        BiConsumer<Command, Connection> handler = commandHandlers.get(command.getClass());
+        if (handler == null) {
+            send(conn, new InfoMessage("⚠️ Unknown command " + command.getClass().getSimpleName() + "."));
+            return;
         }
+        handler.accept(command, conn);
     }
 
+    // posle LeaveRoom korisnik nije ni u jednoj sobi: "" i komande javljaju da poruka nije nađena
+    private String activeRoomOf(Connection conn) {
+        if (sessions.get(conn) == null) return "PublicChatRoom";
+        String room = activeRoom(conn);
+        return room == null ? "" : room;
+    }
+
+    private String userOf(Connection conn) {
+        Session session = sessions.get(conn);
+        return session == null ? null : session.getUser();
+    }
 
     private void createRoom(String roomName, Connection conn) {
-        chatRooms.putIfAbsent(roomName, new CopyOnWriteArrayList<>());
+        addRoom(roomName);
         broadcastInfo("🆕 New chat room created: " + roomName);
         listRooms(conn);
     }
 
+    private boolean addRoom(String roomName) {
+        if (!sessions.addRoom(roomName)) return false;
+        messageLog.createRoom(roomName);
+        return true;
+    }
+
     private void listRooms(Connection conn) {
-        String[] roomNames = chatRooms.keySet().toArray(new String[0]);
+        String[] roomNames = sessions.roomNames().toArray(new String[0]);
         Arrays.sort(roomNames);
-        conn.sendTCP(new ListRooms(roomNames));
+        send(conn, new ListRooms(roomNames));
     }
 
     private void joinRoom(String roomName, Connection conn) {
-        chatRooms.computeIfAbsent(roomName, k -> new CopyOnWriteArrayList<>()).add(conn);
-        String user = connectionUserMap.get(conn);
-        userActiveRoomsMap.put(user, roomName);
+        Session session = sessions.get(conn);
+        if (session == null) {
+            send(conn, new InfoMessage("⚠️ Log in first."));
+            return;
+        }
+        if (sessions.join(session, roomName)) messageLog.createRoom(roomName);
+        int room = sessions.roomId(roomName);
+        int previous;
+        synchronized (session) {
+            if (session.isClosed()) return;
+            previous = roomIndex.activeRoom(session.getId());
+            roomIndex.enter(session.getId(), conn, room);
+        }
         listRooms(conn);
-        broadcastUserListUpdate(roomName);
+        sendUserList(conn, roomName);
+        if (previous != Symbols.NONE && previous != room) localMembersChanged(sessions.roomName(previous));
+        localMembersChanged(roomName);
     }
     
-    private void leaveRoom(String roomName, String user, Connection conn) {
-        List<Connection> members = chatRooms.get(roomName);
-        if (members != null) members.remove(conn);
-
-        userActiveRoomsMap.put(user, ""); 
-        broadcastUserListUpdate(roomName);
+    private void leaveRoom(String roomName, Connection conn) {
+        Session session = sessions.get(conn);
+        if (session == null) return;
+        sessions.leave(session, roomName);
+        synchronized (session) {
+            if (!session.isClosed()) roomIndex.leave(session.getId());
+        }
+        localMembersChanged(roomName);
 
-        conn.sendTCP(new ListUsers(new String[0]));
+        send(conn, new ListUsers(new String[0]));
     }
 
 
 
     private void inviteUser(String invitedUser, String roomName, Connection inviterConn) {
-        String inviter = connectionUserMap.get(inviterConn);
-        Connection invitedConn = userConnectionMap.get(invitedUser);
+        String inviter = userOf(inviterConn);
+        Session invited = sessions.find(invitedUser);
 
-        if (invitedConn != null && invitedConn.isConnected()) {
-            invitedConn.sendTCP(new InfoMessage("📩 " + inviter + " invites you to join room '" + roomName + "'."));
-            inviterConn.sendTCP(new InfoMessage("✅ Invite sent to user " + invitedUser + ", room: '" + roomName + "'."));
+        if (invited != null && invited.getConnection().isConnected()) {
+            send(invited.getConnection(), new InfoMessage("📩 " + inviter + " invites you to join room '" + roomName + "'."));
+            send(inviterConn, new InfoMessage("✅ Invite sent to user " + invitedUser + ", room: '" + roomName + "'."));
         } else {
-            inviterConn.sendTCP(new InfoMessage("⚠️ User " + invitedUser + " is not found / offline."));
+            send(inviterConn, new InfoMessage("⚠️ User " + invitedUser + " is not found / offline."));
         }
     }
 
-    private void addReplyMessageToChatRoom(ChatMessage msg) {
-        String room = msg.getChatRoom() != null ? msg.getChatRoom() : "PublicChatRoom";
-        int index = roomMessageCounters.getOrDefault(room, 0) + 1;
-        roomMessageCounters.put(room, index);
-        msg.setIndex(index);
-
-        chatRoomsMessages.computeIfAbsent(room, k -> new ArrayList<>()).add(msg);
-
-        List<ChatMessage> list = chatRoomsMessages.get(room);
-        if (list.size() > 10) list.remove(0);
-    }
-
 
     private void sendLastMessages(String roomName, Connection conn) {
-        List<ChatMessage> messages = chatRoomsMessages.getOrDefault(roomName, Collections.emptyList());
-        if (!messages.isEmpty()) {
-            conn.sendTCP(new InfoMessage("📜 Last 10 messages from '" + roomName + "':"));
-            int start = Math.max(0, messages.size() - 10);
-            List<ChatMessage> last10 = messages.subList(start, messages.size());
-            for (ChatMessage msg : last10) conn.sendTCP(msg);
-        }
+        sendHistoryBatch(conn, roomName, 10, 0);
     }
-    private void replyToMessage(String[] parts, Connection conn) {
-        String user = connectionUserMap.get(conn);
-        String room = userActiveRoomsMap.getOrDefault(user, "PublicChatRoom");
-
-        int index;
-        try {
-            index = Integer.parseInt(parts[1]);
-        } catch (NumberFormatException e) {
-            conn.sendTCP(new InfoMessage("⚠️ Invalid message number."));
-            return;
-        }
-
-        List<ChatMessage> messages = chatRoomsMessages.get(room);
-        if (messages == null || index < 1 || index > messages.size()) {
-            conn.sendTCP(new InfoMessage("⚠️ Message with index " + index + " not found."));
+    private void replyToMessage(int index, String replyText, Connection conn) {
+        String user = userOf(conn);
+        String room = activeRoomOf(conn);
+
+        RoomHistory history = chatRoomsMessages.find(room);
+        ChatMessage original = history == null ? null : history.get(index);
+        if (original == null) {
+            send(conn, new InfoMessage("⚠️ Message with index " + index + " not found."));
             return;
         }
 
-        ChatMessage original = messages.get(index - 1);
-        String replyText = String.join(" ", Arrays.copyOfRange(parts, 2, parts.length));
-
         // citirani deo originalne poruke
         String excerpt = original.getTxt().length() > 40 ?
                 original.getTxt().substring(0, 40) + "..." : original.getTxt();
@@ -252,128 +566,570 @@ public class ChatServer implements Runnable {
         	    "💬 Reply to " + original.getUser() + ": \"" + excerpt + "\"\n" + replyText,
         	    room
         	);
-
-
-        addMessageToChatRoom(replyMsg);
-        broadcastChatMessage(replyMsg, conn);
+        replyMsg.setReply(true);
+        submit(room, replyMsg, 0);
     }
 
     
-    private void editMessage(String[] parts, Connection conn) {
-        String user = connectionUserMap.get(conn);
-        String room = userActiveRoomsMap.getOrDefault(user, "PublicChatRoom");
+    private void editMessage(int index, String newText, Connection conn) {
+        String user = userOf(conn);
+        String room = activeRoomOf(conn);
+
+        RoomHistory history = chatRoomsMessages.find(room);
+        ChatMessage oldMsg = history == null ? null : history.get(index);
+        if (oldMsg == null) {
+            send(conn, new InfoMessage("⚠️ Message not found."));
+            return;
+        }
 
-        int index;
-        try {
-            index = Integer.parseInt(parts[1]);
-        } catch (NumberFormatException e) {
-            conn.sendTCP(new InfoMessage("⚠️ Invalid message number."));
+        if (!oldMsg.getUser().equals(user)) {
+            send(conn, new InfoMessage("❌ You can only edit your own messages."));
             return;
         }
 
-        List<ChatMessage> messages = chatRoomsMessages.get(room);
-        if (messages == null || index < 1 || index > messages.size()) {
-            conn.sendTCP(new InfoMessage("⚠️ Message not found."));
+        submit(room, new ChatMessage(user, newText + " (Edited)", room), index);
+    }
+
+    /** Owner side of an edit; the origin already checked that the message exists and is the user's. */
+    private void applyEdit(String room, int index, String user, String text) {
+        RoomHistory history = chatRoomsMessages.find(room);
+        ChatMessage oldMsg = history == null ? null : history.get(index);
+        if (oldMsg == null || !oldMsg.getUser().equals(user)) return;
+
+        // druge trake (istorija, resume, gRPC) mogu baš sada da serijalizuju staru poruku, pa se menja kopija
+        ChatMessage edited = oldMsg.withTxt(text);
+        history.restore(edited);
+
+        // izmena se loguje kao novi zapis sa istim indeksom; pri replay-u pobeđuje poslednji
+        EncodedFrame frame = serialization.encode(edited);
+        messageLog.append(room, frame);
+        broadcastRoomMessage(room, frame);
+        subscribers.publish(room, edited);
+    }
+
+    private void sendRoomHistory(Connection conn, int n, int before) {
+        String user = userOf(conn);
+        String room = activeRoomOf(conn);
+
+        if (n < 1) {
+            send(conn, new InfoMessage("⚠️ Invalid number of messages."));
             return;
         }
+        if (!sendHistoryBatch(conn, room, n, before)) {
+            send(conn, new InfoMessage("⚠️ No messages found in this room."));
+        }
+    }
 
-        ChatMessage oldMsg = messages.get(index - 1);
-        if (!oldMsg.getUser().equals(user)) {
-            conn.sendTCP(new InfoMessage("❌ You can only edit your own messages."));
+
+    private void sendMoreMessages(String roomName, Connection conn, int before) {
+        if (!sendHistoryBatch(conn, roomName, MORE_MESSAGES_PAGE_SIZE, before)) {
+            send(conn, new InfoMessage("⚠️ No additonal messages from room '" + roomName + "'."));
+        }
+    }
+
+    /**
+     * Delta sync on join: only the messages after {@code since}, the newest
+     * one the client has cached, as far back as the room's history reaches.
+     * A client ahead of the room (data directory reset, log format change,
+     * new owner) gets a full page marked as a reset instead; in a cluster only
+     * the owner can tell.
+     */
+    private void sendHistorySince(Connection conn, String room, int since) {
+        if (!room.equals(activeRoom(conn))) return; // join nije uspeo
+        RoomHistory history = chatRoomsMessages.history(room);
+        if (since > history.lastSequence()) {
+            // samo vlasnik zna poslednji indeks; ostali čvorovi kopiju istorije dobijaju tek posle ulaska
+            ClusterNode node = cluster;
+            if (node == null || node.owns(room)) sendHistoryBatch(conn, room, history.capacity(), 0, true);
             return;
         }
+        int newer = history.lastSequence() - since;
+        if (newer > 0) sendHistoryBatch(conn, room, Math.min(newer, history.capacity()), 0, false);
+    }
 
-        String newText = String.join(" ", Arrays.copyOfRange(parts, 2, parts.length));
-        oldMsg.setTxt(newText + " (Edited)");
+    /**
+     * Sends up to {@code count} messages below {@code before} (0 = newest) as
+     * HistoryBatch frames. A page normally fits one frame; it is only split
+     * when it would not fit the connection's write buffer.
+     */
+    private boolean sendHistoryBatch(Connection conn, String room, int count, int before) {
+        return sendHistoryBatch(conn, room, count, before, false);
+    }
 
-        for (Connection c : chatRooms.getOrDefault(room, Collections.emptyList())) {
-            if (c != null && c.isConnected()) {
-                c.sendTCP(oldMsg);
+    // reset ide samo uz prvi frame, i kad je strana prazna
+    private boolean sendHistoryBatch(Connection conn, String room, int count, int before, boolean reset) {
+        RoomHistory history = chatRoomsMessages.find(room);
+        List<ChatMessage> page = history == null ? List.of()
+                : before > 0 ? history.before(before, count) : history.last(count);
+        if (page.isEmpty()) {
+            if (reset) send(conn, new HistoryBatch(room, new ChatMessage[0], 0, true));
+            return false;
+        }
+
+        int oldest = page.get(0).getIndex();
+        int cursor = history.get(oldest - 1) != null ? oldest : 0;
+
+        int from = 0;
+        int bytes = 0;
+        for (int i = 0; i < page.size(); i++) {
+            int size = estimatedSize(page.get(i));
+            if (i > from && bytes + size > MAX_HISTORY_BATCH_BYTES) {
+                send(conn, new HistoryBatch(room, page.subList(from, i).toArray(new ChatMessage[0]), cursor, reset));
+                reset = false;
+                from = i;
+                bytes = 0;
             }
+            bytes += size;
         }
+        send(conn, new HistoryBatch(room, page.subList(from, page.size()).toArray(new ChatMessage[0]), cursor, reset));
+        return true;
+    }
+
+    // gornja granica UTF-8 veličine (3 bajta po char-u) plus zaglavlje poruke
+    private static int estimatedSize(ChatMessage msg) {
+        int chars = length(msg.getUser()) + length(msg.getTxt()) + length(msg.getChatRoom());
+        return chars * 3 + 24;
     }
 
-    private void sendRoomHistory(Connection conn, String[] parts) {
-        String user = connectionUserMap.get(conn);
-        String room = userActiveRoomsMap.getOrDefault(user, "PublicChatRoom");
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+
+    private EncodedFrame addMessageToChatRoom(ChatMessage msg) {
+        String room = roomOf(msg);
+        chatRoomsMessages.history(room).append(msg); // dodeljuje index poruci
+        metrics.recordMessageIn(sessions.roomId(room));
+        EncodedFrame frame = serialization.encode(msg);
+        messageLog.append(room, frame);
+        subscribers.publish(room, msg);
+        return frame;
+    }
 
-        int n = Integer.parseInt(parts[1]);
-        List<ChatMessage> msgs = chatRoomsMessages.getOrDefault(room, Collections.emptyList());
-        if (msgs.isEmpty()) {
-            conn.sendTCP(new InfoMessage("⚠️ No messages found in this room."));
+    /**
+     * Sets how many messages are kept for a room. A live ring is resized on
+     * the room's lane, behind messages already posted there; to size rooms
+     * before the log is replayed use {@code -Dchat.history.capacities}.
+     */
+    public void setRoomHistoryCapacity(String room, int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        dispatcher.dispatch(room, () -> chatRoomsMessages.setCapacity(room, capacity));
+    }
+
+    /**
+     * A new message ({@code editIndex} 0) or an edit, on the room lane. In a
+     * cluster it goes to the room's owner, which numbers and stores it.
+     */
+    private void submit(String room, ChatMessage msg, int editIndex) {
+        ClusterNode node = cluster;
+        if (node == null) {
+            applyPost(room, msg, editIndex);
             return;
         }
+        handlePost(node, node.newPost(room, msg, editIndex));
+    }
+
+    private void handlePost(ClusterNode node, RoomPost post) {
+        if (!node.owns(post.getRoom()) && node.forward(post)) return;
+        for (RoomPost ready : node.admit(post)) applyPost(ready.getRoom(), ready.getMessage(), ready.getEditIndex());
+    }
+
+    // poreklo je već proverilo da soba postoji; vlasnik je možda još nije video
+    private void applyPost(String room, ChatMessage msg, int editIndex) {
+        sessions.addRoom(room);
+        messageLog.createRoom(room);
+        if (editIndex > 0) applyEdit(room, editIndex, msg.getUser(), msg.getTxt());
+        else broadcastRoomMessage(room, addMessageToChatRoom(msg));
+    }
 
-        int start = Math.max(0, msgs.size() - n);
-        List<ChatMessage> lastMsgs = msgs.subList(start, msgs.size());
+    private void broadcastInfo(String text) {
+        EncodedFrame frame = serialization.encode(new InfoMessage(text));
+        sessions.forEach(session -> send(session.getConnection(), frame));
+    }
 
-        conn.sendTCP(new InfoMessage("📜 Last " + lastMsgs.size() + " messages from '" + room + "':"));
-        for (ChatMessage m : lastMsgs) conn.sendTCP(m);
+    /** Serializes the message once and writes the same bytes to every live member of the room. */
+    private void broadcastToRoom(String room, Object msg) {
+        int id = sessions.roomId(room);
+        if (roomIndex.size(id) == 0) return;
+        broadcastFrame(id, serialization.encode(msg));
     }
 
+    /** A message stored on this node: local members get the frame, every other node with members one copy. */
+    private void broadcastRoomMessage(String room, EncodedFrame frame) {
+        broadcastFrame(sessions.roomId(room), frame);
+        ClusterNode node = cluster;
+        if (node != null) node.broadcastRoom(room, frame.bytes());
+    }
 
-    private void sendMoreMessages(String roomName, Connection conn) {
-        List<ChatMessage> messages = chatRoomsMessages.getOrDefault(roomName, Collections.emptyList());
-        if (messages.isEmpty()) {
-            conn.sendTCP(new InfoMessage("⚠️ No additonal messages from room '" + roomName + "'."));
-            return;
-        }
+    private void broadcastFrame(int room, EncodedFrame frame) {
+        long t0 = System.nanoTime();
+        int[] recipients = new int[1];
+        roomIndex.forEachLive(room, c -> {
+            send(c, frame);
+            recipients[0]++;
+        });
+        metrics.recordFanout(room, recipients[0], frame.length(), System.nanoTime() - t0);
+    }
+
+    /** All server → client traffic goes through the connection's outbound queue. */
+    private void send(Connection conn, Object message) {
+        Session session = sessions.get(conn);
+        if (session != null && session.isCompressed()) message = compressIfLarge(message);
+        outbound.send(conn, message);
+    }
+
+    // kodira se ovde umesto pri upisu, pa mala poruka ne prolazi kroz Kryo dvaput
+    private Object compressIfLarge(Object message) {
+        EncodedFrame frame = message instanceof EncodedFrame encoded ? encoded : serialization.encode(message);
+        return frame.length() < COMPRESSION_THRESHOLD ? frame : serialization.compress(frame);
+    }
+
+    // --- API za front-end-ove van KryoNet-a (gRPC); sve izmene idu kroz traku sobe ---
+
+    /** Creates the room; completes with false if it already existed. */
+    public CompletableFuture<Boolean> createRoom(String roomName) {
+        return onLane(roomName, "CreateRoom", () -> {
+            boolean created = addRoom(roomName);
+            if (created) broadcastInfo("🆕 New chat room created: " + roomName);
+            return created;
+        });
+    }
+
+    public List<String> roomNames() {
+        String[] roomNames = sessions.roomNames().toArray(new String[0]);
+        Arrays.sort(roomNames);
+        return Arrays.asList(roomNames);
+    }
+
+    /** Sends an invite to a connected user; returns false if the user is offline. */
+    public boolean inviteUser(String userName, String roomName, String inviter) {
+        Session session = sessions.find(userName);
+        if (session == null || !session.getConnection().isConnected()) return false;
+        send(session.getConnection(), new InfoMessage("📩 " + inviter + " invites you to join room '" + roomName + "'."));
+        return true;
+    }
+
+    /** Creates the room if needed and returns up to {@code count} of its latest messages. */
+    public CompletableFuture<List<ChatMessage>> openRoom(String roomName, int count) {
+        return onLane(roomName, "OpenRoom", () -> {
+            addRoom(roomName);
+            return lastMessages(roomName, count);
+        });
+    }
+
+    /**
+     * Stores and broadcasts a message to an existing room, as if a member had
+     * posted it. In a cluster the message may be stored by another node; its
+     * index is then not known here.
+     */
+    public CompletableFuture<ChatMessage> postMessage(String roomName, String sender, String text) {
+        return onLane(roomName, "PostMessage", () -> {
+            if (!sessions.hasRoom(roomName)) {
+                throw new IllegalArgumentException("Room '" + roomName + "' does not exist.");
+            }
+            ChatMessage msg = new ChatMessage(sender, text, roomName);
+            submit(roomName, msg, 0);
+            return msg;
+        });
+    }
 
-        conn.sendTCP(new InfoMessage("📜 Loading additional messages from room '" + roomName + "':"));
-        int start = Math.max(0, messages.size() - 20); 
-        List<ChatMessage> moreMsgs = messages.subList(start, messages.size());
-        for (ChatMessage msg : moreMsgs) conn.sendTCP(msg);
+    /**
+     * Replays the last {@code history} messages of the room to {@code listener}
+     * and then registers it for every new or edited message. Both happen on
+     * the room lane, so nothing falls between the history and the live messages.
+     */
+    public CompletableFuture<Void> subscribe(String roomName, int history, Consumer<ChatMessage> listener) {
+        return onLane(roomName, "Subscribe", () -> {
+            addRoom(roomName);
+            lastMessages(roomName, history).forEach(listener);
+            if (subscribers.add(roomName, listener)) subscribersChanged(roomName);
+            return null;
+        });
     }
 
-    private void addMessageToChatRoom(ChatMessage msg) {
-        String room = msg.getChatRoom() != null ? msg.getChatRoom() : "PublicChatRoom";
-        int index = roomMessageCounters.getOrDefault(room, 0) + 1;
-        roomMessageCounters.put(room, index);
+    public void unsubscribe(String roomName, Consumer<ChatMessage> listener) {
+        if (subscribers.remove(roomName, listener)) subscribersChanged(roomName);
+    }
 
-        msg.setIndex(index); // novo polje u ChatMessage klasi
-        chatRoomsMessages.computeIfAbsent(room, k -> new ArrayList<>()).add(msg);
+    // u klasteru čvor sa pretplatnicima mora da dobija poruke sobe i bez članova
+    private void subscribersChanged(String roomName) {
+        ClusterNode node = cluster;
+        if (node != null) node.localMembersChanged(roomName);
+    }
 
-        List<ChatMessage> list = chatRoomsMessages.get(room);
-        if (list.size() > 10) list.remove(0);
+    private List<ChatMessage> lastMessages(String roomName, int count) {
+        RoomHistory history = chatRoomsMessages.find(roomName);
+        return history == null || count < 1 ? List.of() : history.last(count);
     }
 
-    private void broadcastChatMessage(ChatMessage msg, Connection except) {
-        String user = connectionUserMap.get(except);
-        String room = userActiveRoomsMap.getOrDefault(user, "PublicChatRoom");
-        for (Map.Entry<String, String> e : userActiveRoomsMap.entrySet()) {
-            if (room.equals(e.getValue())) {
-                Connection c = userConnectionMap.get(e.getKey());
-                if (c != null && c.isConnected()) c.sendTCP(msg);
+    private <T> CompletableFuture<T> onLane(String roomName, String type, Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        dispatcher.dispatch(roomName, metrics.timed(type, () -> {
+            try {
+                result.complete(task.get());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
             }
+        }));
+        return result;
+    }
+
+    /** Per-room rates, fan-out and handler latencies; also registered as JMX MBeans while running. */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** Queue depths and slow-consumer counters. */
+    public OutboundQueues getOutboundQueues() {
+        return outbound;
+    }
+
+    /** A local user entered or left the room: tell the other nodes and, as a delta, the room's members. */
+    private void localMembersChanged(String roomName) {
+        if (roomName == null || roomName.isEmpty()) return;
+        ClusterNode node = cluster;
+        if (node != null) node.localMembersChanged(roomName);
+        presence.changed(roomName);
+    }
+
+    /**
+     * Sends the room's member list if it is still the connection's active
+     * room. Switching rooms takes the same lock, so a list computed on one
+     * room's lane can't arrive after the list of the room the user moved to.
+     * The snapshot is taken first, since it may publish a pending delta.
+     */
+    private void sendUserList(Connection conn, String room) {
+        Session session = sessions.get(conn);
+        if (session == null) return;
+        int id = sessions.roomId(room);
+        List<ListUsers> frames = userListFrames(presence.snapshot(room));
+        synchronized (session) {
+            if (session.isClosed() || roomIndex.activeRoom(session.getId()) != id) return;
+            for (ListUsers frame : frames) send(conn, frame);
         }
     }
 
-    private void broadcastInfo(String text) {
-        for (Connection c : userConnectionMap.values()) {
-            if (c.isConnected()) c.sendTCP(new InfoMessage(text));
+    /**
+     * Splits a snapshot like history pages are split, so no frame outgrows
+     * the outbox headroom: {@link ListUsersPart}s, then the plain
+     * {@link ListUsers} that ends the snapshot.
+     */
+    static List<ListUsers> userListFrames(ListUsers users) {
+        String[] names = users.getUsers();
+        List<ListUsers> frames = new ArrayList<>(1);
+        int from = 0;
+        int bytes = 0;
+        for (int i = 0; i < names.length; i++) {
+            int size = length(names[i]) * 3 + 2;
+            if (i > from && bytes + size > MAX_HISTORY_BATCH_BYTES) {
+                frames.add(new ListUsersPart(users.getRoom(), Arrays.copyOfRange(names, from, i), users.getVersion()));
+                from = i;
+                bytes = 0;
+            }
+            bytes += size;
         }
+        if (frames.isEmpty()) frames.add(users);
+        else frames.add(new ListUsers(users.getRoom(), Arrays.copyOfRange(names, from, names.length), users.getVersion()));
+        return frames;
+    }
+
+    /** Members on this node and, in a cluster, on every other node. */
+    private List<String> memberNames(String roomName) {
+        List<String> usersInRoom = localMembers(roomName);
+        ClusterNode node = cluster;
+        if (node != null) usersInRoom.addAll(node.remoteMembers(roomName));
+        return usersInRoom;
+    }
+
+    private List<String> localMembers(String roomName) {
+        int room = sessions.roomId(roomName);
+        List<String> usersInRoom = new ArrayList<>(roomIndex.size(room));
+        roomIndex.forEachMember(room, user -> {
+            String username = sessions.userName(user);
+            if (username != null) usersInRoom.add(username);
+        });
+        return usersInRoom;
     }
 
-    private void broadcastUserListUpdate(String roomName) {
-        List<String> usersInRoom = userActiveRoomsMap.entrySet().stream()
-                .filter(entry -> roomName.equals(entry.getValue()))
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
+    // --- klaster: ovaj server kao jedan čvor ---
 
-        for (String username : usersInRoom) {
-            Connection c = userConnectionMap.get(username);
-            if (c != null && c.isConnected()) {
-                c.sendTCP(new ListUsers(usersInRoom.toArray(new String[0])));
+    /**
+     * Joins a cluster of chat servers: listens for peers on {@code clusterPort}
+     * and keeps dialing {@code peers}. Call after {@link #start()}.
+     */
+    public ClusterNode joinCluster(String nodeId, int clusterPort, List<InetSocketAddress> peers) throws IOException {
+        ClusterNode node = new ClusterNode(nodeId, clusterPort, peers, new ClusterNode.Handler() {
+            @Override
+            public void deliverPrivate(PrivateMessage message) {
+                dispatcher.dispatch("@" + message.getRecipient(), metrics.timed("ForwardedPrivate", () -> {
+                    Session receiver = sessions.find(message.getRecipient());
+                    if (receiver != null && receiver.getConnection().isConnected()) send(receiver.getConnection(), message);
+                    else inbox.offer(message); // otišao u međuvremenu
+                }));
+            }
+
+            @Override
+            public void deliverMulticast(MulticastMessage message, String[] recipients) {
+                dispatcher.dispatch("@" + message.getUser(), metrics.timed("ForwardedMulticast", () -> {
+                    EncodedFrame frame = serialization.encode(message);
+                    for (String recipient : recipients) {
+                        Session receiver = sessions.find(recipient);
+                        if (receiver != null && receiver.getConnection().isConnected()) send(receiver.getConnection(), frame);
+                    }
+                }));
             }
+
+            @Override
+            public void deliverRoomFrame(String room, byte[] bytes) {
+                dispatcher.dispatch(room, metrics.timed("RoomFrame", () -> receiveRoomFrame(room, bytes)));
+            }
+
+            @Override
+            public void remoteMembersChanged(String room) {
+                presence.changed(room);
+            }
+
+            @Override
+            public void remoteUserOnline(String user) {
+                if (inbox.has(user)) dispatcher.dispatch("@" + user, metrics.timed("InboxForward", () -> forwardInbox(user)));
+            }
+
+            @Override
+            public Collection<String> localUsers() {
+                return sessions.userNames();
+            }
+
+            @Override
+            public Collection<String> localRooms() {
+                List<String> rooms = new ArrayList<>();
+                roomIndex.rooms().forEach(room -> rooms.add(sessions.roomName(room)));
+                for (String room : subscribers.rooms()) {
+                    if (!rooms.contains(room)) rooms.add(room);
+                }
+                return rooms;
+            }
+
+            @Override
+            public Collection<String> localMembers(String room) {
+                return ChatServer.this.localMembers(room);
+            }
+
+            @Override
+            public int localSubscribers(String room) {
+                return subscribers.count(room);
+            }
+
+            @Override
+            public void deliverPost(RoomPost post) {
+                dispatcher.dispatch(post.getRoom(), metrics.timed("RoomPost", () -> handlePost(cluster, post)));
+            }
+
+            @Override
+            public void acceptHandoff(RoomHandoff handoff) {
+                dispatcher.dispatch(handoff.getRoom(), metrics.timed("RoomHandoff", () -> takeOver(handoff)));
+            }
+
+            @Override
+            public void restoreHistory(HistoryBatch batch) {
+                dispatcher.dispatch(batch.getRoom(), () -> {
+                    sessions.addRoom(batch.getRoom());
+                    RoomHistory history = chatRoomsMessages.history(batch.getRoom());
+                    for (ChatMessage msg : batch.getMessages()) history.restore(msg);
+                });
+            }
+
+            @Override
+            public void historyWanted(String room, String node) {
+                dispatcher.dispatch(room, () -> {
+                    if (cluster.owns(room)) cluster.sendHistory(node, new HistoryBatch(room, historySnapshot(room), 0));
+                });
+            }
+
+            @Override
+            public void gapsWaiting(String room) {
+                dispatcher.dispatch(room, () -> {
+                    for (RoomPost post : cluster.expireGaps(room)) applyPost(room, post.getMessage(), post.getEditIndex());
+                });
+            }
+
+            @Override
+            public void migrate(String room, String node) {
+                migrateRoom(room, node);
+            }
+
+            @Override
+            public Map<String, Long> ownedRoomMessages() {
+                Map<String, Long> counts = new HashMap<>();
+                for (String room : chatRoomsMessages.rooms()) {
+                    if (cluster.owns(room)) counts.put(room, metrics.messagesIn(sessions.roomId(room)));
+                }
+                return counts;
+            }
+        });
+        node.setAutoBalance(!"false".equalsIgnoreCase(System.getProperty("chat.cluster.balance")));
+        cluster = node; // veze se javljaju već iz start()
+        try {
+            node.start();
+        } catch (IOException e) {
+            cluster = null;
+            throw e;
         }
+        return node;
+    }
+
+    public ClusterNode getCluster() {
+        return cluster;
+    }
+
+    /** Hands an owned room over to another node; completes with false if this node does not own it. */
+    public CompletableFuture<Boolean> migrateRoom(String room, String node) {
+        return onLane(room, "MigrateRoom", () -> {
+            ClusterNode c = cluster;
+            RoomHistory history = chatRoomsMessages.find(room);
+            int lastSequence = history == null ? 0 : history.lastSequence();
+            return c != null && c.handOff(room, node, lastSequence, historySnapshot(room));
+        });
+    }
+
+    /** New owner side of a handoff: history and numbering continue where the old owner stopped. */
+    private void takeOver(RoomHandoff handoff) {
+        String room = handoff.getRoom();
+        sessions.addRoom(room);
+        messageLog.createRoom(room);
+        RoomHistory history = chatRoomsMessages.history(room);
+        for (ChatMessage msg : handoff.getHistory()) {
+            history.restore(msg);
+            messageLog.append(room, serialization.encode(msg));
+        }
+        history.advanceTo(handoff.getLastSequence());
+        cluster.installHandoff(handoff);
+        System.out.println("📥 Took over room '" + room + "' at message " + handoff.getLastSequence() + ".");
+    }
+
+    private ChatMessage[] historySnapshot(String room) {
+        RoomHistory history = chatRoomsMessages.find(room);
+        return history == null ? new ChatMessage[0] : history.snapshot().toArray(new ChatMessage[0]);
+    }
+
+    /**
+     * A message stored on another node. It is kept in this node's recent
+     * history with the index the origin gave it and written to local members
+     * only; the origin already sent it to every other node.
+     */
+    private void receiveRoomFrame(String room, byte[] bytes) {
+        EncodedFrame frame = serialization.wrap(bytes, ChatMessage.class);
+        if (serialization.decode(bytes) instanceof ChatMessage msg) {
+            chatRoomsMessages.history(room).restore(msg);
+            sessions.addRoom(room);
+            subscribers.publish(room, msg);
+        }
+        broadcastFrame(sessions.roomId(room), frame);
     }
 
     public void start() throws IOException {
         try {
             server.start();
             server.bind(portNumber);
-            thread = new Thread(this);
-            thread.start();
+            metrics.registerMBeans();
             System.out.println("ChatServer started on port " + portNumber);
         } catch (IOException e) {
             System.err.println("⚠️ Port " + portNumber + " is busy. Try another one.");
@@ -382,28 +1138,34 @@ public class ChatServer implements Runnable {
     }
 
     public void stop() {
-        running = false;
-        if (thread != null) thread.interrupt();
-    }
-
-    @Override
-    public void run() {
-        running = true;
-        while (running) {
-            try {
-                Thread.sleep(3000);
-            } catch (InterruptedException ignored) {}
-        }
+        ClusterNode node = cluster;
+        if (node != null) node.close();
+        metrics.unregisterMBeans();
+        presence.close();
+        outbound.close();
+        server.stop();
+        dispatcher.close();
+        messageLog.close();
+        inbox.close();
+        serialization.close();
     }
 
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.err.println("Usage: java ChatServer <port>");
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: java ChatServer <port> [grpcPort]");
             return;
         }
         int port = Integer.parseInt(args[0]);
         try {
-            new ChatServer(port).start();
+            ChatServer chatServer = new ChatServer(port);
+            chatServer.start();
+            if (args.length == 2) new ChatGrpcServer(chatServer, Integer.parseInt(args[1])).start();
+            // -Dchat.cluster.port=55001 -Dchat.cluster.peers=host:55002,host:55003 [-Dchat.cluster.node=a]
+            Integer clusterPort = Integer.getInteger("chat.cluster.port");
+            if (clusterPort != null) {
+                chatServer.joinCluster(System.getProperty("chat.cluster.node", "node-" + port), clusterPort,
+                        ClusterNode.parsePeers(System.getProperty("chat.cluster.peers")));
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
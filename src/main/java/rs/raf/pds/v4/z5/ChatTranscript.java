@@ -0,0 +1,163 @@
+package main.java.rs.raf.pds.v4.z5;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javafx.beans.Observable;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import main.java.rs.raf.pds.v4.z5.messages.ChatMessage;
+
+/**
+ * Lines of the chat window. Room messages are indexed by room and message
+ * index, so an edit (or a history page repeating a message already shown)
+ * changes that one line in place instead of rebuilding the list; the list
+ * reports the change through its extractor and only the affected cell is
+ * redrawn. Only the newest {@code scrollback} lines are kept.
+ *
+ * Not thread-safe: use it on the JavaFX thread.
+ */
+public class ChatTranscript {
+
+    public static final int DEFAULT_SCROLLBACK = 2000;
+
+    /** One line of the window: a room message, or plain text (info, private messages) with index -1. */
+    public static final class Line {
+        private final StringProperty text = new SimpleStringProperty();
+        private final String room;
+        private final int index;
+        private ChatMessage message;
+
+        private Line(String text, ChatMessage message) {
+            this.text.set(text);
+            this.message = message;
+            this.room = message == null ? null : message.getChatRoom();
+            this.index = message == null ? -1 : message.getIndex();
+        }
+
+        public String getText() {
+            return text.get();
+        }
+
+        /** The room message shown on this line, or null for plain text. */
+        public ChatMessage getMessage() {
+            return message;
+        }
+
+        public String getRoom() {
+            return room;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public String toString() {
+            return getText();
+        }
+    }
+
+    private final ObservableList<Line> lines = FXCollections.observableArrayList(line -> new Observable[] { line.text });
+    // soba -> indeks poruke -> red
+    private final Map<String, Map<Integer, Line>> rooms = new HashMap<>();
+    private final int scrollback;
+
+    public ChatTranscript(int scrollback) {
+        if (scrollback < 1) throw new IllegalArgumentException("scrollback must be positive: " + scrollback);
+        this.scrollback = scrollback;
+    }
+
+    /** Scrollback from {@code -Dchat.scrollback} (default {@value #DEFAULT_SCROLLBACK}). */
+    public static ChatTranscript fromSystemProperties() {
+        return new ChatTranscript(Integer.getInteger("chat.scrollback", DEFAULT_SCROLLBACK));
+    }
+
+    public ObservableList<Line> lines() {
+        return lines;
+    }
+
+    public void add(String text) {
+        addAll(List.of(text));
+    }
+
+    /** Shows the message; if its (room, index) is already on screen, that line is updated in place. */
+    public void put(ChatMessage msg) {
+        addAll(List.of(msg));
+    }
+
+    /**
+     * Applies a batch in order, {@link ChatMessage}s as in {@link #put} and
+     * anything else as a text line. New lines go to the list in one change,
+     * and the list is trimmed at most once.
+     */
+    public void addAll(Collection<?> entries) {
+        List<Line> added = new ArrayList<>(entries.size());
+        for (Object entry : entries) {
+            Line line = entry instanceof ChatMessage msg ? upsert(msg) : new Line(String.valueOf(entry), null);
+            if (line != null) added.add(line);
+        }
+        if (added.isEmpty()) return;
+        lines.addAll(added);
+        // skraćuje se u komadima, da brisanje s početka liste ne ide na svaku poruku
+        if (lines.size() > scrollback + Math.max(1, scrollback / 16)) trim();
+    }
+
+    /**
+     * The server renumbered the room: lines already shown stay as plain text,
+     * and messages arriving with the same indexes get lines of their own
+     * instead of overwriting the old ones.
+     */
+    public void reset(String room) {
+        Map<Integer, Line> byIndex = rooms.remove(room);
+        if (byIndex == null) return;
+        for (Line line : byIndex.values()) line.message = null; // odgovor ili izmena bi gađali novu poruku s tim indeksom
+    }
+
+    /** The line showing the message, or null if it is not (or no longer) on screen. */
+    public Line find(String room, int index) {
+        Map<Integer, Line> byIndex = rooms.get(room);
+        return byIndex == null ? null : byIndex.get(index);
+    }
+
+    public int size() {
+        return lines.size();
+    }
+
+    static String format(ChatMessage msg) {
+        return "(" + msg.getIndex() + ") " + msg.getFormattedTimestamp()
+                + " (" + msg.getChatRoom() + ") " + msg.getUser() + ": " + msg.getTxt();
+    }
+
+    // novi red, ili null ako je postojeći (možda još u istoj seriji) izmenjen na mestu
+    private Line upsert(ChatMessage msg) {
+        if (msg.getChatRoom() == null || msg.getIndex() <= 0) return new Line(format(msg), null);
+        Map<Integer, Line> byIndex = rooms.computeIfAbsent(msg.getChatRoom(), k -> new HashMap<>());
+        Line line = byIndex.get(msg.getIndex());
+        if (line != null) {
+            line.message = msg;
+            line.text.set(format(msg));
+            return null;
+        }
+        line = new Line(format(msg), msg);
+        byIndex.put(msg.getIndex(), line);
+        return line;
+    }
+
+    private void trim() {
+        List<Line> oldest = lines.subList(0, lines.size() - scrollback);
+        for (Line line : oldest) {
+            if (line.room == null) continue;
+            Map<Integer, Line> byIndex = rooms.get(line.room);
+            // red iz pre reset-a više nije u mapi; isti indeks sada može imati drugi red
+            if (byIndex == null || !byIndex.remove(line.index, line)) continue;
+            if (byIndex.isEmpty()) rooms.remove(line.room);
+        }
+        oldest.clear();
+    }
+}
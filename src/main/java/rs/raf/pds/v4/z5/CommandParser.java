@@ -0,0 +1,83 @@
+package main.java.rs.raf.pds.v4.z5;
+
+import java.util.Locale;
+
+import main.java.rs.raf.pds.v4.z5.messages.Command;
+import main.java.rs.raf.pds.v4.z5.messages.CreateRoom;
+import main.java.rs.raf.pds.v4.z5.messages.Edit;
+import main.java.rs.raf.pds.v4.z5.messages.GetMoreMessages;
+import main.java.rs.raf.pds.v4.z5.messages.GetRooms;
+import main.java.rs.raf.pds.v4.z5.messages.History;
+import main.java.rs.raf.pds.v4.z5.messages.Invite;
+import main.java.rs.raf.pds.v4.z5.messages.JoinRoom;
+import main.java.rs.raf.pds.v4.z5.messages.LeaveRoom;
+import main.java.rs.raf.pds.v4.z5.messages.Reply;
+import main.java.rs.raf.pds.v4.z5.messages.Stats;
+
+/**
+ * Turns a "/COMMAND args" line typed by the user into a typed {@link Command}.
+ * {@code /GETMOREMESSAGES} is returned with a zero cursor; the client fills in
+ * the cursor it keeps for the active room.
+ */
+public final class CommandParser {
+
+    private CommandParser() {
+    }
+
+    /** @throws IllegalArgumentException with a message meant for the user */
+    public static Command parse(String input) {
+        String[] parts = input.trim().split("\\s+", 3);
+        String keyword = parts[0].toUpperCase(Locale.ROOT);
+
+        switch (keyword) {
+            case "/CREATE":
+                if (parts.length >= 2) return new CreateRoom(parts[1]);
+                break;
+            case "/LISTROOMS":
+                return new GetRooms();
+            case "/JOIN":
+                if (parts.length >= 2) return new JoinRoom(parts[1]);
+                break;
+            case "/INVITE":
+                if (parts.length >= 3) {
+                    String invitedUser = parts[1].replace("@", "");
+                    String roomName = parts[2].split("\\s+")[0].replace("@", "");
+                    return new Invite(invitedUser, roomName);
+                }
+                break;
+            case "/HISTORY":
+                if (parts.length >= 2) {
+                    Integer n = parsePositive(parts[1]);
+                    if (n != null) return new History(n);
+                }
+                break;
+            case "/GETMOREMESSAGES":
+                return new GetMoreMessages();
+            case "/LEAVEROOM":
+                return new LeaveRoom();
+            case "/STATS":
+                return new Stats();
+            case "/REPLY":
+            case "/EDIT":
+                if (parts.length >= 3) {
+                    Integer index = parsePositive(parts[1]);
+                    if (index != null) {
+                        return keyword.equals("/REPLY") ? new Reply(index, parts[2]) : new Edit(index, parts[2]);
+                    }
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command: " + parts[0]);
+        }
+        throw new IllegalArgumentException("Invalid arguments for " + keyword + ".");
+    }
+
+    private static Integer parsePositive(String value) {
+        try {
+            int n = Integer.parseInt(value);
+            return n > 0 ? n : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package main.java.rs.raf.pds.v4.z5;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import main.java.rs.raf.pds.v4.z5.messages.ChatMessage;
+import main.java.rs.raf.pds.v4.z5.messages.KryoUtil;
+
+/**
+ * Room messages the client has seen, kept on disk per room and keyed by
+ * message index, so a room can be shown as soon as it is joined and the
+ * server asked only for the messages after the newest cached one.
+ *
+ * Each room is a file of {@code [length][ChatMessage]} records appended as
+ * messages arrive; an edit is appended again under its index and the last
+ * copy wins. Only the newest {@code maxMessages} of a room are kept, and the
+ * file is rewritten with just those once it holds twice as many records.
+ * Files stay open for appending until {@link #close()}.
+ */
+public class HistoryCache implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_MESSAGES = 500;
+
+    private static final class Room {
+        final TreeMap<Integer, ChatMessage> messages = new TreeMap<>();
+        int records;
+        OutputStream out; // otvoren pri prvom upisu
+    }
+
+    private final Path dir;
+    private final int maxMessages;
+    private final Kryo kryo = new Kryo();
+    private final Output output = new Output(256, -1);
+    private final Map<String, Room> rooms = new HashMap<>(); // guarded by this
+    private boolean dirCreated; // guarded by this
+
+    public HistoryCache(Path dir, int maxMessages) {
+        if (maxMessages < 1) throw new IllegalArgumentException("maxMessages must be positive: " + maxMessages);
+        this.dir = dir;
+        this.maxMessages = maxMessages;
+        kryo.setReferences(false);
+        kryo.setRegistrationRequired(true);
+        KryoUtil.registerKryoClasses(kryo);
+    }
+
+    /**
+     * The cache of one user on one server, under {@code -Dchat.cache.dir}
+     * (default {@code ~/.chatrooms/cache}) and holding {@code -Dchat.cache.messages}
+     * per room (default {@value #DEFAULT_MAX_MESSAGES}); null if that is 0.
+     */
+    public static HistoryCache fromSystemProperties(String host, int port, String user) {
+        int maxMessages = Integer.getInteger("chat.cache.messages", DEFAULT_MAX_MESSAGES);
+        if (maxMessages < 1) return null;
+        Path root = Paths.get(System.getProperty("chat.cache.dir",
+                Paths.get(System.getProperty("user.home"), ".chatrooms", "cache").toString()));
+        return new HistoryCache(root.resolve(fileName(host + "_" + port)).resolve(fileName(user)), maxMessages);
+    }
+
+    /** Cached messages of the room, oldest first. */
+    public synchronized List<ChatMessage> messages(String room) {
+        return new ArrayList<>(room(room).messages.values());
+    }
+
+    /** Stores a room message; messages without a room or index are ignored. */
+    public synchronized void put(ChatMessage msg) {
+        String name = msg.getChatRoom();
+        if (name == null || msg.getIndex() <= 0) return;
+        Room room = room(name);
+        if (room.messages.size() >= maxMessages && msg.getIndex() < room.messages.firstKey()) return;
+        room.messages.put(msg.getIndex(), msg);
+        while (room.messages.size() > maxMessages) room.messages.pollFirstEntry();
+        try {
+            if (++room.records > 2 * maxMessages) {
+                rewrite(name, room);
+            } else {
+                if (room.out == null) {
+                    room.out = Files.newOutputStream(file(name), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                room.out.write(record(msg));
+            }
+        } catch (IOException e) {
+            System.err.println("⚠️ Cannot write history cache for room '" + name + "': " + e.getMessage());
+            closeQuietly(room);
+        }
+    }
+
+    /** Forgets everything cached for the room, e.g. when the server's numbering of it changed. */
+    public synchronized void clear(String name) {
+        Room room = rooms.remove(name);
+        if (room != null) closeQuietly(room);
+        try {
+            Files.deleteIfExists(file(name));
+        } catch (IOException e) {
+            System.err.println("⚠️ Cannot clear history cache for room '" + name + "': " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Room room : rooms.values()) closeQuietly(room);
+    }
+
+    private Room room(String name) {
+        Room room = rooms.get(name);
+        if (room == null) {
+            room = load(name);
+            rooms.put(name, room);
+        }
+        return room;
+    }
+
+    private Room load(String name) {
+        Room room = new Room();
+        Path file = file(name);
+        if (!Files.exists(file)) return room;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < 0 || length > 1 << 20) throw new IOException("bad record length " + length);
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                ChatMessage msg = kryo.readObject(new Input(bytes), ChatMessage.class);
+                room.messages.put(msg.getIndex(), msg);
+                room.records++;
+            }
+        } catch (IOException | RuntimeException e) {
+            // oštećen rep (npr. prekinut upis) se odbacuje pri sledećem prepisivanju
+            System.err.println("⚠️ History cache for room '" + name + "' is damaged: " + e.getMessage());
+            room.records = Integer.MAX_VALUE / 2;
+        }
+        while (room.messages.size() > maxMessages) room.messages.pollFirstEntry();
+        return room;
+    }
+
+    private void rewrite(String name, Room room) throws IOException {
+        closeQuietly(room);
+        Path file = file(name);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+            for (ChatMessage msg : room.messages.values()) out.write(record(msg));
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        room.records = room.messages.size();
+    }
+
+    // ceo zapis u jednom nizu, pa je upis jedan poziv
+    private byte[] record(ChatMessage msg) {
+        output.clear();
+        output.writeInt(0);
+        kryo.writeObject(output, msg);
+        byte[] bytes = output.toBytes();
+        int length = bytes.length - 4;
+        bytes[0] = (byte) (length >>> 24);
+        bytes[1] = (byte) (length >>> 16);
+        bytes[2] = (byte) (length >>> 8);
+        bytes[3] = (byte) length;
+        return bytes;
+    }
+
+    private static void closeQuietly(Room room) {
+        if (room.out == null) return;
+        try {
+            room.out.close();
+        } catch (IOException ignored) {
+            // zapis je već poslat OS-u, nema šta da se spase
+        }
+        room.out = null;
+    }
+
+    private Path file(String room) {
+        if (!dirCreated) {
+            try {
+                Files.createDirectories(dir);
+                dirCreated = true;
+            } catch (IOException e) {
+                System.err.println("⚠️ Cannot create history cache " + dir + ": " + e.getMessage());
+            }
+        }
+        return dir.resolve(fileName(room) + ".log");
+    }
+
+    // ime sobe ili korisnika -> bezbedno ime fajla (bez '.', '*', '/' ...)
+    private static String fileName(String name) {
+        return URLEncoder.encode(name, StandardCharsets.UTF_8)
+                .replace("*", "%2A")
+                .replace(".", "%2E");
+    }
+}
@@ -0,0 +1,698 @@
+package main.java.rs.raf.pds.v4.z5.cluster;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryonet.Client;
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.Listener;
+import com.esotericsoftware.kryonet.Server;
+
+import main.java.rs.raf.pds.v4.z5.messages.ChatMessage;
+import main.java.rs.raf.pds.v4.z5.messages.HistoryBatch;
+import main.java.rs.raf.pds.v4.z5.messages.KryoUtil;
+import main.java.rs.raf.pds.v4.z5.messages.MulticastMessage;
+import main.java.rs.raf.pds.v4.z5.messages.PrivateMessage;
+import main.java.rs.raf.pds.v4.z5.server.ServerMetrics;
+
+/**
+ * Links one chat server to its peers. Every node listens on a cluster port and
+ * dials every peer; a node's own state (who is logged in, who is in which
+ * room) travels only over the link it dialed, so each peer sees that node's
+ * updates in the order they happened.
+ *
+ * The shared view is a directory user → node and, per room, the members on
+ * every node. A private message goes to the one node holding the recipient;
+ * a room message goes once to each node with members in the room, which then
+ * writes it to its own members. When a link drops, everything learned from
+ * that node is forgotten until it reconnects and sends a fresh snapshot.
+ *
+ * Every room has one owner, picked by a {@link HashRing} over the nodes that
+ * are up, unless the room was explicitly moved. Only the owner numbers and
+ * stores the room's messages; other nodes send it {@link RoomPost}s and keep
+ * a read-only copy of the recent history while they have members in the room.
+ * A room is moved with {@link #handOff}, either by hand (JMX operation
+ * {@code migrateRoom}) or by the balancer, which every
+ * {@value #BALANCE_INTERVAL_MILLIS} ms moves one busy room from a node that
+ * stores clearly more messages than the least busy one.
+ */
+public class ClusterNode implements AutoCloseable {
+
+    /** Inter-node links carry whole room snapshots, so their buffers are larger than a client's. */
+    public static final int WRITE_BUFFER_SIZE = 256 * 1024;
+    public static final int OBJECT_BUFFER_SIZE = 64 * 1024;
+    static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    static final int RECONNECT_MILLIS = 1000;
+    static final long BALANCE_INTERVAL_MILLIS = 10_000;
+
+    /** JMX view of the node; {@code migrateRoom} moves a room by hand. */
+    public interface ClusterMBean {
+        String getNodeId();
+        String getNodes();
+        int getRemoteUsers();
+        long getRoomFramesSent();
+        long getPrivatesForwarded();
+        long getMulticastsForwarded();
+        long getPostsForwarded();
+        long getMigrations();
+        double getMessagesPerSecond();
+        String getOwnerOf(String room);
+        String migrateRoom(String room, String node);
+    }
+
+    /** What the chat server does with traffic from peers and what it reports about itself. */
+    public interface Handler {
+        /** A private message for a user connected to this node. */
+        void deliverPrivate(PrivateMessage message);
+        /** A multicast message for {@code recipients}, all connected to this node. */
+        void deliverMulticast(MulticastMessage message, String[] recipients);
+        /** A message posted to {@code room} on another node, encoded for clients. */
+        void deliverRoomFrame(String room, byte[] frame);
+        /** The members of {@code room} on some other node changed. */
+        void remoteMembersChanged(String room);
+        /** {@code user} is now online on another node. */
+        void remoteUserOnline(String user);
+        Collection<String> localUsers();
+        /** Rooms with at least one member or subscriber on this node. */
+        Collection<String> localRooms();
+        Collection<String> localMembers(String room);
+        /** Listeners of the room on this node that are not members, e.g. gRPC streams. */
+        int localSubscribers(String room);
+
+        /** A post for a room this node owns, or owned until recently; runs {@link #admit} on the room lane. */
+        void deliverPost(RoomPost post);
+        /** This node becomes the room's owner; restore the history, then call {@link #installHandoff}. */
+        void acceptHandoff(RoomHandoff handoff);
+        /** Recent history from the owner of a room this node now has members in. */
+        void restoreHistory(HistoryBatch batch);
+        /** {@code node} got its first member in a room this node owns; send it {@link #sendHistory}. */
+        void historyWanted(String room, String node);
+        /** Posts of the room wait for a missing one; call {@link #expireGaps} on the room lane. */
+        void gapsWaiting(String room);
+        /** The balancer wants the room moved; call {@link #handOff} on the room lane. */
+        void migrate(String room, String node);
+        /** Messages stored so far in each room this node owns. */
+        Map<String, Long> ownedRoomMessages();
+    }
+
+    private final String nodeId;
+    private final int port;
+    private final Handler handler;
+    private final Server server;
+    private final List<Peer> peers = new ArrayList<>();
+    private final ConcurrentMap<String, Peer> peersByNode = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Connection, String> inboundNodes = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, String> userNodes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, String[]>> roomMembers = new ConcurrentHashMap<>();
+    // stanje ovog čvora se šalje pod ovom bravom, da snimak pri povezivanju i izmene ne bi preticali jedni druge
+    private final Object stateLock = new Object();
+
+    private volatile HashRing ring;
+    private final ConcurrentMap<String, Owner> movedRooms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, PostGate> gates = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> postSeqs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Double> nodeLoads = new ConcurrentHashMap<>();
+    private final RoomBalancer balancer = new RoomBalancer();
+    private volatile boolean autoBalance = true;
+
+    private final LongAdder roomFramesSent = new LongAdder();
+    private final LongAdder privatesForwarded = new LongAdder();
+    private final LongAdder multicastsForwarded = new LongAdder(); // jedan po čvoru primaoca
+    private final LongAdder postsForwarded = new LongAdder();
+    private final LongAdder migrations = new LongAdder();
+    private volatile boolean running;
+    private Thread reconnector;
+    private ObjectName mbeanName;
+
+    private static final class Owner {
+        final String node;
+        final long epoch;
+
+        Owner(String node, long epoch) {
+            this.node = node;
+            this.epoch = epoch;
+        }
+    }
+
+    public ClusterNode(String nodeId, int port, List<InetSocketAddress> peerAddresses, Handler handler) {
+        this.nodeId = nodeId;
+        this.port = port;
+        this.handler = handler;
+        this.server = new Server(WRITE_BUFFER_SIZE, OBJECT_BUFFER_SIZE);
+        registerKryoClasses(server.getKryo());
+        server.addListener(new Inbound());
+        for (InetSocketAddress address : peerAddresses) peers.add(new Peer(address));
+        this.ring = new HashRing(List.of(nodeId));
+    }
+
+    /** Chat messages plus the cluster messages, IDs 60 and up. */
+    public static void registerKryoClasses(Kryo kryo) {
+        KryoUtil.registerKryoClasses(kryo);
+        kryo.register(byte[].class, 60);
+        kryo.register(NodeHello.class, 61);
+        kryo.register(UserPresence.class, 62);
+        kryo.register(RoomPresence.class, 63);
+        kryo.register(ForwardedPrivate.class, 64);
+        kryo.register(RoomFrame.class, 65);
+        kryo.register(RoomPost.class, 66);
+        kryo.register(RoomHandoff.class, 67);
+        kryo.register(RoomOwner.class, 68);
+        kryo.register(NodeLoad.class, 69);
+        kryo.register(int[].class, 70);
+        kryo.register(ForwardedMulticast.class, 71);
+    }
+
+    /** Parses "host:port,host:port"; a missing host means localhost. */
+    public static List<InetSocketAddress> parsePeers(String list) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        if (list == null || list.isBlank()) return addresses;
+        for (String peer : list.split(",")) {
+            peer = peer.trim();
+            int colon = peer.lastIndexOf(':');
+            String host = colon > 0 ? peer.substring(0, colon) : "localhost";
+            addresses.add(new InetSocketAddress(host, Integer.parseInt(peer.substring(colon + 1))));
+        }
+        return addresses;
+    }
+
+    public void start() throws IOException {
+        server.start();
+        server.bind(port);
+        running = true;
+        for (Peer peer : peers) peer.client.start();
+        reconnector = new Thread(this::reconnectLoop, "cluster-" + nodeId + "-links");
+        reconnector.setDaemon(true);
+        reconnector.start();
+        registerMBean();
+        System.out.println("🔗 Cluster node '" + nodeId + "' listening on port " + port + ", peers " + peers);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        unregisterMBean();
+        if (reconnector != null) reconnector.interrupt();
+        for (Peer peer : peers) peer.client.stop();
+        server.stop();
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /** {@code -Dchat.cluster.balance=false} leaves rooms where the ring put them. */
+    public void setAutoBalance(boolean autoBalance) {
+        this.autoBalance = autoBalance;
+    }
+
+    // --- vlasništvo nad sobama ---
+
+    /** Node that numbers and stores the room's messages. */
+    public String ownerOf(String room) {
+        Owner moved = movedRooms.get(room);
+        if (moved != null && (moved.node.equals(nodeId) || ring.contains(moved.node))) return moved.node;
+        return ring.ownerOf(room);
+    }
+
+    public boolean owns(String room) {
+        return nodeId.equals(ownerOf(room));
+    }
+
+    /** Nodes currently on the ring: this one plus every peer linked in both directions. */
+    public Set<String> nodes() {
+        return ring.nodes();
+    }
+
+    /** Wraps a message posted here; call on the room lane so the origin sequence follows the lane order. */
+    public RoomPost newPost(String room, ChatMessage message, int editIndex) {
+        int seq = postSeqs.computeIfAbsent(room, k -> new AtomicInteger()).incrementAndGet();
+        return new RoomPost(room, nodeId, seq, message, editIndex);
+    }
+
+    /** Sends the post to the room's owner; false if this node is the owner or the owner is unreachable. */
+    public boolean forward(RoomPost post) {
+        String owner = ownerOf(post.getRoom());
+        Peer peer = owner == null || owner.equals(nodeId) ? null : peersByNode.get(owner);
+        if (peer == null || !peer.client.isConnected()) return false;
+        peer.client.sendTCP(post);
+        postsForwarded.increment();
+        return true;
+    }
+
+    /** Posts the owner may store now, in origin order. Room lane only. */
+    public List<RoomPost> admit(RoomPost post) {
+        return gates.computeIfAbsent(post.getRoom(), k -> new PostGate(false)).admit(post, System.currentTimeMillis());
+    }
+
+    /** Posts that waited too long for a missing predecessor. Room lane only. */
+    public List<RoomPost> expireGaps(String room) {
+        PostGate gate = gates.get(room);
+        return gate == null ? List.of() : gate.expire(System.currentTimeMillis());
+    }
+
+    /**
+     * Moves a room this node owns to {@code target}: the target gets the
+     * history, the last sequence and the per-origin positions, then whatever
+     * was still waiting in the gate; everyone is told about the new owner.
+     * Posts reaching this node later are forwarded. Call on the room lane.
+     */
+    public boolean handOff(String room, String target, int lastSequence, ChatMessage[] history) {
+        Peer peer = peersByNode.get(target);
+        if (!owns(room) || target.equals(nodeId) || peer == null || !peer.client.isConnected()) return false;
+        Owner current = movedRooms.get(room);
+        long epoch = current == null ? 1 : current.epoch + 1;
+
+        PostGate gate = gates.remove(room);
+        String[] origins = gate == null ? new String[0] : gate.originIds();
+        int[] originSeqs = new int[origins.length];
+        for (int i = 0; i < origins.length; i++) originSeqs[i] = gate.lastOf(origins[i]);
+
+        movedRooms.put(room, new Owner(target, epoch));
+        peer.client.sendTCP(new RoomHandoff(room, epoch, lastSequence, history, origins, originSeqs));
+        if (gate != null) {
+            for (RoomPost post : gate.pending()) peer.client.sendTCP(post);
+        }
+        sendToAll(new RoomOwner(room, target, epoch));
+        migrations.increment();
+        System.out.println("🚚 Room '" + room + "' moved to node '" + target + "' (" + history.length + " messages).");
+        return true;
+    }
+
+    /** Takes over the room after its history has been restored. Room lane only. */
+    public void installHandoff(RoomHandoff handoff) {
+        PostGate gate = new PostGate(true);
+        for (int i = 0; i < handoff.getOrigins().length; i++) gate.setLast(handoff.getOrigins()[i], handoff.getOriginSeqs()[i]);
+        gates.put(handoff.getRoom(), gate);
+        movedRooms.put(handoff.getRoom(), new Owner(nodeId, handoff.getEpoch()));
+    }
+
+    /** Sends recent history of an owned room to a node that just got members there. */
+    public void sendHistory(String node, HistoryBatch batch) {
+        Peer peer = peersByNode.get(node);
+        if (peer != null && peer.client.isConnected()) peer.client.sendTCP(batch);
+    }
+
+    // --- stanje ovog čvora ---
+
+    public void userOnline(String user) {
+        synchronized (stateLock) {
+            sendToAll(new UserPresence(nodeId, user, true));
+        }
+    }
+
+    public void userOffline(String user) {
+        synchronized (stateLock) {
+            sendToAll(new UserPresence(nodeId, user, false));
+        }
+    }
+
+    /**
+     * Sends the current local members of the room; call after every local
+     * join or leave, and when the room gets its first or loses its last subscriber.
+     */
+    public void localMembersChanged(String room) {
+        synchronized (stateLock) {
+            sendToAll(localPresence(room));
+        }
+    }
+
+    private RoomPresence localPresence(String room) {
+        return new RoomPresence(nodeId, room, handler.localMembers(room).toArray(new String[0]), handler.localSubscribers(room));
+    }
+
+    // --- saobraćaj ka drugim čvorovima ---
+
+    /** Sends the message to the node holding its recipient; false if no connected node has the user. */
+    public boolean forwardPrivate(PrivateMessage message) {
+        String node = userNodes.get(message.getRecipient());
+        Peer peer = node == null ? null : peersByNode.get(node);
+        if (peer == null || !peer.client.isConnected()) return false;
+        peer.client.sendTCP(new ForwardedPrivate(nodeId, message));
+        privatesForwarded.increment();
+        return true;
+    }
+
+    /**
+     * Sends the message once to every node holding some of {@code recipients},
+     * with just that node's share of them. Returns the recipients no connected
+     * node has.
+     */
+    public List<String> forwardMulticast(MulticastMessage message, Collection<String> recipients) {
+        Map<Peer, List<String>> byPeer = new HashMap<>();
+        List<String> missed = new ArrayList<>();
+        for (String user : recipients) {
+            String node = userNodes.get(user);
+            Peer peer = node == null ? null : peersByNode.get(node);
+            if (peer == null || !peer.client.isConnected()) missed.add(user);
+            else byPeer.computeIfAbsent(peer, k -> new ArrayList<>()).add(user);
+        }
+        byPeer.forEach((peer, users) -> {
+            peer.client.sendTCP(new ForwardedMulticast(nodeId, message, users.toArray(new String[0])));
+            multicastsForwarded.increment();
+        });
+        return missed;
+    }
+
+    /** Sends the encoded room message once to every other node with members or subscribers in the room. */
+    public void broadcastRoom(String room, byte[] frame) {
+        Map<String, String[]> nodes = roomMembers.get(room);
+        if (nodes == null || nodes.isEmpty()) return;
+        RoomFrame message = null;
+        for (String node : nodes.keySet()) {
+            Peer peer = peersByNode.get(node);
+            if (peer == null || !peer.client.isConnected()) continue;
+            if (message == null) message = new RoomFrame(room, frame);
+            peer.client.sendTCP(message);
+            roomFramesSent.increment();
+        }
+    }
+
+    /** Members of the room on all other nodes. */
+    public List<String> remoteMembers(String room) {
+        Map<String, String[]> nodes = roomMembers.get(room);
+        if (nodes == null) return List.of();
+        List<String> users = new ArrayList<>();
+        for (String[] members : nodes.values()) users.addAll(List.of(members));
+        return users;
+    }
+
+    /** Node the user is logged in to, or null if no other node has it. */
+    public String nodeOf(String user) {
+        return userNodes.get(user);
+    }
+
+    public long roomFramesSent() {
+        return roomFramesSent.sum();
+    }
+
+    public long privatesForwarded() {
+        return privatesForwarded.sum();
+    }
+
+    /** Multicasts sent on to other nodes, counted once per node however many recipients it has. */
+    public long multicastsForwarded() {
+        return multicastsForwarded.sum();
+    }
+
+    public long postsForwarded() {
+        return postsForwarded.sum();
+    }
+
+    public long migrations() {
+        return migrations.sum();
+    }
+
+    @Override
+    public String toString() {
+        int connected = 0;
+        for (Peer peer : peers) if (peer.client.isConnected()) connected++;
+        return String.format("node %s  peers %d/%d  ring %s  remote users %d  room frames sent %d  "
+                        + "privates forwarded %d  multicasts forwarded %d  posts forwarded %d  migrations %d  "
+                        + "load %.1f msg/s",
+                nodeId, connected, peers.size(), ring.nodes(), userNodes.size(), roomFramesSent(),
+                privatesForwarded(), multicastsForwarded(), postsForwarded(), migrations(), balancer.load());
+    }
+
+    /**
+     * Recomputes the ring from the nodes that are up. Rooms this node owns
+     * that the new ring would give to another node are first pinned here and
+     * then handed over like a migration, so the new owner gets the history and
+     * the last sequence instead of numbering the room again from its own.
+     */
+    private synchronized void updateRing() {
+        Set<String> up = new HashSet<>();
+        up.add(nodeId);
+        for (String node : inboundNodes.values()) {
+            if (peersByNode.containsKey(node)) up.add(node);
+        }
+        if (up.equals(ring.nodes())) return;
+        HashRing next = new HashRing(up);
+        Map<String, String> moving = new HashMap<>();
+        for (String room : handler.ownedRoomMessages().keySet()) {
+            Owner current = movedRooms.get(room);
+            if (current != null && current.node.equals(nodeId)) continue; // izričito premeštena ovde, prsten je ne pomera
+            String target = next.ownerOf(room);
+            if (target.equals(nodeId)) continue;
+            long epoch = current == null ? 0 : current.epoch + 1;
+            movedRooms.put(room, new Owner(nodeId, epoch));
+            sendToAll(new RoomOwner(room, nodeId, epoch)); // ostali šalju ovde dok predaja ne stigne
+            moving.put(room, target);
+        }
+        ring = next;
+        moving.forEach(handler::migrate);
+    }
+
+    private void applyOwner(RoomOwner owner) {
+        if (owner.getNodeId().equals(nodeId)) return; // sebe postavlja tek kad obradi predaju, u traci sobe
+        movedRooms.merge(owner.getRoom(), new Owner(owner.getNodeId(), owner.getEpoch()),
+                (old, cur) -> cur.epoch > old.epoch ? cur : old);
+    }
+
+    private void tick() {
+        for (Map.Entry<String, PostGate> e : gates.entrySet()) {
+            if (e.getValue().hasGaps()) handler.gapsWaiting(e.getKey());
+        }
+        long now = System.currentTimeMillis();
+        if (!balancer.due(now, BALANCE_INTERVAL_MILLIS)) return;
+        Map<String, Double> rates = balancer.sample(handler.ownedRoomMessages(), now);
+        sendToAll(new NodeLoad(nodeId, balancer.load()));
+        if (!autoBalance) return;
+
+        String target = null;
+        double least = Double.MAX_VALUE;
+        for (Map.Entry<String, Double> e : nodeLoads.entrySet()) {
+            if (ring.contains(e.getKey()) && e.getValue() < least) {
+                target = e.getKey();
+                least = e.getValue();
+            }
+        }
+        if (target == null) return;
+        String room = balancer.pick(rates, least);
+        if (room != null) {
+            balancer.cooldown(now, 2 * BALANCE_INTERVAL_MILLIS);
+            nodeLoads.put(target, least + rates.get(room)); // do sledećeg izveštaja cilja
+            handler.migrate(room, target);
+        }
+    }
+
+    private void registerMBean() {
+        ClusterMBean view = new ClusterMBean() {
+            @Override public String getNodeId() { return nodeId; }
+            @Override public String getNodes() { return ring.nodes().toString(); }
+            @Override public int getRemoteUsers() { return userNodes.size(); }
+            @Override public long getRoomFramesSent() { return roomFramesSent(); }
+            @Override public long getPrivatesForwarded() { return privatesForwarded(); }
+            @Override public long getMulticastsForwarded() { return multicastsForwarded(); }
+            @Override public long getPostsForwarded() { return postsForwarded(); }
+            @Override public long getMigrations() { return migrations(); }
+            @Override public double getMessagesPerSecond() { return balancer.load(); }
+            @Override public String getOwnerOf(String room) { return ownerOf(room); }
+
+            @Override
+            public String migrateRoom(String room, String node) {
+                if (!owns(room)) return "Room '" + room + "' is owned by " + ownerOf(room) + "; ask that node.";
+                if (!ring.contains(node) || node.equals(nodeId)) return "Node '" + node + "' is not a peer.";
+                handler.migrate(room, node);
+                return "Moving '" + room + "' to " + node + ".";
+            }
+        };
+        try {
+            ObjectName name = new ObjectName(ServerMetrics.DOMAIN + ":port=" + port + ",type=Cluster");
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(view, ClusterMBean.class, false), name);
+            mbeanName = name;
+        } catch (JMException e) {
+            System.err.println("⚠️ Cannot register cluster MBean: " + e.getMessage());
+        }
+    }
+
+    private void unregisterMBean() {
+        if (mbeanName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+        } catch (JMException ignored) {
+            // već odjavljen
+        }
+        mbeanName = null;
+    }
+
+    private void sendToAll(Object message) {
+        for (Peer peer : peers) {
+            if (peer.client.isConnected()) peer.client.sendTCP(message);
+        }
+    }
+
+    private void reconnectLoop() {
+        while (running) {
+            for (Peer peer : peers) {
+                if (!running || peer.client.isConnected()) continue;
+                try {
+                    peer.client.connect(CONNECT_TIMEOUT_MILLIS, peer.address.getHostString(), peer.address.getPort());
+                } catch (IOException e) {
+                    if (!peer.reportedDown) {
+                        System.err.println("⚠️ Cluster peer " + peer.address + " unreachable, retrying: " + e.getMessage());
+                        peer.reportedDown = true;
+                    }
+                }
+            }
+            try {
+                tick();
+            } catch (RuntimeException e) {
+                System.err.println("⚠️ Cluster tick failed: " + e);
+            }
+            try {
+                Thread.sleep(RECONNECT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // --- stanje drugih čvorova, stiže na update niti servera ---
+
+    private void applyHello(NodeHello hello) {
+        forgetNode(hello.getNodeId());
+        for (String user : hello.getUsers()) {
+            userNodes.put(user, hello.getNodeId());
+            handler.remoteUserOnline(user);
+        }
+    }
+
+    private void applyUserPresence(UserPresence presence) {
+        if (presence.isOnline()) {
+            userNodes.put(presence.getUser(), presence.getNodeId());
+            handler.remoteUserOnline(presence.getUser());
+        } else {
+            userNodes.remove(presence.getUser(), presence.getNodeId());
+        }
+    }
+
+    private void applyRoomPresence(RoomPresence presence) {
+        String room = presence.getRoom();
+        // čvor samo sa pretplatnicima ostaje u mapi sa praznim nizom: dobija poruke, a nema članove
+        if (presence.getUsers().length == 0 && presence.getSubscribers() == 0) {
+            Map<String, String[]> nodes = roomMembers.get(room);
+            if (nodes == null || nodes.remove(presence.getNodeId()) == null) return;
+        } else {
+            String[] previous = roomMembers.computeIfAbsent(room, k -> new ConcurrentHashMap<>())
+                    .put(presence.getNodeId(), presence.getUsers());
+            if (previous == null && owns(room)) handler.historyWanted(room, presence.getNodeId());
+        }
+        handler.remoteMembersChanged(room);
+    }
+
+    private void forgetNode(String node) {
+        nodeLoads.remove(node);
+        userNodes.values().removeIf(node::equals);
+        roomMembers.forEach((room, nodes) -> {
+            if (nodes.remove(node) != null) handler.remoteMembersChanged(room);
+        });
+    }
+
+    /** Link dialed by another node; everything that node says about itself arrives here. */
+    private final class Inbound extends Listener {
+        @Override
+        public void received(Connection connection, Object object) {
+            if (object instanceof NodeHello hello) {
+                inboundNodes.put(connection, hello.getNodeId());
+                applyHello(hello);
+                updateRing();
+                connection.sendTCP(new NodeHello(nodeId, new String[0])); // samo predstavljanje, bez korisnika
+                System.out.println("🔗 Cluster node '" + hello.getNodeId() + "' joined with "
+                        + hello.getUsers().length + " users.");
+            } else if (object instanceof UserPresence presence) {
+                applyUserPresence(presence);
+            } else if (object instanceof RoomPresence presence) {
+                applyRoomPresence(presence);
+            } else if (object instanceof RoomFrame frame) {
+                handler.deliverRoomFrame(frame.getRoom(), frame.getFrame());
+            } else if (object instanceof ForwardedPrivate forwarded) {
+                handler.deliverPrivate(forwarded.getMessage());
+            } else if (object instanceof ForwardedMulticast forwarded) {
+                handler.deliverMulticast(forwarded.getMessage(), forwarded.getRecipients());
+            } else if (object instanceof RoomPost post) {
+                handler.deliverPost(post);
+            } else if (object instanceof HistoryBatch batch) {
+                handler.restoreHistory(batch);
+            } else if (object instanceof RoomHandoff handoff) {
+                handler.acceptHandoff(handoff);
+            } else if (object instanceof RoomOwner owner) {
+                applyOwner(owner);
+            } else if (object instanceof NodeLoad load) {
+                nodeLoads.put(load.getNodeId(), load.getMessagesPerSecond());
+            }
+        }
+
+        @Override
+        public void disconnected(Connection connection) {
+            String node = inboundNodes.remove(connection);
+            // čvor se možda već ponovo povezao novom vezom, pa stara ne sme da obriše novi snimak
+            if (node == null || inboundNodes.containsValue(node)) return;
+            forgetNode(node);
+            updateRing();
+            System.out.println("🔌 Cluster node '" + node + "' left.");
+        }
+    }
+
+    /** Link this node dialed; it carries our state out and learns the peer's node id. */
+    private final class Peer extends Listener {
+        final InetSocketAddress address;
+        final Client client = new Client(WRITE_BUFFER_SIZE, OBJECT_BUFFER_SIZE);
+        volatile String node;
+        volatile boolean reportedDown;
+
+        Peer(InetSocketAddress address) {
+            this.address = address;
+            registerKryoClasses(client.getKryo());
+            client.addListener(this);
+        }
+
+        @Override
+        public void connected(Connection connection) {
+            reportedDown = false;
+            synchronized (stateLock) {
+                connection.sendTCP(new NodeHello(nodeId, handler.localUsers().toArray(new String[0])));
+                for (String room : handler.localRooms()) {
+                    connection.sendTCP(localPresence(room));
+                }
+            }
+        }
+
+        @Override
+        public void received(Connection connection, Object object) {
+            if (object instanceof NodeHello hello) {
+                node = hello.getNodeId();
+                peersByNode.put(node, this);
+                updateRing();
+            }
+        }
+
+        @Override
+        public void disconnected(Connection connection) {
+            String old = node;
+            if (old != null && peersByNode.remove(old, this)) updateRing();
+        }
+
+        @Override
+        public String toString() {
+            return address.getHostString() + ":" + address.getPort();
+        }
+    }
+}
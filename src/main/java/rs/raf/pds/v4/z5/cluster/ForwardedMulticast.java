@@ -0,0 +1,31 @@
+package main.java.rs.raf.pds.v4.z5.cluster;
+
+import main.java.rs.raf.pds.v4.z5.messages.MulticastMessage;
+
+/** A multicast message for the listed recipients connected to the receiving node. */
+public class ForwardedMulticast {
+	String fromNode;
+	MulticastMessage message;
+	String[] recipients;
+
+	protected ForwardedMulticast() {
+
+	}
+	public ForwardedMulticast(String fromNode, MulticastMessage message, String[] recipients) {
+		this.fromNode = fromNode;
+		this.message = message;
+		this.recipients = recipients;
+	}
+
+	public String getFromNode() {
+		return fromNode;
+	}
+
+	public MulticastMessage getMessage() {
+		return message;
+	}
+
+	public String[] getRecipients() {
+		return recipients;
+	}
+}
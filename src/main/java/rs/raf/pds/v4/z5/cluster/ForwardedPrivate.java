@@ -0,0 +1,25 @@
+package main.java.rs.raf.pds.v4.z5.cluster;
+
+import main.java.rs.raf.pds.v4.z5.messages.PrivateMessage;
+
+/** A private message for a user connected to the receiving node. */
+public class ForwardedPrivate {
+	String fromNode;
+	PrivateMessage message;
+
+	protected ForwardedPrivate() {
+
+	}
+	public ForwardedPrivate(String fromNode, PrivateMessage message) {
+		this.fromNode = fromNode;
+		this.message = message;
+	}
+
+	public String getFromNode() {
+		return fromNode;
+	}
+
+	public PrivateMessage getMessage() {
+		return message;
+	}
+}
@@ -0,0 +1,65 @@
+package main.java.rs.raf.pds.v4.z5.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Consistent hashing of room names onto node ids. Every node is placed on the
+ * ring {@value #VIRTUAL_NODES} times, so rooms spread evenly and a node joining
+ * or leaving moves only about 1/n of the rooms. Positions come from MD5, so
+ * every node computes the same owner for the same set of nodes.
+ *
+ * Immutable; a membership change builds a new ring.
+ */
+public final class HashRing {
+
+    public static final int VIRTUAL_NODES = 128;
+
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+    private final Set<String> nodes;
+
+    public HashRing(Collection<String> nodes) {
+        this.nodes = new TreeSet<>(nodes);
+        for (String node : this.nodes) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) ring.put(hash(node + "#" + i), node);
+        }
+    }
+
+    /** Node owning the key, or null for an empty ring. */
+    public String ownerOf(String key) {
+        if (ring.isEmpty()) return null;
+        Map.Entry<Long, String> e = ring.ceilingEntry(hash(key));
+        return e != null ? e.getValue() : ring.firstEntry().getValue();
+    }
+
+    public Set<String> nodes() {
+        return nodes;
+    }
+
+    public boolean contains(String node) {
+        return nodes.contains(node);
+    }
+
+    static long hash(String key) {
+        try {
+            byte[] d = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long h = 0;
+            for (int i = 0; i < 8; i++) h = (h << 8) | (d[i] & 0xFF);
+            return h;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // MD5 postoji u svakom JDK-u
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HashRing" + nodes;
+    }
+}
@@ -0,0 +1,23 @@
+package main.java.rs.raf.pds.v4.z5.cluster;
+
+/** First message on a link: who the node is and which users are connected to it. */
+public class NodeHello {
+	String nodeId;
+	String[] users;
+
+	protected NodeHello() {
+
+	}
+	public NodeHello(String nodeId, String[] users) {
+		this.nodeId = nodeId;
+		this.users = users;
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	public String[] getUsers() {
+		return users;
+	}
+}
@@ -0,0 +1,23 @@
+package main.java.rs.raf.pds.v4.z5.cluster;
+
+/** Messages per second stored in the rooms the sending node owns. */
+public class NodeLoad {
+	String nodeId;
+	double messagesPerSecond;
+
+	protected NodeLoad() {
+
+	}
+	public NodeLoad(String nodeId, double messagesPerSecond) {
+		this.nodeId = nodeId;
+		this.messagesPerSecond = messagesPerSecond;
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	public double getMessagesPerSecond() {
+		return messagesPerSecond;
+	}
+}
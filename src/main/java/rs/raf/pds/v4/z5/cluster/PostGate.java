@@ -0,0 +1,108 @@
+package main.java.rs.raf.pds.v4.z5.cluster;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Puts the posts of one room back in per-origin order on the owner. A post
+ * that skips ahead of its origin's sequence waits until the missing ones
+ * arrive, or at most {@value #GAP_TIMEOUT_MILLIS} ms if one was lost with a
+ * failed node. An origin seen for the first time is taken as it comes,
+ * except on a gate created by a handoff: there every post the old owner did
+ * not store is still on its way, so unknown origins start at sequence 1.
+ *
+ * Not thread-safe: the owner only touches it from the room's lane; only
+ * {@link #hasGaps()} may be read from elsewhere.
+ */
+final class PostGate {
+
+    static final long GAP_TIMEOUT_MILLIS = 2000;
+
+    private final Map<String, Origin> origins = new HashMap<>();
+    private final boolean strict;
+    private volatile int waiting;
+
+    private static final class Origin {
+        int last;
+        final TreeMap<Integer, RoomPost> pending = new TreeMap<>();
+        long waitingSince;
+
+        Origin(int last) {
+            this.last = last;
+        }
+    }
+
+    PostGate(boolean strict) {
+        this.strict = strict;
+    }
+
+    /** Posts that may be stored now, in order; empty if {@code post} has to wait. */
+    List<RoomPost> admit(RoomPost post, long now) {
+        Origin o = origins.get(post.getOrigin());
+        if (o == null && !strict) {
+            origins.put(post.getOrigin(), new Origin(post.getOriginSeq()));
+            return List.of(post);
+        }
+        if (o == null) {
+            o = new Origin(0);
+            origins.put(post.getOrigin(), o);
+        }
+        int seq = post.getOriginSeq();
+        if (seq <= o.last) return List.of(post); // zakasnela posle isteka čekanja; bolje van reda nego izgubljena
+        if (seq > o.last + 1) {
+            if (o.pending.isEmpty()) o.waitingSince = now;
+            if (o.pending.put(seq, post) == null) waiting++;
+            return List.of();
+        }
+        List<RoomPost> ready = new ArrayList<>();
+        ready.add(post);
+        o.last = seq;
+        while (!o.pending.isEmpty() && o.pending.firstKey() == o.last + 1) {
+            ready.add(o.pending.pollFirstEntry().getValue());
+            o.last++;
+            waiting--;
+        }
+        if (!o.pending.isEmpty()) o.waitingSince = now;
+        return ready;
+    }
+
+    /** Gives up on gaps older than the timeout and returns what waited behind them. */
+    List<RoomPost> expire(long now) {
+        List<RoomPost> ready = new ArrayList<>();
+        for (Origin o : origins.values()) {
+            if (o.pending.isEmpty() || now - o.waitingSince < GAP_TIMEOUT_MILLIS) continue;
+            for (RoomPost post : o.pending.values()) ready.add(post);
+            o.last = o.pending.lastKey();
+            waiting -= o.pending.size();
+            o.pending.clear();
+        }
+        return ready;
+    }
+
+    boolean hasGaps() {
+        return waiting > 0;
+    }
+
+    /** Posts still waiting, e.g. to pass on with a handoff. */
+    List<RoomPost> pending() {
+        List<RoomPost> posts = new ArrayList<>();
+        for (Origin o : origins.values()) posts.addAll(o.pending.values());
+        return posts;
+    }
+
+    String[] originIds() {
+        return origins.keySet().toArray(new String[0]);
+    }
+
+    int lastOf(String origin) {
+        Origin o = origins.get(origin);
+        return o == null ? 0 : o.last;
+    }
+
+    void setLast(String origin, int last) {
+        origins.put(origin, new Origin(last));
+    }
+}
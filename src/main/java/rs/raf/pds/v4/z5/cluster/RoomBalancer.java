@@ -0,0 +1,77 @@
+package main.java.rs.raf.pds.v4.z5.cluster;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decides which owned room, if any, to move to the least busy node. Load is
+ * messages stored per second over the last interval. A room moves only if
+ * this node is clearly busier than the target and the move lowers the higher
+ * of the two loads; among such rooms the one closest to half the difference
+ * is taken. A single hot room therefore ends up alone on a node while the
+ * quieter rooms gather elsewhere, instead of bouncing between nodes.
+ */
+final class RoomBalancer {
+
+    /** Below this many messages per second nothing is worth moving. */
+    static final double MIN_LOAD = 5.0;
+    static final double IMBALANCE = 1.25;
+
+    private final Map<String, Long> lastCounts = new HashMap<>();
+    private long lastMillis;
+    private long nextMillis;
+    private volatile double load;
+
+    boolean due(long now, long interval) {
+        if (now < nextMillis) return false;
+        nextMillis = now + interval;
+        return true;
+    }
+
+    void cooldown(long now, long millis) {
+        nextMillis = Math.max(nextMillis, now + millis);
+    }
+
+    /** Per-room rates since the previous sample; also updates {@link #load()}. */
+    Map<String, Double> sample(Map<String, Long> counts, long now) {
+        Map<String, Double> rates = new HashMap<>();
+        double seconds = lastMillis == 0 ? 0 : (now - lastMillis) / 1000.0;
+        double total = 0;
+        for (Map.Entry<String, Long> e : counts.entrySet()) {
+            Long before = lastCounts.get(e.getKey());
+            if (seconds > 0 && before != null) {
+                double rate = (e.getValue() - before) / seconds;
+                rates.put(e.getKey(), rate);
+                total += rate;
+            }
+        }
+        lastCounts.clear();
+        lastCounts.putAll(counts);
+        lastMillis = now;
+        load = total;
+        return rates;
+    }
+
+    double load() {
+        return load;
+    }
+
+    /** Room to move to a node carrying {@code targetLoad}, or null. */
+    String pick(Map<String, Double> rates, double targetLoad) {
+        double own = load;
+        if (own < MIN_LOAD || own < targetLoad * IMBALANCE) return null;
+        double gap = own - targetLoad;
+        String best = null;
+        double bestDistance = Double.MAX_VALUE;
+        for (Map.Entry<String, Double> e : rates.entrySet()) {
+            double rate = e.getValue();
+            if (rate <= 0 || rate >= gap) continue; // ne bi smanjilo veće od dva opterećenja
+            double distance = Math.abs(rate - gap / 2);
+            if (distance < bestDistance) {
+                best = e.getKey();
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+}
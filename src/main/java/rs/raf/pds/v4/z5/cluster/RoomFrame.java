@@ -0,0 +1,26 @@
+package main.java.rs.raf.pds.v4.z5.cluster;
+
+/**
+ * A room message, already encoded for clients, sent once to each node with
+ * members in the room; the node writes the same bytes to its local members.
+ */
+public class RoomFrame {
+	String room;
+	byte[] frame;
+
+	protected RoomFrame() {
+
+	}
+	public RoomFrame(String room, byte[] frame) {
+		this.room = room;
+		this.frame = frame;
+	}
+
+	public String getRoom() {
+		return room;
+	}
+
+	public byte[] getFrame() {
+		return frame;
+	}
+}
@@ -0,0 +1,53 @@
+package main.java.rs.raf.pds.v4.z5.cluster;
+
+import main.java.rs.raf.pds.v4.z5.messages.ChatMessage;
+
+/**
+ * Everything the new owner of a room needs from the old one: recent history,
+ * the last sequence number given out and, per origin node, the last post
+ * already stored, so posts still in flight are neither lost nor reordered.
+ */
+public class RoomHandoff {
+	String room;
+	long epoch;
+	int lastSequence;
+	ChatMessage[] history;
+	String[] origins;
+	int[] originSeqs;
+
+	protected RoomHandoff() {
+
+	}
+	public RoomHandoff(String room, long epoch, int lastSequence, ChatMessage[] history, String[] origins, int[] originSeqs) {
+		this.room = room;
+		this.epoch = epoch;
+		this.lastSequence = lastSequence;
+		this.history = history;
+		this.origins = origins;
+		this.originSeqs = originSeqs;
+	}
+
+	public String getRoom() {
+		return room;
+	}
+
+	public long getEpoch() {
+		return epoch;
+	}
+
+	public int getLastSequence() {
+		return lastSequence;
+	}
+
+	public ChatMessage[] getHistory() {
+		return history;
+	}
+
+	public String[] getOrigins() {
+		return origins;
+	}
+
+	public int[] getOriginSeqs() {
+		return originSeqs;
+	}
+}
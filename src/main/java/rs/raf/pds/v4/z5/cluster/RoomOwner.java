@@ -0,0 +1,29 @@
+package main.java.rs.raf.pds.v4.z5.cluster;
+
+/** A room was moved to {@code nodeId}; the higher epoch wins. */
+public class RoomOwner {
+	String room;
+	String nodeId;
+	long epoch;
+
+	protected RoomOwner() {
+
+	}
+	public RoomOwner(String room, String nodeId, long epoch) {
+		this.room = room;
+		this.nodeId = nodeId;
+		this.epoch = epoch;
+	}
+
+	public String getRoom() {
+		return room;
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	public long getEpoch() {
+		return epoch;
+	}
+}
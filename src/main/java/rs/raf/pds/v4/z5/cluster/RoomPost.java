@@ -0,0 +1,48 @@
+package main.java.rs.raf.pds.v4.z5.cluster;
+
+import main.java.rs.raf.pds.v4.z5.messages.ChatMessage;
+
+/**
+ * A message posted on one node, on its way to the room's owner. Posts from the
+ * same origin carry consecutive sequence numbers per room, so the owner can
+ * restore their order when some of them took a detour through a former owner.
+ * A non-zero {@code editIndex} makes it an edit of that message.
+ */
+public class RoomPost {
+	String room;
+	String origin;
+	int originSeq;
+	ChatMessage message;
+	int editIndex;
+
+	protected RoomPost() {
+
+	}
+	public RoomPost(String room, String origin, int originSeq, ChatMessage message, int editIndex) {
+		this.room = room;
+		this.origin = origin;
+		this.originSeq = originSeq;
+		this.message = message;
+		this.editIndex = editIndex;
+	}
+
+	public String getRoom() {
+		return room;
+	}
+
+	public String getOrigin() {
+		return origin;
+	}
+
+	public int getOriginSeq() {
+		return originSeq;
+	}
+
+	public ChatMessage getMessage() {
+		return message;
+	}
+
+	public int getEditIndex() {
+		return editIndex;
+	}
+}
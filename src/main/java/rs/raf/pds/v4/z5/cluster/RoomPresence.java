@@ -0,0 +1,39 @@
+package main.java.rs.raf.pds.v4.z5.cluster;
+
+/**
+ * Current members of a room on the sending node, and how many other listeners
+ * (gRPC streams) it has there. A node with neither is out of the room; one
+ * with listeners only still needs the room's messages.
+ */
+public class RoomPresence {
+	String nodeId;
+	String room;
+	String[] users;
+	int subscribers;
+
+	protected RoomPresence() {
+
+	}
+	public RoomPresence(String nodeId, String room, String[] users, int subscribers) {
+		this.nodeId = nodeId;
+		this.room = room;
+		this.users = users;
+		this.subscribers = subscribers;
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	public String getRoom() {
+		return room;
+	}
+
+	public String[] getUsers() {
+		return users;
+	}
+
+	public int getSubscribers() {
+		return subscribers;
+	}
+}
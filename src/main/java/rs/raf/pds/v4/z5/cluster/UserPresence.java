@@ -0,0 +1,29 @@
+package main.java.rs.raf.pds.v4.z5.cluster;
+
+/** A user logged in to, or disconnected from, the sending node. */
+public class UserPresence {
+	String nodeId;
+	String user;
+	boolean online;
+
+	protected UserPresence() {
+
+	}
+	public UserPresence(String nodeId, String user, boolean online) {
+		this.nodeId = nodeId;
+		this.user = user;
+		this.online = online;
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	public String getUser() {
+		return user;
+	}
+
+	public boolean isOnline() {
+		return online;
+	}
+}
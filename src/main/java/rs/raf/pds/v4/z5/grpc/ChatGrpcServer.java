@@ -0,0 +1,39 @@
+package main.java.rs.raf.pds.v4.z5.grpc;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import io.grpc.Server;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+
+import main.java.rs.raf.pds.v4.z5.ChatServer;
+
+/** gRPC (HTTP/2) front end of a {@link ChatServer}, listening on its own port. */
+public class ChatGrpcServer implements AutoCloseable {
+
+    private final Server server;
+    private final int port;
+
+    public ChatGrpcServer(ChatServer chat, int port) {
+        this.port = port;
+        this.server = NettyServerBuilder.forPort(port)
+                .addService(new ChatGrpcService(chat))
+                .build();
+    }
+
+    public void start() throws IOException {
+        server.start();
+        System.out.println("gRPC ChatService started on port " + port);
+    }
+
+    @Override
+    public void close() {
+        server.shutdown();
+        try {
+            if (!server.awaitTermination(5, TimeUnit.SECONDS)) server.shutdownNow();
+        } catch (InterruptedException e) {
+            server.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
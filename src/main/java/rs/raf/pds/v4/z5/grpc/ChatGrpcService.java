@@ -0,0 +1,230 @@
+package main.java.rs.raf.pds.v4.z5.grpc;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import main.java.rs.raf.pds.v4.z5.ChatServer;
+import main.java.rs.raf.pds.v4.z5.messages.ChatMessage;
+
+/**
+ * {@code chat.ChatService} on top of a running {@link ChatServer}: rooms,
+ * history and broadcasts are shared with the KryoNet clients.
+ *
+ * Both streaming RPCs follow HTTP/2 flow control. SubscribeRoom only writes
+ * while the call is ready and buffers at most {@value #MAX_BUFFERED} messages
+ * for a subscriber that stopped reading, then fails it with
+ * RESOURCE_EXHAUSTED. SendMessages requests {@value #SEND_WINDOW} messages up
+ * front and one more each time a message has been stored and broadcast.
+ */
+public class ChatGrpcService extends ChatServiceGrpc.ChatServiceImplBase {
+
+    public static final int JOIN_HISTORY = 10;
+    static final int MAX_BUFFERED = 256;
+    static final int SEND_WINDOW = 32;
+
+    private final ChatServer chat;
+
+    public ChatGrpcService(ChatServer chat) {
+        this.chat = chat;
+    }
+
+    @Override
+    public void createRoom(CreateRoomRequest request, StreamObserver<CreateRoomResponse> response) {
+        String room = request.getRoomName();
+        if (room.isBlank()) {
+            reply(response, CreateRoomResponse.newBuilder().setSuccess(false).setMessage("Missing room name.").build());
+            return;
+        }
+        chat.createRoom(room).whenComplete((created, error) -> {
+            if (error != null) {
+                response.onError(Status.INTERNAL.withDescription(error.getMessage()).asRuntimeException());
+                return;
+            }
+            reply(response, CreateRoomResponse.newBuilder()
+                    .setSuccess(created)
+                    .setMessage(created ? "Room '" + room + "' created." : "Room '" + room + "' already exists.")
+                    .build());
+        });
+    }
+
+    @Override
+    public void inviteUser(InviteUserRequest request, StreamObserver<InviteUserResponse> response) {
+        boolean sent = !request.getUsername().isBlank() && !request.getRoomName().isBlank()
+                && chat.inviteUser(request.getUsername(), request.getRoomName(), "Server");
+        reply(response, InviteUserResponse.newBuilder()
+                .setSuccess(sent)
+                .setMessage(sent ? "Invite sent to user " + request.getUsername() + "."
+                        : "User " + request.getUsername() + " is not found / offline.")
+                .build());
+    }
+
+    @Override
+    public void listRooms(Empty request, StreamObserver<ListRoomsResponse> response) {
+        reply(response, ListRoomsResponse.newBuilder().addAllRooms(chat.roomNames()).build());
+    }
+
+    @Override
+    public void joinRoom(JoinRoomRequest request, StreamObserver<JoinRoomResponse> response) {
+        if (request.getRoomName().isBlank()) {
+            response.onError(Status.INVALID_ARGUMENT.withDescription("Missing room name.").asRuntimeException());
+            return;
+        }
+        chat.openRoom(request.getRoomName(), JOIN_HISTORY).whenComplete((messages, error) -> {
+            if (error != null) {
+                response.onError(Status.INTERNAL.withDescription(error.getMessage()).asRuntimeException());
+                return;
+            }
+            JoinRoomResponse.Builder builder = JoinRoomResponse.newBuilder();
+            for (ChatMessage msg : messages) builder.addLastMessages(toProto(msg));
+            reply(response, builder.build());
+        });
+    }
+
+    @Override
+    public void subscribeRoom(SubscribeRoomRequest request, StreamObserver<Message> response) {
+        String room = request.getRoomName();
+        if (room.isBlank()) {
+            response.onError(Status.INVALID_ARGUMENT.withDescription("Missing room name.").asRuntimeException());
+            return;
+        }
+        RoomStream stream = new RoomStream(room, (ServerCallStreamObserver<Message>) response);
+        chat.subscribe(room, request.getHistory(), stream).whenComplete((ignored, error) -> {
+            if (error != null) stream.fail(Status.INTERNAL.withDescription(error.getMessage()));
+            else if (stream.closed) chat.unsubscribe(room, stream); // otkazan pre nego što je prijava stigla na red
+        });
+    }
+
+    @Override
+    public StreamObserver<SendMessageRequest> sendMessages(StreamObserver<SendMessagesResponse> response) {
+        ServerCallStreamObserver<SendMessagesResponse> call = (ServerCallStreamObserver<SendMessagesResponse>) response;
+        call.disableAutoRequest();
+        call.request(SEND_WINDOW);
+
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger pending = new AtomicInteger(1); // +1 dok klijent ne zatvori stream
+        AtomicReference<String> lastError = new AtomicReference<>("");
+        AtomicBoolean finished = new AtomicBoolean();
+
+        Runnable done = () -> {
+            if (pending.decrementAndGet() == 0 && finished.compareAndSet(false, true)) {
+                reply(response, SendMessagesResponse.newBuilder()
+                        .setAccepted(accepted.get())
+                        .setRejected(rejected.get())
+                        .setMessage(lastError.get())
+                        .build());
+            }
+        };
+
+        return new StreamObserver<>() {
+            @Override
+            public void onNext(SendMessageRequest request) {
+                if (request.getRoomName().isBlank() || request.getSender().isBlank() || request.getText().isBlank()) {
+                    rejected.incrementAndGet();
+                    lastError.set("Missing room name, sender or text.");
+                    call.request(1);
+                    return;
+                }
+                pending.incrementAndGet();
+                chat.postMessage(request.getRoomName(), request.getSender(), request.getText())
+                        .whenComplete((msg, error) -> {
+                            if (error == null) {
+                                accepted.incrementAndGet();
+                            } else {
+                                rejected.incrementAndGet();
+                                lastError.set(error.getCause() != null ? error.getCause().getMessage() : error.getMessage());
+                            }
+                            if (!finished.get()) call.request(1);
+                            done.run();
+                        });
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                finished.set(true);
+            }
+
+            @Override
+            public void onCompleted() {
+                done.run();
+            }
+        };
+    }
+
+    static Message toProto(ChatMessage msg) {
+        Message.Builder builder = Message.newBuilder()
+                .setSender(nullToEmpty(msg.getUser()))
+                .setText(nullToEmpty(msg.getTxt()))
+                .setRoomName(nullToEmpty(msg.getChatRoom()))
+                .setIndex(msg.getIndex());
+        if (msg.getTimestamp() != null) builder.setTimestamp(msg.getTimestamp().toString());
+        return builder.build();
+    }
+
+    private static String nullToEmpty(String s) {
+        return s == null ? "" : s;
+    }
+
+    private static <T> void reply(StreamObserver<T> response, T value) {
+        response.onNext(value);
+        response.onCompleted();
+    }
+
+    /**
+     * One SubscribeRoom call. Messages arrive on the room lane and are written
+     * only while the transport is ready; the rest wait in a bounded queue that
+     * is drained from the call's onReady handler.
+     */
+    private final class RoomStream implements Consumer<ChatMessage> {
+        private final String room;
+        private final ServerCallStreamObserver<Message> call;
+        private final Queue<Message> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        volatile boolean closed;
+
+        RoomStream(String room, ServerCallStreamObserver<Message> call) {
+            this.room = room;
+            this.call = call;
+            call.setOnReadyHandler(this::drain);
+            call.setOnCancelHandler(() -> {
+                closed = true;
+                chat.unsubscribe(room, this);
+            });
+        }
+
+        @Override
+        public void accept(ChatMessage msg) {
+            if (closed) return;
+            if (queued.incrementAndGet() > MAX_BUFFERED) {
+                fail(Status.RESOURCE_EXHAUSTED.withDescription("Subscriber of '" + room + "' is too slow."));
+                return;
+            }
+            queue.add(toProto(msg));
+            drain();
+        }
+
+        synchronized void fail(Status status) {
+            if (closed) return;
+            closed = true;
+            chat.unsubscribe(room, this);
+            queue.clear();
+            call.onError(status.asRuntimeException());
+        }
+
+        private synchronized void drain() {
+            Message msg;
+            while (!closed && call.isReady() && (msg = queue.poll()) != null) {
+                queued.decrementAndGet();
+                call.onNext(msg);
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package main.java.rs.raf.pds.v4.z5.load;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import com.esotericsoftware.minlog.Log;
+
+import main.java.rs.raf.pds.v4.z5.ChatServer;
+import main.java.rs.raf.pds.v4.z5.server.LatencyHistogram;
+import main.java.rs.raf.pds.v4.z5.server.RoomDispatcher;
+
+/**
+ * Headless load generator for ChatServer.
+ *
+ * Spawns virtual users spread over rooms, each posting at a fixed rate and
+ * optionally hopping to another room ({@code churn} joins per user per
+ * minute). After ramp-up and warm-up it measures for {@code duration}
+ * seconds and reports delivery latency percentiles (send → receipt by every
+ * room member, sender's echo included) and throughput.
+ *
+ * Usage: LoadGenerator [--host=localhost] [--port=54555] [--embedded]
+ *        [--users=500] [--rooms=25] [--rate=1.0] [--churn=0] [--size=64]
+ *        [--rampup=5] [--warmup=5] [--duration=30] [--threads=4]
+ *
+ * With {@code --embedded} a ChatServer is started in this JVM on a temporary
+ * data directory, which is removed afterwards.
+ */
+public class LoadGenerator {
+
+    private static final int CLIENT_WRITE_BUFFER_SIZE = 8192;
+    private static final int CLIENT_OBJECT_BUFFER_SIZE = 65536;
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int REPORT_INTERVAL_S = 5;
+
+    private final String host;
+    private final int port;
+    private final int users;
+    private final int rooms;
+    private final double rate;
+    private final double churn;
+    private final int size;
+    private final int rampUpSeconds;
+    private final int warmupSeconds;
+    private final int durationSeconds;
+    private final int threads;
+
+    private final VirtualUser.Stats stats = new VirtualUser.Stats();
+    private final List<VirtualUser> virtualUsers = new ArrayList<>();
+
+    LoadGenerator(Map<String, String> options) {
+        this.host = options.getOrDefault("host", "localhost");
+        this.port = Integer.parseInt(options.getOrDefault("port", "54555"));
+        this.users = Integer.parseInt(options.getOrDefault("users", "500"));
+        this.rooms = Integer.parseInt(options.getOrDefault("rooms", "25"));
+        this.rate = Double.parseDouble(options.getOrDefault("rate", "1.0"));
+        this.churn = Double.parseDouble(options.getOrDefault("churn", "0"));
+        this.size = Integer.parseInt(options.getOrDefault("size", "64"));
+        this.rampUpSeconds = Integer.parseInt(options.getOrDefault("rampup", "5"));
+        this.warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        this.durationSeconds = Integer.parseInt(options.getOrDefault("duration", "30"));
+        this.threads = Integer.parseInt(options.getOrDefault("threads", "4"));
+        if (users < 1 || rooms < 1 || rate <= 0 || durationSeconds < 1) {
+            throw new IllegalArgumentException("users, rooms, rate and duration must be positive");
+        }
+    }
+
+    void run() throws InterruptedException {
+        System.out.printf("▶ %d users, %d rooms, %.2f msg/s per user, churn %.2f/min, %d B payload → %s:%d%n",
+                users, rooms, rate, churn, size, host, port);
+
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(threads, r -> {
+            Thread t = new Thread(r, "load-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        String payload = "x".repeat(Math.max(0, size));
+        long postPeriodNs = (long) (1_000_000_000L / rate);
+        long churnPeriodNs = churn > 0 ? (long) (60_000_000_000L / churn) : 0;
+
+        try {
+            rampUp(scheduler, payload, postPeriodNs, churnPeriodNs);
+
+            Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+            stats.reset();
+            long start = System.nanoTime();
+            for (int elapsed = 0; elapsed < durationSeconds; elapsed += REPORT_INTERVAL_S) {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(Math.min(REPORT_INTERVAL_S, durationSeconds - elapsed)));
+                progress(System.nanoTime() - start);
+            }
+            report(System.nanoTime() - start);
+        } finally {
+            scheduler.shutdownNow();
+            for (VirtualUser vu : virtualUsers) vu.close();
+        }
+    }
+
+    // korisnici se povezuju ravnomerno tokom ramp-up perioda, da login ne bi bio jedan talas
+    private void rampUp(ScheduledExecutorService scheduler, String payload, long postPeriodNs, long churnPeriodNs)
+            throws InterruptedException {
+        long gapNs = users > 1 ? TimeUnit.SECONDS.toNanos(rampUpSeconds) / users : 0;
+        long begin = System.nanoTime();
+        int failed = 0;
+        for (int i = 0; i < users; i++) {
+            long due = begin + i * gapNs;
+            long wait = due - System.nanoTime();
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+
+            VirtualUser vu = new VirtualUser("vu" + i, roomName(i % rooms),
+                    CLIENT_WRITE_BUFFER_SIZE, CLIENT_OBJECT_BUFFER_SIZE, stats);
+            try {
+                vu.connect(host, port, CONNECT_TIMEOUT_MS);
+            } catch (IOException e) {
+                failed++;
+                vu.close();
+                continue;
+            }
+            virtualUsers.add(vu);
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            scheduler.scheduleAtFixedRate(() -> vu.post(payload),
+                    random.nextLong(postPeriodNs), postPeriodNs, TimeUnit.NANOSECONDS);
+            if (churnPeriodNs > 0) {
+                scheduler.scheduleAtFixedRate(() -> vu.moveTo(roomName(ThreadLocalRandom.current().nextInt(rooms))),
+                        random.nextLong(churnPeriodNs), churnPeriodNs, TimeUnit.NANOSECONDS);
+            }
+        }
+        System.out.printf("✅ %d users connected in %.1f s%s%n", virtualUsers.size(),
+                (System.nanoTime() - begin) / 1e9, failed > 0 ? " (" + failed + " failed to connect)" : "");
+    }
+
+    private static String roomName(int i) {
+        return "load-" + i;
+    }
+
+    private void progress(long elapsedNs) {
+        double seconds = elapsedNs / 1e9;
+        System.out.printf("  %5.0f s  sent %8.0f/s  delivered %9.0f/s  p99 %s%n", seconds,
+                stats.sent.sum() / seconds, stats.delivered.sum() / seconds, micros(stats.latency.percentile(99)));
+    }
+
+    private void report(long elapsedNs) {
+        double seconds = elapsedNs / 1e9;
+        LatencyHistogram h = stats.latency;
+        long connected = virtualUsers.stream().filter(VirtualUser::isConnected).count();
+
+        System.out.println();
+        System.out.printf("Measured %.1f s, %d/%d users still connected, %d disconnects, %d room joins%n",
+                seconds, connected, virtualUsers.size(), stats.disconnects.sum(), stats.joins.sum());
+        System.out.printf("Throughput  sent %,.0f msg/s   delivered %,.0f msg/s (%,d deliveries)%n",
+                stats.sent.sum() / seconds, stats.delivered.sum() / seconds, h.count());
+        System.out.printf("Latency     p50 %s   p99 %s   p999 %s   max %s   mean %s%n",
+                micros(h.percentile(50)), micros(h.percentile(99)), micros(h.percentile(99.9)),
+                micros(h.max()), micros((long) h.mean()));
+    }
+
+    private static String micros(long us) {
+        return us >= 10_000 ? String.format("%.1f ms", us / 1000.0) : us + " µs";
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.equals("--help") || !arg.startsWith("--")) {
+                System.err.println("Usage: LoadGenerator [--host=localhost] [--port=54555] [--embedded] [--users=500]"
+                        + " [--rooms=25] [--rate=1.0] [--churn=0] [--size=64] [--rampup=5] [--warmup=5]"
+                        + " [--duration=30] [--threads=4]");
+                return;
+            }
+            int eq = arg.indexOf('=');
+            if (eq < 0) options.put(arg.substring(2), "true");
+            else options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+
+        // KryoNet inače loguje svaku konekciju
+        Log.set(Log.LEVEL_WARN);
+        LoadGenerator generator = new LoadGenerator(options);
+        if (!Boolean.parseBoolean(options.getOrDefault("embedded", "false"))) {
+            generator.run();
+            return;
+        }
+
+        Path dataDir = Files.createTempDirectory("chat-load");
+        ChatServer server = new ChatServer(generator.port, dataDir, RoomDispatcher.fromSystemProperties());
+        server.start();
+        try {
+            generator.run();
+            System.out.println("Server outbound: " + server.getOutboundQueues());
+        } finally {
+            server.stop();
+            deleteRecursively(dataDir);
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
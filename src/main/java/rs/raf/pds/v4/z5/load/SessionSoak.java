@@ -0,0 +1,189 @@
+package main.java.rs.raf.pds.v4.z5.load;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.esotericsoftware.minlog.Log;
+
+import main.java.rs.raf.pds.v4.z5.ChatServer;
+import main.java.rs.raf.pds.v4.z5.server.RoomDispatcher;
+import main.java.rs.raf.pds.v4.z5.server.ServerMetrics;
+
+/**
+ * Soak check for session cleanup against an embedded ChatServer.
+ *
+ * Every round connects {@code users} virtual users (a fifth of them under a
+ * name already in use, so the older session is replaced), walks each through
+ * {@code hops} rooms with a post in each, and disconnects them all. After
+ * every round the server must be back to no connected users and no room
+ * members, read over JMX like an operator would. After {@value #WARMUP_ROUNDS}
+ * warm-up rounds the heap after GC is the baseline; no later round may exceed
+ * it by more than {@code slack} MB. Any failure exits with status 1.
+ *
+ * Usage: SessionSoak [--port=54556] [--rounds=20] [--users=200] [--rooms=10]
+ *        [--hops=5] [--slack=16]
+ */
+public class SessionSoak {
+
+    static final int WARMUP_ROUNDS = 3;
+    private static final int CLIENT_WRITE_BUFFER_SIZE = 8192;
+    private static final int CLIENT_OBJECT_BUFFER_SIZE = 65536;
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final long CLEANUP_TIMEOUT_MS = 10_000;
+
+    private final int port;
+    private final int rounds;
+    private final int users;
+    private final int rooms;
+    private final int hops;
+    private final long slackBytes;
+    private final MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+
+    SessionSoak(Map<String, String> options) {
+        this.port = Integer.parseInt(options.getOrDefault("port", "54556"));
+        this.rounds = Integer.parseInt(options.getOrDefault("rounds", "20"));
+        this.users = Integer.parseInt(options.getOrDefault("users", "200"));
+        this.rooms = Integer.parseInt(options.getOrDefault("rooms", "10"));
+        this.hops = Integer.parseInt(options.getOrDefault("hops", "5"));
+        this.slackBytes = Long.parseLong(options.getOrDefault("slack", "16")) << 20;
+        if (rounds <= WARMUP_ROUNDS || users < 1 || rooms < 1 || hops < 0) {
+            throw new IllegalArgumentException("rounds must be above " + WARMUP_ROUNDS + "; users and rooms positive");
+        }
+    }
+
+    /** Returns the failures, empty if the server stayed clean and the heap flat. */
+    List<String> run() throws InterruptedException, JMException {
+        System.out.printf("▶ %d rounds of %d users over %d rooms, %d hops each%n", rounds, users, rooms, hops);
+        List<String> failures = new ArrayList<>();
+        VirtualUser.Stats stats = new VirtualUser.Stats();
+        long baseline = 0;
+        long peak = 0;
+        for (int round = 1; round <= rounds; round++) {
+            List<VirtualUser> connected = new ArrayList<>();
+            int distinct = Math.max(1, users - users / 5);
+            for (int i = 0; i < users; i++) {
+                // poslednja petina ponavlja imena, pa server zamenjuje stare sesije
+                VirtualUser vu = new VirtualUser("soak" + (i % distinct), roomName(i),
+                        CLIENT_WRITE_BUFFER_SIZE, CLIENT_OBJECT_BUFFER_SIZE, stats);
+                try {
+                    vu.connect("localhost", port, CONNECT_TIMEOUT_MS);
+                    connected.add(vu);
+                } catch (IOException e) {
+                    vu.close();
+                    failures.add("round " + round + ": connect failed: " + e.getMessage());
+                }
+            }
+            for (int hop = 1; hop <= hops; hop++) {
+                for (int i = 0; i < connected.size(); i++) {
+                    VirtualUser vu = connected.get(i);
+                    vu.moveTo(roomName(i + hop));
+                    vu.post("hop " + hop);
+                }
+            }
+            for (VirtualUser vu : connected) vu.close();
+
+            int online = awaitZero(this::connectedUsers);
+            int members = awaitZero(this::roomMembers);
+            long heap = usedHeapAfterGc();
+            System.out.printf("  round %2d  users %d  room members %d  heap %,d KB%n", round, online, members, heap >> 10);
+            if (online != 0) failures.add("round " + round + ": " + online + " users still connected");
+            if (members != 0) failures.add("round " + round + ": " + members + " room members left");
+            if (round == WARMUP_ROUNDS) baseline = heap;
+            if (round > WARMUP_ROUNDS) peak = Math.max(peak, heap);
+        }
+        if (peak > baseline + slackBytes) {
+            failures.add(String.format("heap grew from %,d KB after warm-up to %,d KB", baseline >> 10, peak >> 10));
+        }
+        return failures;
+    }
+
+    private String roomName(int i) {
+        return "soak-" + i % rooms;
+    }
+
+    private interface Gauge {
+        int read() throws JMException;
+    }
+
+    // čišćenje ide kroz trake dispečera, pa se čeka da se isprazne
+    private int awaitZero(Gauge gauge) throws InterruptedException, JMException {
+        long deadline = System.currentTimeMillis() + CLEANUP_TIMEOUT_MS;
+        int value = gauge.read();
+        while (value != 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            value = gauge.read();
+        }
+        return value;
+    }
+
+    private int connectedUsers() throws JMException {
+        return (Integer) mbeans.getAttribute(serverBean("type=Server"), "ConnectedUsers");
+    }
+
+    private int roomMembers() throws JMException {
+        int total = 0;
+        for (ObjectName room : mbeans.queryNames(serverBean("type=Room,*"), null)) {
+            total += (Integer) mbeans.getAttribute(room, "Members");
+        }
+        return total;
+    }
+
+    private ObjectName serverBean(String keys) throws JMException {
+        return new ObjectName(ServerMetrics.DOMAIN + ":port=" + port + "," + keys);
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (arg.equals("--help") || !arg.startsWith("--") || eq < 0) {
+                System.err.println("Usage: SessionSoak [--port=54556] [--rounds=20] [--users=200] [--rooms=10]"
+                        + " [--hops=5] [--slack=16]");
+                return;
+            }
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+
+        Log.set(Log.LEVEL_ERROR);
+        SessionSoak soak = new SessionSoak(options);
+        Path dataDir = Files.createTempDirectory("chat-soak");
+        ChatServer server = new ChatServer(soak.port, dataDir, RoomDispatcher.fromSystemProperties());
+        server.start();
+        List<String> failures;
+        try {
+            failures = soak.run();
+        } finally {
+            server.stop();
+            try (Stream<Path> paths = Files.walk(dataDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        if (failures.isEmpty()) {
+            System.out.println("✅ Sessions cleaned up after every round, heap flat.");
+            return;
+        }
+        failures.forEach(f -> System.err.println("❌ " + f));
+        System.exit(1);
+    }
+}
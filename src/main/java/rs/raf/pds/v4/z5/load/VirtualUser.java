@@ -0,0 +1,112 @@
+package main.java.rs.raf.pds.v4.z5.load;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.esotericsoftware.kryonet.Client;
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.Listener;
+
+import main.java.rs.raf.pds.v4.z5.messages.ChatMessage;
+import main.java.rs.raf.pds.v4.z5.messages.JoinRoom;
+import main.java.rs.raf.pds.v4.z5.messages.KryoUtil;
+import main.java.rs.raf.pds.v4.z5.messages.Login;
+import main.java.rs.raf.pds.v4.z5.server.LatencyHistogram;
+
+/**
+ * One simulated user speaking the client protocol directly, without JavaFX.
+ * Every message it posts carries its send time, so each delivery to a room
+ * member can be turned into an end-to-end latency sample.
+ */
+class VirtualUser {
+
+    static final String MARKER = "lg:";
+    /** KryoNet update thread per user; it only parks in select, so a small stack is enough. */
+    private static final long THREAD_STACK_SIZE = 256 * 1024;
+
+    /** Counters shared by all virtual users of one run. */
+    static class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder sent = new LongAdder();
+        final LongAdder delivered = new LongAdder();
+        final LongAdder joins = new LongAdder();
+        final LongAdder disconnects = new LongAdder();
+
+        void reset() {
+            latency.reset();
+            sent.reset();
+            delivered.reset();
+            joins.reset();
+        }
+    }
+
+    final String name;
+    private final Client client;
+    private final Stats stats;
+    private volatile String room;
+    private volatile boolean closing;
+
+    VirtualUser(String name, String room, int writeBufferSize, int objectBufferSize, Stats stats) {
+        this.name = name;
+        this.room = room;
+        this.stats = stats;
+        this.client = new Client(writeBufferSize, objectBufferSize);
+        KryoUtil.registerKryoClasses(client.getKryo());
+        client.addListener(new Listener() {
+            @Override
+            public void received(Connection connection, Object object) {
+                if (object instanceof ChatMessage msg) onChatMessage(msg);
+            }
+
+            @Override
+            public void disconnected(Connection connection) {
+                if (!closing) stats.disconnects.increment();
+            }
+        });
+    }
+
+    void connect(String host, int port, int timeoutMs) throws IOException {
+        Thread updateThread = new Thread(null, client, "vu-" + name, THREAD_STACK_SIZE);
+        updateThread.setDaemon(true);
+        updateThread.start();
+        client.connect(timeoutMs, host, port);
+        client.sendTCP(new Login(name));
+        client.sendTCP(new JoinRoom(room));
+    }
+
+    void post(String payload) {
+        if (!client.isConnected()) return;
+        client.sendTCP(new ChatMessage(name, MARKER + System.nanoTime() + " " + payload, room));
+        stats.sent.increment();
+    }
+
+    void moveTo(String newRoom) {
+        if (!client.isConnected() || newRoom.equals(room)) return;
+        room = newRoom;
+        client.sendTCP(new JoinRoom(newRoom));
+        stats.joins.increment();
+    }
+
+    boolean isConnected() {
+        return client.isConnected();
+    }
+
+    void close() {
+        closing = true;
+        client.stop();
+    }
+
+    private void onChatMessage(ChatMessage msg) {
+        String txt = msg.getTxt();
+        if (txt == null || !txt.startsWith(MARKER)) return;
+        int end = txt.indexOf(' ', MARKER.length());
+        if (end < 0) return;
+        try {
+            long sentAt = Long.parseLong(txt, MARKER.length(), end, 10);
+            stats.latency.record((System.nanoTime() - sentAt) / 1000);
+            stats.delivered.increment();
+        } catch (NumberFormatException ignored) {
+            // nije poruka generatora
+        }
+    }
+}
@@ -38,6 +38,16 @@ public class ChatMessage implements Serializable {
         this.txt = txt;
     }
 
+    /** A copy with other text, keeping index and timestamp: a message others may be reading is never changed in place. */
+    public ChatMessage withTxt(String txt) {
+        ChatMessage copy = new ChatMessage(user, txt, chatRoom, stamped);
+        copy.reply = reply;
+        copy.noNeed = noNeed;
+        copy.timestamp = timestamp;
+        copy.index = index;
+        return copy;
+    }
+
     public String getUser() { return user; }
     public void setUser(String user) { this.user = user; }
 
@@ -57,6 +67,7 @@ public class ChatMessage implements Serializable {
     public void setNoNeed(boolean noNeed) { this.noNeed = noNeed; }
 
     public LocalDateTime getTimestamp() { return timestamp; }
+    public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
 
     public String getFormattedTimestamp() {
         return "[" + timestamp.format(FORMATTER) + "]";
@@ -0,0 +1,51 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Hand-written layout for {@link ChatMessage}:
+ * user, txt, chatRoom (strings), one flags byte, timestamp (varlong millis),
+ * index (varint).
+ */
+public class ChatMessageSerializer extends Serializer<ChatMessage> {
+
+	private static final int REPLY = 1;
+	private static final int STAMPED = 1 << 1;
+	private static final int NO_NEED = 1 << 2;
+
+	@Override
+	public void write(Kryo kryo, Output output, ChatMessage msg) {
+		output.writeString(msg.getUser());
+		output.writeString(msg.getTxt());
+		output.writeString(msg.getChatRoom());
+
+		int flags = 0;
+		if (msg.isReply()) flags |= REPLY;
+		if (msg.isStamped()) flags |= STAMPED;
+		if (msg.isNoNeed()) flags |= NO_NEED;
+		output.writeByte(flags);
+
+		LocalDateTimeSerializer.writeNullable(output, msg.getTimestamp());
+		output.writeInt(msg.getIndex(), true);
+	}
+
+	@Override
+	public ChatMessage read(Kryo kryo, Input input, Class<ChatMessage> type) {
+		ChatMessage msg = new ChatMessage();
+		msg.setUser(input.readString());
+		msg.setTxt(input.readString());
+		msg.setChatRoom(input.readString());
+
+		int flags = input.readByte();
+		msg.setReply((flags & REPLY) != 0);
+		msg.setStamped((flags & STAMPED) != 0);
+		msg.setNoNeed((flags & NO_NEED) != 0);
+
+		msg.setTimestamp(LocalDateTimeSerializer.readNullable(input));
+		msg.setIndex(input.readInt(true));
+		return msg;
+	}
+}
@@ -0,0 +1,8 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+/**
+ * Base class of the typed client commands. The server looks handlers up by
+ * the concrete class, so adding a command means registering one handler.
+ */
+public abstract class Command {
+}
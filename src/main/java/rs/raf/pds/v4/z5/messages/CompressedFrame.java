@@ -0,0 +1,81 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+
+/**
+ * Another encoded frame, compressed with Deflate. The server sends it in
+ * place of a large frame to clients that listed {@link #DEFLATE} in their
+ * {@link Login}; {@link #unpack} gives back the original message.
+ */
+public class CompressedFrame {
+	public static final String DEFLATE = "deflate";
+
+	// raspakuje samo klijent, na svojoj jednoj niti za prijem
+	private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+	// id klase + dve varint dužine
+	private static final int OVERHEAD = 8;
+
+	int length;
+	byte[] data;
+
+	protected CompressedFrame() {
+
+	}
+	public CompressedFrame(int length, byte[] data) {
+		this.length = length;
+		this.data = data;
+	}
+
+	/** A Deflater for {@link #pack}; the caller reuses it and must {@link Deflater#end()} it. */
+	public static Deflater newDeflater() {
+		// linkovi su uski, procesor nije: najbolja kompresija
+		return new Deflater(Deflater.BEST_COMPRESSION);
+	}
+
+	/** Compresses an encoded frame with {@code deflater}; null if that would not make it smaller. */
+	public static CompressedFrame pack(byte[] frame, Deflater deflater) {
+		if (frame.length <= OVERHEAD) return null;
+		deflater.reset();
+		deflater.setInput(frame);
+		deflater.finish();
+		byte[] out = new byte[frame.length - OVERHEAD];
+		int n = 0;
+		while (!deflater.finished() && n < out.length) n += deflater.deflate(out, n, out.length - n);
+		return deflater.finished() && n < out.length ? new CompressedFrame(frame.length, Arrays.copyOf(out, n)) : null;
+	}
+
+	/** Inflates the frame with this thread's Inflater and reads the message with {@code kryo}. */
+	public Object unpack(Kryo kryo) {
+		Inflater inflater = INFLATERS.get();
+		inflater.reset();
+		inflater.setInput(data);
+		byte[] frame = new byte[length];
+		try {
+			int n = 0;
+			while (n < length && !inflater.finished()) {
+				int read = inflater.inflate(frame, n, length - n);
+				if (read == 0 && inflater.needsInput()) break;
+				n += read;
+			}
+			if (n != length) throw new KryoException("Compressed frame is truncated: " + n + " of " + length + " bytes");
+		} catch (DataFormatException e) {
+			throw new KryoException("Compressed frame is corrupt", e);
+		}
+		return kryo.readClassAndObject(new Input(frame));
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public byte[] getData() {
+		return data;
+	}
+}
@@ -0,0 +1,23 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/** Hand-written layout for {@link CompressedFrame}: original length (varint), data length (varint) and bytes. */
+public class CompressedFrameSerializer extends Serializer<CompressedFrame> {
+
+	@Override
+	public void write(Kryo kryo, Output output, CompressedFrame frame) {
+		output.writeInt(frame.getLength(), true);
+		output.writeInt(frame.getData().length, true);
+		output.writeBytes(frame.getData());
+	}
+
+	@Override
+	public CompressedFrame read(Kryo kryo, Input input, Class<CompressedFrame> type) {
+		int length = input.readInt(true);
+		return new CompressedFrame(length, input.readBytes(input.readInt(true)));
+	}
+}
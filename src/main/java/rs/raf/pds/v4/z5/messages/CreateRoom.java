@@ -0,0 +1,16 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+public class CreateRoom extends Command {
+	String roomName;
+
+	protected CreateRoom() {
+
+	}
+	public CreateRoom(String roomName) {
+		this.roomName = roomName;
+	}
+
+	public String getRoomName() {
+		return roomName;
+	}
+}
@@ -0,0 +1,23 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+/** Replaces the text of the sender's own message with the given index in the active room. */
+public class Edit extends Command {
+	int index;
+	String text;
+
+	protected Edit() {
+
+	}
+	public Edit(int index, String text) {
+		this.index = index;
+		this.text = text;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public String getText() {
+		return text;
+	}
+}
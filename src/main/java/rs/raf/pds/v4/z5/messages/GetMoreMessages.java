@@ -0,0 +1,17 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+/** Next page of older messages, starting below the cursor of the last {@link HistoryBatch}. */
+public class GetMoreMessages extends Command {
+	int before;
+
+	public GetMoreMessages() {
+
+	}
+	public GetMoreMessages(int before) {
+		this.before = before;
+	}
+
+	public int getBefore() {
+		return before;
+	}
+}
@@ -0,0 +1,8 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+/** Asks for a fresh {@link ListUsers} of the active room, e.g. after a missed {@link PresenceDelta}. */
+public class GetUsers extends Command {
+	public GetUsers() {
+
+	}
+}
@@ -0,0 +1,29 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+/**
+ * Asks for up to {@code count} messages of the active room with an index
+ * lower than {@code before}; {@code before == 0} means the newest messages.
+ */
+public class History extends Command {
+	int count;
+	int before;
+
+	protected History() {
+
+	}
+	public History(int count) {
+		this(count, 0);
+	}
+	public History(int count, int before) {
+		this.count = count;
+		this.before = before;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public int getBefore() {
+		return before;
+	}
+}
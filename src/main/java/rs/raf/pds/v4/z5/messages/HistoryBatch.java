@@ -0,0 +1,46 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+/**
+ * A page of room history in one frame, oldest message first. To page further
+ * back, send {@code History}/{@code GetMoreMessages} with {@link #getBefore()};
+ * a value of 0 means there is nothing older on the server.
+ *
+ * {@link #isReset()} is set when the server's numbering of the room no longer
+ * matches what the client had, e.g. after the server lost its history: the
+ * client drops what it cached of the room before applying the page.
+ */
+public class HistoryBatch {
+	String room;
+	ChatMessage[] messages;
+	int before;
+	boolean reset;
+
+	protected HistoryBatch() {
+
+	}
+	public HistoryBatch(String room, ChatMessage[] messages, int before) {
+		this(room, messages, before, false);
+	}
+	public HistoryBatch(String room, ChatMessage[] messages, int before, boolean reset) {
+		this.room = room;
+		this.messages = messages;
+		this.before = before;
+		this.reset = reset;
+	}
+
+	public String getRoom() {
+		return room;
+	}
+
+	public ChatMessage[] getMessages() {
+		return messages;
+	}
+
+	public int getBefore() {
+		return before;
+	}
+
+	public boolean isReset() {
+		return reset;
+	}
+}
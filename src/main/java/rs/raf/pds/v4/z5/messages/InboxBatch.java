@@ -0,0 +1,27 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+/**
+ * Private messages that arrived while the user was offline, oldest first,
+ * sent in one frame right after login. {@link #getDropped()} counts older
+ * messages evicted because the inbox was full.
+ */
+public class InboxBatch {
+	PrivateMessage[] messages;
+	int dropped;
+
+	protected InboxBatch() {
+
+	}
+	public InboxBatch(PrivateMessage[] messages, int dropped) {
+		this.messages = messages;
+		this.dropped = dropped;
+	}
+
+	public PrivateMessage[] getMessages() {
+		return messages;
+	}
+
+	public int getDropped() {
+		return dropped;
+	}
+}
@@ -0,0 +1,22 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+public class Invite extends Command {
+	String userName;
+	String roomName;
+
+	protected Invite() {
+
+	}
+	public Invite(String userName, String roomName) {
+		this.userName = userName;
+		this.roomName = roomName;
+	}
+
+	public String getUserName() {
+		return userName;
+	}
+
+	public String getRoomName() {
+		return roomName;
+	}
+}
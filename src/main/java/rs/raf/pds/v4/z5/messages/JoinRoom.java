@@ -0,0 +1,30 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+public class JoinRoom extends Command {
+	String roomName;
+	int since = -1;
+
+	protected JoinRoom() {
+
+	}
+	public JoinRoom(String roomName) {
+		this(roomName, -1);
+	}
+	/**
+	 * @param since index of the newest message of the room the client already
+	 *              has; the server replies with the newer ones in HistoryBatch
+	 *              frames. 0 asks for the recent page, -1 for no history.
+	 */
+	public JoinRoom(String roomName, int since) {
+		this.roomName = roomName;
+		this.since = since;
+	}
+
+	public String getRoomName() {
+		return roomName;
+	}
+
+	public int getSince() {
+		return since;
+	}
+}
@@ -4,42 +4,52 @@ import java.util.ArrayList;
 import java.time.LocalDateTime;
 
 import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.Serializer;
-import com.esotericsoftware.kryo.io.Input;
-import com.esotericsoftware.kryo.io.Output;
-
-
-import main.java.rs.raf.pds.v4.z5.messages.ChatMessage;
-import main.java.rs.raf.pds.v4.z5.messages.InfoMessage;
-import main.java.rs.raf.pds.v4.z5.messages.ListUsers;
-import main.java.rs.raf.pds.v4.z5.messages.Login;
-import main.java.rs.raf.pds.v4.z5.messages.PrivateMessage;
 
 public class KryoUtil {
-	public static void registerKryoClasses(Kryo kryo) {
-		kryo.register(String.class);
-		kryo.register(String[].class);
-		kryo.register(ArrayList.class);
-		kryo.register(Login.class);
-		kryo.register(ChatMessage.class);
-		kryo.register(ListUsers.class);
-		kryo.register(InfoMessage.class);
-		kryo.register(PrivateMessage.class);
-		kryo.register(ListRooms.class);
-
-		
-		kryo.register(LocalDateTime.class, new Serializer<LocalDateTime>() {
-		    @Override
-		    public void write(Kryo kryo, Output output, LocalDateTime obj) {
-		        output.writeString(obj == null ? null : obj.toString());
-		    }
-
-		    @Override
-		    public LocalDateTime read(Kryo kryo, Input input, Class<LocalDateTime> type) {
-		        String value = input.readString();
-		        return (value == null ? null : LocalDateTime.parse(value));
-		    }
-		});
 
+	/**
+	 * Every class gets a fixed ID so client, server and the message log agree
+	 * no matter in which order classes are registered. IDs below 20 belong to
+	 * Kryo's built-in types and KryoNet's framework messages. Never reuse or
+	 * renumber an ID; add new classes at the end.
+	 */
+	public static void registerKryoClasses(Kryo kryo) {
+		kryo.register(String[].class, 20);
+		kryo.register(ArrayList.class, 21);
+		kryo.register(LocalDateTime.class, new LocalDateTimeSerializer(), 22);
+
+		kryo.register(Login.class, 23);
+		kryo.register(ChatMessage.class, new ChatMessageSerializer(), 24);
+		kryo.register(ListUsers.class, 25);
+		kryo.register(InfoMessage.class, 26);
+		kryo.register(PrivateMessage.class, new PrivateMessageSerializer(), 27);
+		kryo.register(ListRooms.class, 28);
+		kryo.register(ChatMessage[].class, 29);
+		kryo.register(HistoryBatch.class, 30);
+		// 60 i više pripada klasteru, pa nove poruke serveru klijentu idu ovde
+		kryo.register(ListUsersPart.class, 31);
+
+		// komande
+		kryo.register(CreateRoom.class, 40);
+		kryo.register(JoinRoom.class, 41);
+		kryo.register(GetRooms.class, 42);
+		kryo.register(LeaveRoom.class, 43);
+		kryo.register(History.class, 44);
+		kryo.register(GetMoreMessages.class, 45);
+		kryo.register(Edit.class, 46);
+		kryo.register(Reply.class, 47);
+		kryo.register(Invite.class, 48);
+		kryo.register(Stats.class, 49);
+
+		kryo.register(PresenceDelta.class, 50);
+		kryo.register(GetUsers.class, 51);
+		kryo.register(MulticastMessage.class, new MulticastMessageSerializer(), 52);
+		kryo.register(PrivateMessage[].class, 53);
+		kryo.register(InboxBatch.class, 54);
+		kryo.register(CompressedFrame.class, new CompressedFrameSerializer(), 55);
+		kryo.register(SessionToken.class, 56);
+		kryo.register(Resume.class, new ResumeSerializer(), 57);
+		kryo.register(ResumeBatch.class, 58);
+		kryo.register(HistoryBatch[].class, 59);
 	}
 }
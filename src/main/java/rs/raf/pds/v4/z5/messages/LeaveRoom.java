@@ -0,0 +1,7 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+public class LeaveRoom extends Command {
+	public LeaveRoom() {
+
+	}
+}
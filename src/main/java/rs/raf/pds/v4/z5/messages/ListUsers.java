@@ -1,8 +1,14 @@
 package main.java.rs.raf.pds.v4.z5.messages;
 
+/**
+ * Full member list of a room at presence {@code version}; later changes
+ * arrive as {@link PresenceDelta}s with the following versions.
+ */
 public class ListUsers {
 	String[] users;
 	boolean checker = false;
+	String room;
+	long version;
 	protected ListUsers() {
 		
 	}
@@ -10,9 +16,23 @@ public class ListUsers {
 		this.users = users;
 	}
 
+	public ListUsers(String room, String[] users, long version) {
+		this.room = room;
+		this.users = users;
+		this.version = version;
+	}
+
 	public String[] getUsers() {
 		return users;
 	}
+
+	public String getRoom() {
+		return room;
+	}
+
+	public long getVersion() {
+		return version;
+	}
 	
 	public void setChecker(boolean b) {
 		checker = b;
@@ -0,0 +1,17 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+/**
+ * A leading part of a {@link ListUsers} snapshot too large for one frame.
+ * The parts carry the snapshot's room and version; the plain
+ * {@link ListUsers} with the same room and version that follows them ends
+ * the snapshot. A client that sees another version first drops the parts.
+ */
+public class ListUsersPart extends ListUsers {
+	protected ListUsersPart() {
+
+	}
+
+	public ListUsersPart(String room, String[] users, long version) {
+		super(room, users, version);
+	}
+}
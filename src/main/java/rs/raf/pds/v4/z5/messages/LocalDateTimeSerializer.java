@@ -0,0 +1,50 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Writes a timestamp as epoch millis in a varlong (6 bytes for current dates)
+ * instead of its ISO string. The local date-time is read as UTC on both
+ * sides, so it comes back unchanged, truncated to milliseconds.
+ */
+public class LocalDateTimeSerializer extends Serializer<LocalDateTime> {
+
+	public LocalDateTimeSerializer() {
+		setAcceptsNull(true);
+	}
+
+	@Override
+	public void write(Kryo kryo, Output output, LocalDateTime obj) {
+		writeNullable(output, obj);
+	}
+
+	@Override
+	public LocalDateTime read(Kryo kryo, Input input, Class<LocalDateTime> type) {
+		return readNullable(input);
+	}
+
+	static long toMillis(LocalDateTime time) {
+		return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+	}
+
+	static LocalDateTime fromMillis(long millis) {
+		return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+	}
+
+	// 0 = null, inače millis + 1
+	static void writeNullable(Output output, LocalDateTime time) {
+		output.writeLong(time == null ? 0 : toMillis(time) + 1, true);
+	}
+
+	static LocalDateTime readNullable(Input input) {
+		long value = input.readLong(true);
+		return value == 0 ? null : fromMillis(value - 1);
+	}
+}
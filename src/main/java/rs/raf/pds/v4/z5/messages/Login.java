@@ -2,17 +2,27 @@ package main.java.rs.raf.pds.v4.z5.messages;
 
 public class Login {
 	String userName;
+	String[] compression;
 	
 	protected Login() {
 		
 	}
 	public Login(String userName) {
+		this(userName, null);
+	}
+	/** @param compression codecs the client can read, preferred first, e.g. {@link CompressedFrame#DEFLATE} */
+	public Login(String userName, String[] compression) {
 		this.userName = userName;
+		this.compression = compression;
 	}
 
 	public String getUserName() {
 		return userName;
 	}
+
+	public String[] getCompression() {
+		return compression;
+	}
 	
 	
 }
@@ -0,0 +1,49 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+
+/** A message for a named group of users; the server delivers it only to them. */
+public class MulticastMessage implements Serializable {
+
+    private String user;            // Pošiljalac
+    private String txt;             // Tekst poruke
+    private String[] recipients;    // Primaoci
+    private LocalDateTime timestamp;  // Vreme slanja
+
+    private static final DateTimeFormatter FORMATTER =
+            DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss");
+
+    public MulticastMessage() {}
+
+    public MulticastMessage(String user, String txt, String[] recipients) {
+        this.user = user;
+        this.txt = txt;
+        this.recipients = recipients;
+        this.timestamp = LocalDateTime.now();
+    }
+
+    public String getUser() { return user; }
+    public void setUser(String user) { this.user = user; }
+
+    public String getTxt() { return txt; }
+    public void setTxt(String txt) { this.txt = txt; }
+
+    public String[] getRecipients() { return recipients; }
+    public void setRecipients(String[] recipients) { this.recipients = recipients; }
+
+    public LocalDateTime getTimestamp() { return timestamp; }
+    public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
+
+    public String getFormattedTimestamp() {
+        return "[" + timestamp.format(FORMATTER) + "]";
+    }
+
+    @Override
+    public String toString() {
+        return getFormattedTimestamp() + " " + user + " → " + String.join(", ", recipients) + ": " + txt;
+    }
+}
@@ -0,0 +1,34 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/** Hand-written layout for {@link MulticastMessage}: user, txt, recipient count (varint) and names, timestamp (varlong millis). */
+public class MulticastMessageSerializer extends Serializer<MulticastMessage> {
+
+	@Override
+	public void write(Kryo kryo, Output output, MulticastMessage mm) {
+		output.writeString(mm.getUser());
+		output.writeString(mm.getTxt());
+		String[] recipients = mm.getRecipients();
+		output.writeInt(recipients == null ? 0 : recipients.length, true);
+		if (recipients != null) {
+			for (String recipient : recipients) output.writeString(recipient);
+		}
+		LocalDateTimeSerializer.writeNullable(output, mm.getTimestamp());
+	}
+
+	@Override
+	public MulticastMessage read(Kryo kryo, Input input, Class<MulticastMessage> type) {
+		MulticastMessage mm = new MulticastMessage();
+		mm.setUser(input.readString());
+		mm.setTxt(input.readString());
+		String[] recipients = new String[input.readInt(true)];
+		for (int i = 0; i < recipients.length; i++) recipients[i] = input.readString();
+		mm.setRecipients(recipients);
+		mm.setTimestamp(LocalDateTimeSerializer.readNullable(input));
+		return mm;
+	}
+}
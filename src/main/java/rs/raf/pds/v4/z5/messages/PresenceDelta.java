@@ -0,0 +1,39 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+/**
+ * Who joined and who left a room since presence {@code version - 1}. A client
+ * applies it only on top of that version; after a gap it asks for a fresh
+ * {@link ListUsers} with {@link GetUsers}.
+ */
+public class PresenceDelta {
+	String room;
+	long version;
+	String[] joined;
+	String[] left;
+
+	protected PresenceDelta() {
+
+	}
+	public PresenceDelta(String room, long version, String[] joined, String[] left) {
+		this.room = room;
+		this.version = version;
+		this.joined = joined;
+		this.left = left;
+	}
+
+	public String getRoom() {
+		return room;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public String[] getJoined() {
+		return joined;
+	}
+
+	public String[] getLeft() {
+		return left;
+	}
+}
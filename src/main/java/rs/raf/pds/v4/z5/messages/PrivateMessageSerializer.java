@@ -0,0 +1,28 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/** Hand-written layout for {@link PrivateMessage}: user, txt, recipient, timestamp (varlong millis). */
+public class PrivateMessageSerializer extends Serializer<PrivateMessage> {
+
+	@Override
+	public void write(Kryo kryo, Output output, PrivateMessage pm) {
+		output.writeString(pm.getUser());
+		output.writeString(pm.getTxt());
+		output.writeString(pm.getRecipient());
+		LocalDateTimeSerializer.writeNullable(output, pm.getTimestamp());
+	}
+
+	@Override
+	public PrivateMessage read(Kryo kryo, Input input, Class<PrivateMessage> type) {
+		PrivateMessage pm = new PrivateMessage();
+		pm.setUser(input.readString());
+		pm.setTxt(input.readString());
+		pm.setRecipient(input.readString());
+		pm.setTimestamp(LocalDateTimeSerializer.readNullable(input));
+		return pm;
+	}
+}
@@ -0,0 +1,23 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+/** Replies to the message with the given index in the active room. */
+public class Reply extends Command {
+	int index;
+	String text;
+
+	protected Reply() {
+
+	}
+	public Reply(int index, String text) {
+		this.index = index;
+		this.text = text;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public String getText() {
+		return text;
+	}
+}
@@ -0,0 +1,36 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+/**
+ * A login that continues an earlier session: with a valid token the server
+ * puts the user back into {@code rooms} (the first one active) and answers
+ * with one {@link ResumeBatch} of the messages after {@code lastSeen}. With
+ * an invalid or expired token it is handled as a plain login.
+ */
+public class Resume extends Login {
+	String token;
+	String[] rooms;
+	int[] lastSeen;
+
+	protected Resume() {
+
+	}
+	public Resume(String userName, String[] compression, String token, String[] rooms, int[] lastSeen) {
+		super(userName, compression);
+		this.token = token;
+		this.rooms = rooms;
+		this.lastSeen = lastSeen;
+	}
+
+	public String getToken() {
+		return token;
+	}
+
+	public String[] getRooms() {
+		return rooms;
+	}
+
+	/** Index of the newest message the client has of each room in {@link #getRooms()}, 0 if none. */
+	public int[] getLastSeen() {
+		return lastSeen;
+	}
+}
@@ -0,0 +1,33 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+/**
+ * Messages a resumed client missed while it was away, one {@link HistoryBatch}
+ * per room that had any, the active room first. The active room is the first
+ * of {@link Resume#getRooms()} that still exists, or PublicChatRoom.
+ *
+ * Everything fits one frame, so a long gap is cut: a room keeps its newest
+ * missed messages (possibly none), and its {@link HistoryBatch#getBefore()}
+ * is where {@code GetMoreMessages} continues. It is 0 when the client got
+ * the whole gap of that room, or the server no longer has the rest.
+ */
+public class ResumeBatch {
+	String room;
+	HistoryBatch[] rooms;
+
+	protected ResumeBatch() {
+
+	}
+	public ResumeBatch(String room, HistoryBatch[] rooms) {
+		this.room = room;
+		this.rooms = rooms;
+	}
+
+	/** The room the session is active in again. */
+	public String getRoom() {
+		return room;
+	}
+
+	public HistoryBatch[] getRooms() {
+		return rooms;
+	}
+}
@@ -0,0 +1,57 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Hand-written layout for {@link Resume}: user name, codecs, token, then the
+ * room count (varint, 0 for none) and each room with its last seen index
+ * (varint). Keeps {@code int[]} off the chat registration, where the cluster
+ * already has its own ID for it.
+ */
+public class ResumeSerializer extends Serializer<Resume> {
+
+	@Override
+	public void write(Kryo kryo, Output output, Resume resume) {
+		output.writeString(resume.userName);
+		writeStrings(output, resume.compression);
+		output.writeString(resume.token);
+		int rooms = resume.rooms == null ? 0 : resume.rooms.length;
+		output.writeInt(rooms, true);
+		for (int i = 0; i < rooms; i++) {
+			output.writeString(resume.rooms[i]);
+			output.writeInt(resume.lastSeen == null || i >= resume.lastSeen.length ? 0 : resume.lastSeen[i], true);
+		}
+	}
+
+	@Override
+	public Resume read(Kryo kryo, Input input, Class<Resume> type) {
+		String userName = input.readString();
+		String[] compression = readStrings(input);
+		String token = input.readString();
+		int count = input.readInt(true);
+		String[] rooms = new String[count];
+		int[] lastSeen = new int[count];
+		for (int i = 0; i < count; i++) {
+			rooms[i] = input.readString();
+			lastSeen[i] = input.readInt(true);
+		}
+		return new Resume(userName, compression, token, rooms, lastSeen);
+	}
+
+	// broj + 1, da se null razlikuje od praznog niza
+	private static void writeStrings(Output output, String[] strings) {
+		output.writeInt(strings == null ? 0 : strings.length + 1, true);
+		if (strings != null) for (String s : strings) output.writeString(s);
+	}
+
+	private static String[] readStrings(Input input) {
+		int count = input.readInt(true) - 1;
+		if (count < 0) return null;
+		String[] strings = new String[count];
+		for (int i = 0; i < count; i++) strings[i] = input.readString();
+		return strings;
+	}
+}
@@ -0,0 +1,30 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+/**
+ * Sent after every login; the client keeps it to {@link Resume} the session
+ * after a dropped connection. A null token ends the session for good: the
+ * user logged in from somewhere else, and the client must not reconnect.
+ *
+ * {@link #isResumed()} tells a resumed session from a fresh login, e.g. after
+ * the old token expired: then the client starts over in PublicChatRoom.
+ */
+public class SessionToken {
+	String token;
+	boolean resumed;
+
+	protected SessionToken() {
+
+	}
+	public SessionToken(String token, boolean resumed) {
+		this.token = token;
+		this.resumed = resumed;
+	}
+
+	public String getToken() {
+		return token;
+	}
+
+	public boolean isResumed() {
+		return resumed;
+	}
+}
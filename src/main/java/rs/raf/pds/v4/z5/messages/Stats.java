@@ -0,0 +1,8 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+/** Asks the server for a plain-text dump of its runtime metrics. */
+public class Stats extends Command {
+	public Stats() {
+
+	}
+}
@@ -0,0 +1,37 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+/**
+ * A message already serialized by {@link FrameSerialization#encode(Object)}.
+ * Sending the same frame to many connections copies the bytes into each
+ * write buffer without running Kryo again.
+ */
+public final class EncodedFrame {
+
+    private final byte[] bytes;
+    private final Class<?> type;
+    // CompressedFrame ili sam frame, posle prvog compress()
+    volatile EncodedFrame compressed;
+
+    EncodedFrame(byte[] bytes, Class<?> type) {
+        this.bytes = bytes;
+        this.type = type;
+    }
+
+    public int length() {
+        return bytes.length;
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    /** The encoded message as sent on the wire; callers must not modify it. */
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "EncodedFrame(" + type.getSimpleName() + ", " + bytes.length + " bytes)";
+    }
+}
@@ -0,0 +1,176 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryonet.Connection;
+import com.esotericsoftware.kryonet.KryoNetException;
+import com.esotericsoftware.kryonet.KryoSerialization;
+
+import main.java.rs.raf.pds.v4.z5.messages.CompressedFrame;
+
+/**
+ * KryoNet serialization that can write pre-encoded {@link EncodedFrame}s.
+ * A frame holds exactly the bytes {@link KryoSerialization} would produce for
+ * the object, so clients decode it like any other message.
+ *
+ * {@link #close()} frees the native memory of the pooled Deflaters.
+ */
+public class FrameSerialization extends KryoSerialization implements AutoCloseable {
+
+    /** Idle encoders kept for reuse; more are created while all are busy and dropped when returned to a full pool. */
+    public static final int ENCODER_POOL_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+    /** Idle Deflaters kept for reuse, pooled like the encoders. */
+    public static final int DEFLATER_POOL_SIZE = ENCODER_POOL_SIZE;
+
+    private final Consumer<Kryo> registrar;
+    // pool umesto ThreadLocal: sa virtuelnim nitima svaka traka dobija novu nit, pa bi svaka pravila svoj Kryo
+    private final BlockingQueue<Encoder> encoders = new ArrayBlockingQueue<>(ENCODER_POOL_SIZE);
+    private final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(DEFLATER_POOL_SIZE);
+    private volatile boolean closed;
+    private final LongAdder serializedBytes = new LongAdder();
+    private final LongAdder serializedObjects = new LongAdder();
+    private final LongAdder compressedFrames = new LongAdder();
+    private final LongAdder compressionSavedBytes = new LongAdder();
+
+    /**
+     * @param registrar registers the message classes; it is applied to the
+     *                  connection Kryo and to each pooled encoder Kryo so
+     *                  that all of them assign the same class IDs
+     */
+    public FrameSerialization(Consumer<Kryo> registrar) {
+        super(newKryo());
+        this.registrar = registrar;
+        registrar.accept(getKryo());
+    }
+
+    // isto podešavanje kao podrazumevani KryoSerialization()
+    private static Kryo newKryo() {
+        Kryo kryo = new Kryo();
+        kryo.setReferences(false);
+        kryo.setRegistrationRequired(true);
+        return kryo;
+    }
+
+    /**
+     * Serializes {@code object} once; the frame can then be sent to any number
+     * of connections. Each call borrows a Kryo from a small pool, so room
+     * workers do not contend on a shared lock, and the pool does not grow
+     * with the number of threads, which are short-lived under virtual-thread
+     * dispatch.
+     */
+    public EncodedFrame encode(Object object) {
+        Encoder encoder = encoders.poll();
+        if (encoder == null) encoder = new Encoder();
+        try {
+            encoder.output.clear();
+            encoder.kryo.writeClassAndObject(encoder.output, object);
+            serializedBytes.add(encoder.output.position());
+            serializedObjects.increment();
+            return new EncodedFrame(encoder.output.toBytes(), object.getClass());
+        } finally {
+            encoders.offer(encoder);
+        }
+    }
+
+    /** Wraps bytes produced by {@link #encode(Object)} on another server, so they can be sent as-is. */
+    public EncodedFrame wrap(byte[] bytes, Class<?> type) {
+        return new EncodedFrame(bytes, type);
+    }
+
+    /**
+     * The frame as a {@link CompressedFrame} if that is smaller, else the
+     * frame itself. The result is kept on the frame, so a broadcast is
+     * compressed once however many connections get it, and it keeps the
+     * original message type for the outbox.
+     */
+    public EncodedFrame compress(EncodedFrame frame) {
+        EncodedFrame packed = frame.compressed;
+        if (packed != null) return packed;
+        CompressedFrame compressed = deflate(frame.bytes());
+        if (compressed == null) {
+            packed = frame;
+        } else {
+            packed = new EncodedFrame(encode(compressed).bytes(), frame.getType());
+            compressedFrames.increment();
+            compressionSavedBytes.add(frame.length() - packed.length());
+        }
+        frame.compressed = packed;
+        return packed;
+    }
+
+    // Deflater drži nativnu memoriju: višak i sve posle close() se odmah oslobađa
+    private CompressedFrame deflate(byte[] bytes) {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) deflater = CompressedFrame.newDeflater();
+        try {
+            return CompressedFrame.pack(bytes, deflater);
+        } finally {
+            if (closed || !deflaters.offer(deflater)) deflater.end();
+        }
+    }
+
+    /** Ends the pooled Deflaters; compression still works afterwards, without reuse. */
+    @Override
+    public void close() {
+        closed = true;
+        for (Deflater deflater; (deflater = deflaters.poll()) != null; ) deflater.end();
+    }
+
+    /** Frames sent compressed so far; a frame sent to many connections counts once. */
+    public long compressedFrames() {
+        return compressedFrames.sum();
+    }
+
+    /** Bytes saved by compression, counted once per frame like {@link #compressedFrames()}. */
+    public long compressionSavedBytes() {
+        return compressionSavedBytes.sum();
+    }
+
+    /** Bytes produced by Kryo so far, by {@link #encode(Object)} and by writes of plain objects. */
+    public long serializedBytes() {
+        return serializedBytes.sum();
+    }
+
+    /** Objects serialized so far; a frame sent to many connections counts once. */
+    public long serializedObjects() {
+        return serializedObjects.sum();
+    }
+
+    /** Reads back an object from bytes produced by {@link #encode(Object)}. */
+    public synchronized Object decode(byte[] bytes) {
+        return getKryo().readClassAndObject(new Input(bytes));
+    }
+
+    @Override
+    public void write(Connection connection, ByteBuffer buffer, Object object) {
+        if (object instanceof EncodedFrame frame) {
+            if (buffer.remaining() < frame.length()) {
+                throw new KryoNetException("Write buffer too small for " + frame);
+            }
+            buffer.put(frame.bytes());
+            return;
+        }
+        int start = buffer.position();
+        super.write(connection, buffer, object);
+        serializedBytes.add(buffer.position() - start);
+        serializedObjects.increment();
+    }
+
+    private final class Encoder {
+        // KryoSerialization konstruktor registruje KryoNet framework poruke istim redom kao na konekciji
+        final Kryo kryo = new KryoSerialization(newKryo()).getKryo();
+        final Output output = new Output(512, -1);
+
+        Encoder() {
+            registrar.accept(kryo);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per-room {@link RoomHistory} rings. Capacity can be set per room; rooms
+ * without an explicit setting use the default capacity. Settings from system
+ * properties are in place before the server replays its log, so replayed
+ * rooms get their configured size too.
+ */
+public class HistoryStore {
+
+    private final ConcurrentMap<String, RoomHistory> histories = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Integer> capacities = new ConcurrentHashMap<>();
+    private volatile int defaultCapacity;
+
+    public HistoryStore(int defaultCapacity) {
+        setDefaultCapacity(defaultCapacity);
+    }
+
+    /**
+     * Default from {@code -Dchat.history.capacity}, per-room sizes from
+     * {@code -Dchat.history.capacities=room=500,other=2000}. Invalid entries
+     * are reported and skipped.
+     */
+    public static HistoryStore fromSystemProperties(int defaultCapacity) {
+        HistoryStore store = new HistoryStore(defaultCapacity);
+        String value = System.getProperty("chat.history.capacity");
+        if (value != null) {
+            try {
+                store.setDefaultCapacity(Integer.parseInt(value.trim()));
+            } catch (IllegalArgumentException e) {
+                System.err.println("⚠️ Ignoring chat.history.capacity=" + value + ": " + e.getMessage());
+            }
+        }
+        String rooms = System.getProperty("chat.history.capacities");
+        if (rooms == null) return store;
+        for (String entry : rooms.split(",")) {
+            if (entry.isBlank()) continue;
+            int eq = entry.lastIndexOf('=');
+            try {
+                if (eq < 1) throw new IllegalArgumentException("expected room=capacity");
+                store.setCapacity(entry.substring(0, eq).trim(), Integer.parseInt(entry.substring(eq + 1).trim()));
+            } catch (IllegalArgumentException e) {
+                System.err.println("⚠️ Ignoring history capacity '" + entry + "': " + e.getMessage());
+            }
+        }
+        return store;
+    }
+
+    /** Returns the room's history, creating it on first use. */
+    public RoomHistory history(String room) {
+        return histories.computeIfAbsent(room, k -> new RoomHistory(capacityOf(k)));
+    }
+
+    /** Returns the room's history, or null if nothing was ever posted there. */
+    public RoomHistory find(String room) {
+        return histories.get(room);
+    }
+
+    /**
+     * Sets the capacity for a room. A ring that already exists is replaced by
+     * a resized copy; a message stored in the old ring meanwhile would be
+     * lost, so for a live room call this on the room's lane.
+     */
+    public void setCapacity(String room, int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        capacities.put(room, capacity);
+        histories.computeIfPresent(room, (k, ring) -> ring.capacity() == capacity ? ring : ring.resized(capacity));
+    }
+
+    public void setDefaultCapacity(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.defaultCapacity = capacity;
+    }
+
+    public int capacityOf(String room) {
+        return capacities.getOrDefault(room, defaultCapacity);
+    }
+
+    public Set<String> rooms() {
+        return histories.keySet();
+    }
+}
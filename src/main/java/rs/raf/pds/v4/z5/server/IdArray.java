@@ -0,0 +1,72 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Values indexed directly by a dense id from {@link Symbols}: a lookup is an
+ * array read, with no hashing and no boxed key. Reads are lock-free; writes
+ * are synchronized and grow the array by doubling.
+ */
+public final class IdArray<T> {
+
+    private volatile AtomicReferenceArray<T> values = new AtomicReferenceArray<>(16);
+
+    public T get(int id) {
+        AtomicReferenceArray<T> v = values;
+        return id >= 0 && id < v.length() ? v.get(id) : null;
+    }
+
+    public synchronized void set(int id, T value) {
+        ensure(id).set(id, value);
+    }
+
+    /** Stores the value unless the id already has one; returns the previous value or null. */
+    public synchronized T putIfAbsent(int id, T value) {
+        AtomicReferenceArray<T> v = ensure(id);
+        T current = v.get(id);
+        if (current == null) v.set(id, value);
+        return current;
+    }
+
+    public T computeIfAbsent(int id, IntFunction<T> factory) {
+        T current = get(id);
+        if (current != null) return current;
+        synchronized (this) {
+            AtomicReferenceArray<T> v = ensure(id);
+            current = v.get(id);
+            if (current == null) {
+                current = factory.apply(id);
+                v.set(id, current);
+            }
+            return current;
+        }
+    }
+
+    /** Clears the id only if it still holds {@code expected}. */
+    public synchronized boolean remove(int id, T expected) {
+        AtomicReferenceArray<T> v = values;
+        return id >= 0 && id < v.length() && v.compareAndSet(id, expected, null);
+    }
+
+    public void forEach(ObjIntConsumer<T> action) {
+        AtomicReferenceArray<T> v = values;
+        for (int id = 0; id < v.length(); id++) {
+            T value = v.get(id);
+            if (value != null) action.accept(value, id);
+        }
+    }
+
+    private AtomicReferenceArray<T> ensure(int id) {
+        if (id < 0) throw new IllegalArgumentException("negative id: " + id);
+        AtomicReferenceArray<T> v = values;
+        if (id < v.length()) return v;
+        int length = v.length();
+        while (length <= id) length *= 2;
+        AtomicReferenceArray<T> grown = new AtomicReferenceArray<>(length);
+        for (int i = 0; i < v.length(); i++) grown.set(i, v.get(i));
+        values = grown;
+        return grown;
+    }
+}
@@ -0,0 +1,127 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Set of non-negative ints in one open-addressing int[] (linear probing,
+ * backward-shift removal), so a member costs 4-8 bytes instead of a boxed
+ * key in a hash map node. Not thread-safe; callers synchronize on the set.
+ */
+public final class IntSet {
+
+    private static final int FREE = -1;
+    private static final int MIN_CAPACITY = 4;
+
+    private int[] slots;
+    private int size;
+
+    public IntSet() {
+        slots = newTable(MIN_CAPACITY);
+    }
+
+    public boolean add(int value) {
+        if (value < 0) throw new IllegalArgumentException("negative value: " + value);
+        int mask = slots.length - 1;
+        int i = mix(value) & mask;
+        while (slots[i] != FREE) {
+            if (slots[i] == value) return false;
+            i = (i + 1) & mask;
+        }
+        slots[i] = value;
+        if (++size * 4 > slots.length * 3) rehash(slots.length * 2);
+        return true;
+    }
+
+    public boolean remove(int value) {
+        int mask = slots.length - 1;
+        int i = mix(value) & mask;
+        while (slots[i] != FREE) {
+            if (slots[i] == value) {
+                shiftBack(i, mask);
+                size--;
+                if (slots.length > MIN_CAPACITY && size * 8 < slots.length) rehash(slots.length / 2);
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public boolean contains(int value) {
+        int mask = slots.length - 1;
+        int i = mix(value) & mask;
+        while (slots[i] != FREE) {
+            if (slots[i] == value) return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        slots = newTable(MIN_CAPACITY);
+        size = 0;
+    }
+
+    public int[] toArray() {
+        int[] values = new int[size];
+        int n = 0;
+        for (int v : slots) {
+            if (v != FREE) values[n++] = v;
+        }
+        return values;
+    }
+
+    public void forEach(IntConsumer action) {
+        for (int v : slots) {
+            if (v != FREE) action.accept(v);
+        }
+    }
+
+    // popunjava rupu elementima iz istog klastera kojima je početna pozicija pre rupe
+    private void shiftBack(int gap, int mask) {
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            int v = slots[i];
+            if (v == FREE) break;
+            int home = mix(v) & mask;
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                slots[gap] = v;
+                gap = i;
+            }
+        }
+        slots[gap] = FREE;
+    }
+
+    private void rehash(int capacity) {
+        int[] old = slots;
+        slots = newTable(capacity);
+        int mask = capacity - 1;
+        for (int v : old) {
+            if (v == FREE) continue;
+            int i = mix(v) & mask;
+            while (slots[i] != FREE) i = (i + 1) & mask;
+            slots[i] = v;
+        }
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, FREE);
+        return table;
+    }
+
+    private static int mix(int v) {
+        int h = v * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,101 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear histogram of non-negative long values (latencies in µs or ns).
+ * Values below 128 are exact; above that every power of two is split into 64
+ * buckets, so a reported percentile is within 1.6% of the true value.
+ *
+ * That takes about 30 KB; {@link #coarse()} keeps 8 buckets per power of two
+ * (within 12.5%) up to 2^36 (69 s in ns) in about 2 KB, for one per room.
+ */
+public class LatencyHistogram {
+
+    private static final int PRECISE_BITS = 6;
+    private static final int COARSE_BITS = 3;
+    private static final int COARSE_MAX_BITS = 36;
+
+    private final int subBits;
+    private final int linear;
+    private final long maxTracked; // veće vrednosti idu u poslednji bucket; max() ostaje tačan
+    private final AtomicLongArray counts;
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram() {
+        this(PRECISE_BITS, 63);
+    }
+
+    /** Histogram of {@code 2^subBits} buckets per power of two, for values below {@code 2^maxBits}. */
+    private LatencyHistogram(int subBits, int maxBits) {
+        this.subBits = subBits;
+        this.linear = 2 << subBits;
+        this.maxTracked = maxBits == 63 ? Long.MAX_VALUE : (1L << maxBits) - 1;
+        this.counts = new AtomicLongArray(bucketOf(maxTracked) + 1);
+    }
+
+    /** Smaller, less precise histogram; see the class comment. */
+    public static LatencyHistogram coarse() {
+        return new LatencyHistogram(COARSE_BITS, COARSE_MAX_BITS);
+    }
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(bucketOf(Math.min(value, maxTracked)));
+        total.increment();
+        sum.add(value);
+        if (value > max.get()) max.accumulateAndGet(value, Math::max);
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = total.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /** Upper bound of the bucket holding the {@code percentile}-th value (0..100). */
+    public long percentile(double percentile) {
+        long n = total.sum();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            // poslednji bucket skuplja i sve preko opsega, pa je njegova granica max
+            if (seen >= rank) return i == counts.length() - 1 ? max.get() : Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) counts.set(i, 0);
+        total.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    int bucketOf(long value) {
+        if (value < linear) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - subBits; // ostavlja subBits + 1 najviših bitova
+        int mantissa = (int) (value >>> shift);                        // npr. 64..127
+        return linear + (shift - 1 << subBits) + (mantissa - (1 << subBits));
+    }
+
+    long upperBound(int bucket) {
+        if (bucket < linear) return bucket;
+        int shift = (bucket - linear >> subBits) + 1;
+        long mantissa = (bucket - linear & (1 << subBits) - 1) + (1 << subBits);
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,151 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Durable per-room message log. Each room gets a directory of memory-mapped
+ * {@link RoomLog} segments holding the same encoded bytes that are broadcast
+ * to clients, so logging a message is a copy into the page cache. Dirty pages
+ * are forced to disk by a background thread, never on the broadcast path.
+ */
+public class MessageLog implements AutoCloseable {
+
+    public static final int FORMAT_VERSION = 2;
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 20;
+    public static final int DEFAULT_MAX_SEGMENTS = 8;
+    public static final long FLUSH_INTERVAL_MS = 1000;
+
+    private final Path dir;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final ConcurrentMap<String, RoomLog> rooms = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    public MessageLog(Path dataDir) {
+        this(dataDir, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS);
+    }
+
+    public MessageLog(Path dataDir, int segmentSize, int maxSegments) {
+        this.dir = dataDir.resolve("v" + FORMAT_VERSION);
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "message-log-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Opens every room found on disk and passes each stored record to
+     * {@code replay} in append order. Must be called once before appending.
+     * Logs of other format versions are not read; each one found is reported.
+     */
+    public void replay(BiConsumer<String, byte[]> replay) {
+        warnAboutOtherVersions();
+        try {
+            Files.createDirectories(dir);
+            try (Stream<Path> dirs = Files.list(dir)) {
+                dirs.filter(Files::isDirectory).sorted().forEach(roomDir -> {
+                    String room = decodeRoomName(roomDir.getFileName().toString());
+                    RoomLog log = new RoomLog(roomDir, segmentSize, maxSegments);
+                    log.open(bytes -> replay.accept(room, bytes));
+                    rooms.put(room, log);
+                });
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read message log " + dir, e);
+        }
+        flusher.scheduleWithFixedDelay(this::force, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // zapisi starijeg formata se ne mogu pročitati sadašnjim serijalizatorima, ali gubitak istorije ne sme biti tih
+    private void warnAboutOtherVersions() {
+        Path dataDir = dir.toAbsolutePath().getParent();
+        if (!Files.isDirectory(dataDir)) return;
+        try (Stream<Path> versions = Files.list(dataDir)) {
+            versions.filter(Files::isDirectory)
+                    .filter(v -> v.getFileName().toString().matches("v\\d+") && !v.equals(dir.toAbsolutePath()))
+                    .sorted()
+                    .forEach(v -> System.err.println("⚠️ History in " + v + " (" + roomDirs(v)
+                            + " rooms) is in another log format and was not loaded; this server reads v"
+                            + FORMAT_VERSION + ". Move or delete it to silence this warning."));
+        } catch (IOException e) {
+            System.err.println("⚠️ Cannot list data directory " + dataDir + ": " + e.getMessage());
+        }
+    }
+
+    private static long roomDirs(Path versionDir) {
+        try (Stream<Path> dirs = Files.list(versionDir)) {
+            return dirs.filter(Files::isDirectory).count();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /** Makes the room durable even before its first message; its first segment is mapped on the first append. */
+    public void createRoom(String room) {
+        roomLog(room);
+    }
+
+    /** Logs a message of a room opened by {@link #replay} or {@link #createRoom}; other rooms are not logged. */
+    public void append(String room, EncodedFrame frame) {
+        RoomLog log = rooms.get(room);
+        if (log == null) {
+            System.err.println("⚠️ Not logging message for unknown room '" + room + "'.");
+            return;
+        }
+        try {
+            log.append(frame.bytes());
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("⚠️ Cannot log message for room '" + room + "': " + e.getMessage());
+        }
+    }
+
+    public Set<String> rooms() {
+        return rooms.keySet();
+    }
+
+    public void force() {
+        for (RoomLog log : rooms.values()) log.force();
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdownNow();
+        force();
+    }
+
+    private RoomLog roomLog(String room) {
+        return rooms.computeIfAbsent(room, k -> {
+            RoomLog log = new RoomLog(dir.resolve(encodeRoomName(k)), segmentSize, maxSegments);
+            log.open(bytes -> {});
+            return log;
+        });
+    }
+
+    // ime sobe -> bezbedno ime direktorijuma (bez '.', '*', '/' ...)
+    static String encodeRoomName(String room) {
+        return URLEncoder.encode(room, StandardCharsets.UTF_8)
+                .replace("*", "%2A")
+                .replace(".", "%2E");
+    }
+
+    static String decodeRoomName(String dirName) {
+        return URLDecoder.decode(dirName, StandardCharsets.UTF_8);
+    }
+}
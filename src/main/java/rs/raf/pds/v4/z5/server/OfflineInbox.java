@@ -0,0 +1,260 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import main.java.rs.raf.pds.v4.z5.messages.InboxBatch;
+import main.java.rs.raf.pds.v4.z5.messages.PrivateMessage;
+
+/**
+ * Private messages kept for users who are offline, delivered as one
+ * {@link InboxBatch} at their next login. Messages are held encoded, so the
+ * limits are on real bytes: each user keeps at most {@code maxPerUser}
+ * messages and {@code maxBytesPerUser} bytes (the oldest are evicted first,
+ * and the batch always fits one frame), and the server keeps at most
+ * {@code maxTotal} messages overall, after which new mail is refused.
+ *
+ * Recipients are any names, so one sender may keep at most {@code maxPerSender}
+ * messages waiting, and a message older than {@code ttlMillis} is dropped
+ * instead of delivered: mail to names nobody logs in with cannot fill the
+ * inbox for good.
+ *
+ * With a file, the inbox survives restarts: it is rewritten by a background
+ * thread at most once per {@link #FLUSH_INTERVAL_MS} when something changed.
+ */
+public class OfflineInbox implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_PER_USER = 100;
+    public static final int DEFAULT_MAX_PER_SENDER = 200;
+    public static final int DEFAULT_MAX_TOTAL = 10_000;
+    public static final long DEFAULT_TTL_MS = TimeUnit.DAYS.toMillis(7);
+    public static final long FLUSH_INTERVAL_MS = MessageLog.FLUSH_INTERVAL_MS;
+
+    private record Mail(byte[] bytes, String sender, long expires) {
+    }
+
+    private static final class Mailbox {
+        final ArrayDeque<Mail> messages = new ArrayDeque<>();
+        int bytes;
+        int dropped;
+    }
+
+    private final FrameSerialization serialization;
+    private final int maxPerUser;
+    private final int maxBytesPerUser;
+    private final int maxPerSender;
+    private final int maxTotal;
+    private final long ttlMillis;
+    private final Path file; // null: samo u memoriji
+    private final ScheduledExecutorService flusher;
+    private final Map<String, Mailbox> boxes = new HashMap<>(); // guarded by this
+    private final Map<String, Integer> pendingBySender = new HashMap<>(); // guarded by this
+    private int total; // guarded by this
+    private long version; // guarded by this
+    private final Object writeLock = new Object();
+    private long writtenVersion; // guarded by writeLock
+
+    /** @param file where the inbox is kept between restarts, or null to keep it only in memory */
+    public OfflineInbox(FrameSerialization serialization, int maxPerUser, int maxBytesPerUser, int maxPerSender,
+                        int maxTotal, long ttlMillis, Path file) {
+        this.serialization = serialization;
+        this.maxPerUser = maxPerUser;
+        this.maxBytesPerUser = maxBytesPerUser;
+        this.maxPerSender = maxPerSender;
+        this.maxTotal = maxTotal;
+        this.ttlMillis = ttlMillis;
+        this.file = file;
+        if (file == null) {
+            this.flusher = null;
+            return;
+        }
+        load();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "inbox-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues the message for its recipient, evicting the recipient's oldest
+     * messages if needed. Returns false if it was not stored: the server-wide
+     * or the sender's limit is reached, the message alone is over the per-user
+     * limit, or it is already past its time to live.
+     */
+    public boolean offer(PrivateMessage message) {
+        return add(message, serialization.encode(message).bytes(), System.currentTimeMillis());
+    }
+
+    /** Removes and returns everything waiting for the user, or null if nothing is. */
+    public InboxBatch take(String user) {
+        Mailbox box;
+        synchronized (this) {
+            box = boxes.remove(user);
+            if (box == null) return null;
+            expire(box, System.currentTimeMillis());
+            for (Mail mail : box.messages) release(mail);
+            total -= box.messages.size();
+            version++;
+        }
+        PrivateMessage[] messages = new PrivateMessage[box.messages.size()];
+        int i = 0;
+        for (Mail mail : box.messages) messages[i++] = (PrivateMessage) serialization.decode(mail.bytes());
+        return new InboxBatch(messages, box.dropped);
+    }
+
+    public synchronized boolean has(String user) {
+        return boxes.containsKey(user);
+    }
+
+    /** Messages waiting, for all users. */
+    public synchronized int size() {
+        return total;
+    }
+
+    /** Drops messages past their time to live; the flusher does this too. */
+    public synchronized void purgeExpired() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Mailbox> it = boxes.values().iterator(); it.hasNext(); ) {
+            Mailbox box = it.next();
+            // prazan sandučić bez pristiglih poruka ne treba čuvati samo zbog brojača
+            if (expire(box, now) && box.messages.isEmpty()) it.remove();
+        }
+    }
+
+    /** Writes the inbox to its file if it changed since the last write. */
+    public void flush() {
+        purgeExpired();
+        if (file == null) return;
+        long snapshotVersion;
+        List<byte[]> snapshot = new ArrayList<>();
+        synchronized (this) {
+            snapshotVersion = version;
+            for (Mailbox box : boxes.values()) {
+                for (Mail mail : box.messages) snapshot.add(mail.bytes());
+            }
+        }
+        synchronized (writeLock) {
+            if (snapshotVersion <= writtenVersion) return;
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                    for (byte[] bytes : snapshot) {
+                        out.writeInt(bytes.length);
+                        out.write(bytes);
+                    }
+                }
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                writtenVersion = snapshotVersion;
+            } catch (IOException e) {
+                System.err.println("⚠️ Cannot write offline inbox " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (flusher != null) flusher.shutdownNow();
+        flush();
+    }
+
+    private synchronized boolean add(PrivateMessage message, byte[] bytes, long now) {
+        long expires = sentAt(message) + ttlMillis;
+        if (bytes.length > maxBytesPerUser || expires <= now) return false;
+        String sender = String.valueOf(message.getUser());
+        if (pendingBySender.getOrDefault(sender, 0) >= maxPerSender) return false;
+        Mailbox box = boxes.get(message.getRecipient());
+        if (box != null) expire(box, now);
+        boolean evicts = box != null
+                && (box.messages.size() >= maxPerUser || box.bytes + bytes.length > maxBytesPerUser);
+        if (!evicts && total >= maxTotal) {
+            purgeExpired();
+            box = boxes.get(message.getRecipient());
+        }
+        // pun korisnik menja svoju najstariju poruku, pa ukupan broj ne raste
+        if (!evicts && total >= maxTotal) return false;
+        if (box == null) boxes.put(message.getRecipient(), box = new Mailbox());
+        while (box.messages.size() >= maxPerUser || box.bytes + bytes.length > maxBytesPerUser) {
+            evict(box);
+        }
+        box.messages.addLast(new Mail(bytes, sender, expires));
+        box.bytes += bytes.length;
+        pendingBySender.merge(sender, 1, Integer::sum);
+        total++;
+        version++;
+        return true;
+    }
+
+    /** Drops the box's messages past their time to live, oldest first; returns whether any were. */
+    private boolean expire(Mailbox box, long now) {
+        boolean any = false;
+        while (!box.messages.isEmpty() && box.messages.peekFirst().expires() <= now) {
+            evict(box);
+            any = true;
+        }
+        return any;
+    }
+
+    private void evict(Mailbox box) {
+        Mail mail = box.messages.removeFirst();
+        box.bytes -= mail.bytes().length;
+        box.dropped++;
+        total--;
+        version++;
+        release(mail);
+    }
+
+    private void release(Mail mail) {
+        pendingBySender.computeIfPresent(mail.sender(), (sender, n) -> n > 1 ? n - 1 : null);
+    }
+
+    // vreme slanja je u samoj poruci, pa rok važi i posle restarta i prosleđivanja
+    private static long sentAt(PrivateMessage message) {
+        return message.getTimestamp() == null ? System.currentTimeMillis()
+                : message.getTimestamp().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private void load() {
+        if (!Files.exists(file)) return;
+        int loaded = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < 0 || length > maxBytesPerUser) throw new IOException("bad record length " + length);
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                if (serialization.decode(bytes) instanceof PrivateMessage pm && add(pm, bytes, System.currentTimeMillis())) loaded++;
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("⚠️ Offline inbox " + file + " is damaged, kept " + loaded + " messages: " + e.getMessage());
+        }
+        synchronized (writeLock) {
+            writtenVersion = version;
+        }
+        if (loaded > 0) System.out.println("📬 Recovered " + loaded + " offline messages.");
+    }
+}
@@ -0,0 +1,131 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.esotericsoftware.kryonet.Connection;
+
+/**
+ * Per-connection outbound queues with slow-consumer handling.
+ *
+ * A message is written straight to the connection while its TCP write buffer
+ * has room for the largest frame the server sends. Otherwise it is queued and
+ * the {@link OutboxPolicy} applies: queued user-list updates are coalesced,
+ * the oldest info messages are dropped when the queue is full, and a client
+ * whose oldest queued message is older than the lag limit (or whose queue
+ * overflows with messages that cannot be dropped) is disconnected.
+ *
+ * The lag is checked on every send and drain, and by a timer every half lag
+ * limit, so a client that stopped reading in a quiet room is dropped too.
+ */
+public class OutboundQueues implements AutoCloseable {
+
+    private final ConcurrentMap<Connection, Outbox> outboxes = new ConcurrentHashMap<>();
+    private final int writeBufferSize;
+    private final int headroom;
+    private final OutboxPolicy policy;
+
+    final LongAdder coalesced = new LongAdder();
+    final LongAdder droppedInfo = new LongAdder();
+    private final LongAdder slowDisconnects = new LongAdder();
+    private final ScheduledExecutorService lagCheck = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "outbox-lag-check");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * @param writeBufferSize the connections' TCP write buffer size
+     * @param maxFrameSize    largest single frame the server writes; sends wait until this much is free
+     */
+    public OutboundQueues(int writeBufferSize, int maxFrameSize, OutboxPolicy policy) {
+        this.writeBufferSize = writeBufferSize;
+        this.headroom = maxFrameSize;
+        this.policy = policy;
+        long period = Math.max(1, policy.maxLagMillis() / 2);
+        lagCheck.scheduleWithFixedDelay(this::checkLag, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public void send(Connection conn, Object message) {
+        if (!conn.isConnected()) return;
+        Outbox outbox = outboxes.computeIfAbsent(conn, Outbox::new);
+        if (!outbox.send(message, this)) dropSlowConsumer(conn, outbox);
+    }
+
+    /** Called when KryoNet reports the connection's write buffer as (nearly) empty. */
+    public void drain(Connection conn) {
+        Outbox outbox = outboxes.get(conn);
+        if (outbox == null || outbox.depth() == 0) return;
+        if (!outbox.drain(this)) dropSlowConsumer(conn, outbox);
+    }
+
+    public void remove(Connection conn) {
+        outboxes.remove(conn);
+    }
+
+    /** Flushes what fits and drops every client whose oldest queued message waited past the lag limit. */
+    public void checkLag() {
+        for (Connection conn : outboxes.keySet()) drain(conn);
+    }
+
+    @Override
+    public void close() {
+        lagCheck.shutdownNow();
+    }
+
+    public int depth(Connection conn) {
+        Outbox outbox = outboxes.get(conn);
+        return outbox == null ? 0 : outbox.depth();
+    }
+
+    public int totalDepth() {
+        int total = 0;
+        for (Outbox outbox : outboxes.values()) total += outbox.depth();
+        return total;
+    }
+
+    public int maxDepth() {
+        int max = 0;
+        for (Outbox outbox : outboxes.values()) max = Math.max(max, outbox.depth());
+        return max;
+    }
+
+    public long coalescedPresenceUpdates() {
+        return coalesced.sum();
+    }
+
+    public long droppedInfoMessages() {
+        return droppedInfo.sum();
+    }
+
+    public long slowConsumerDisconnects() {
+        return slowDisconnects.sum();
+    }
+
+    public OutboxPolicy policy() {
+        return policy;
+    }
+
+    @Override
+    public String toString() {
+        return "queued=" + totalDepth() + " maxQueue=" + maxDepth()
+                + " coalesced=" + coalescedPresenceUpdates()
+                + " droppedInfo=" + droppedInfoMessages()
+                + " slowDisconnects=" + slowConsumerDisconnects();
+    }
+
+    boolean writable(Connection conn) {
+        return conn.getTcpWriteBufferSize() + headroom <= writeBufferSize;
+    }
+
+    private void dropSlowConsumer(Connection conn, Outbox outbox) {
+        slowDisconnects.increment();
+        System.err.println("⚠️ Disconnecting slow consumer " + conn + " (" + outbox.depth() + " queued).");
+        outboxes.remove(conn);
+        conn.close();
+    }
+}
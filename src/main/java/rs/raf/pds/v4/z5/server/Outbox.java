@@ -0,0 +1,88 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+import com.esotericsoftware.kryonet.Connection;
+
+import main.java.rs.raf.pds.v4.z5.messages.InfoMessage;
+import main.java.rs.raf.pds.v4.z5.messages.ListUsers;
+
+/**
+ * Bounded queue in front of one connection's TCP write buffer. Messages go
+ * straight to the socket while the buffer has headroom; otherwise they wait
+ * here and are flushed when KryoNet reports the connection idle.
+ */
+class Outbox {
+
+    enum Kind { MESSAGE, PRESENCE, INFO }
+
+    private record Pending(Object message, Kind kind, long enqueuedAt) {}
+
+    private final Connection connection;
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    private volatile int depth;
+
+    Outbox(Connection connection) {
+        this.connection = connection;
+    }
+
+    static Kind kindOf(Object message) {
+        Class<?> type = message instanceof EncodedFrame frame ? frame.getType() : message.getClass();
+        if (type == ListUsers.class) return Kind.PRESENCE; // PresenceDelta ostaje MESSAGE: delta se ne sme preskočiti
+        if (type == InfoMessage.class) return Kind.INFO;
+        return Kind.MESSAGE;
+    }
+
+    /** Returns false if the connection has to be dropped as a slow consumer. */
+    synchronized boolean send(Object message, OutboundQueues queues) {
+        if (queue.isEmpty() && queues.writable(connection)) {
+            connection.sendTCP(message);
+            return true;
+        }
+
+        Kind kind = kindOf(message);
+        OutboxPolicy policy = queues.policy();
+        if (kind == Kind.PRESENCE && policy.coalescePresence() && removeFirst(Kind.PRESENCE)) {
+            queues.coalesced.increment();
+        }
+        if (queue.size() >= policy.maxQueued()) {
+            if (policy.dropOldestInfo() && removeFirst(Kind.INFO)) {
+                queues.droppedInfo.increment();
+            } else if (policy.dropOldestInfo() && kind == Kind.INFO) {
+                // u redu nema starije info poruke, pa se odbacuje nova
+                queues.droppedInfo.increment();
+                return true;
+            } else {
+                return false;
+            }
+        }
+        queue.add(new Pending(message, kind, System.currentTimeMillis()));
+        depth = queue.size();
+        return drain(queues);
+    }
+
+    /** Writes queued messages while the socket buffer has room; false if the client lags too far behind. */
+    synchronized boolean drain(OutboundQueues queues) {
+        while (!queue.isEmpty() && queues.writable(connection)) {
+            connection.sendTCP(queue.poll().message());
+        }
+        depth = queue.size();
+        Pending head = queue.peek();
+        return head == null || System.currentTimeMillis() - head.enqueuedAt() <= queues.policy().maxLagMillis();
+    }
+
+    int depth() {
+        return depth;
+    }
+
+    private boolean removeFirst(Kind kind) {
+        for (Iterator<Pending> it = queue.iterator(); it.hasNext(); ) {
+            if (it.next().kind() == kind) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,19 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+/**
+ * How a connection's outbound queue behaves once the client stops keeping up.
+ *
+ * @param maxQueued         messages held per connection before the drop rules apply
+ * @param coalescePresence  keep only the newest queued user-list update
+ * @param dropOldestInfo    when full, discard the oldest queued info message first
+ * @param maxLagMillis      disconnect when the oldest queued message waited this long
+ */
+public record OutboxPolicy(int maxQueued, boolean coalescePresence, boolean dropOldestInfo, long maxLagMillis) {
+
+    public static final OutboxPolicy DEFAULT = new OutboxPolicy(256, true, true, 10_000);
+
+    public OutboxPolicy {
+        if (maxQueued < 1) throw new IllegalArgumentException("maxQueued must be positive: " + maxQueued);
+        if (maxLagMillis < 1) throw new IllegalArgumentException("maxLagMillis must be positive: " + maxLagMillis);
+    }
+}
@@ -0,0 +1,111 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import main.java.rs.raf.pds.v4.z5.messages.ListUsers;
+import main.java.rs.raf.pds.v4.z5.messages.PresenceDelta;
+
+/**
+ * Versioned room presence. A member joining gets a {@link ListUsers} snapshot
+ * once; after that everybody gets {@link PresenceDelta}s with just the names
+ * that came and went. Changes are collected for {@code windowMillis}: the
+ * first change schedules a flush on the room lane, which compares the current
+ * members with the last published set, so a user who leaves and comes back
+ * within the window costs nothing.
+ *
+ * {@link #changed} may be called from any thread; {@link #snapshot} must run
+ * on the room lane, like the flush.
+ */
+public class PresenceTracker implements AutoCloseable {
+
+    public static final long DEFAULT_WINDOW_MILLIS = 100;
+
+    private final RoomDispatcher dispatcher;
+    private final long windowMillis;
+    private final Function<String, Collection<String>> members;
+    private final BiConsumer<String, PresenceDelta> publish;
+    private final ConcurrentMap<String, RoomState> rooms = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "presence-timer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final class RoomState {
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        Set<String> published = new HashSet<>();
+        long version;
+    }
+
+    /**
+     * @param members current member names of a room, called on the room lane
+     * @param publish sends a delta to the room's members, called on the room lane
+     */
+    public PresenceTracker(RoomDispatcher dispatcher, long windowMillis,
+                           Function<String, Collection<String>> members, BiConsumer<String, PresenceDelta> publish) {
+        this.dispatcher = dispatcher;
+        this.windowMillis = windowMillis;
+        this.members = members;
+        this.publish = publish;
+    }
+
+    /** Someone entered or left the room; a delta follows within the window. */
+    public void changed(String room) {
+        if (room == null || room.isEmpty()) return;
+        RoomState state = rooms.computeIfAbsent(room, k -> new RoomState());
+        if (!state.scheduled.compareAndSet(false, true)) return;
+        try {
+            timer.schedule(() -> dispatcher.dispatch(room, () -> flush(room, state)), windowMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // zatvoren: odjave pri gašenju servera se više ne objavljuju
+        }
+    }
+
+    /**
+     * The members as of the latest delta, with its version, so every later
+     * delta applies to it exactly. Pending changes are flushed first: a list
+     * ahead of its version would miss a delta for a user who came and went
+     * before the flush.
+     */
+    public ListUsers snapshot(String room) {
+        RoomState state = rooms.computeIfAbsent(room, k -> new RoomState());
+        flush(room, state);
+        return new ListUsers(room, state.published.toArray(new String[0]), state.version);
+    }
+
+    private void flush(String room, RoomState state) {
+        state.scheduled.set(false); // izmene od ovog trenutka zakazuju novi flush; zakazani posle snapshot-a ne nađe razliku
+        Set<String> current = new HashSet<>(members.apply(room));
+        List<String> joined = new ArrayList<>();
+        List<String> left = new ArrayList<>();
+        for (String user : current) {
+            if (!state.published.contains(user)) joined.add(user);
+        }
+        for (String user : state.published) {
+            if (!current.contains(user)) left.add(user);
+        }
+        state.published = current;
+        if (joined.isEmpty() && left.isEmpty()) return;
+        state.version++;
+        publish.accept(room, new PresenceDelta(room, state.version,
+                joined.toArray(new String[0]), left.toArray(new String[0])));
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+}
@@ -0,0 +1,128 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands server work off the KryoNet update thread onto lanes striped by room.
+ * Tasks with the same key run one at a time in submission order, so a room
+ * keeps its ordering; different lanes run in parallel on the backing
+ * executor, which is either a fixed platform-thread pool or one virtual
+ * thread per task.
+ */
+public class RoomDispatcher implements AutoCloseable {
+
+    public static final int DEFAULT_STRIPES = 64;
+    /** Tasks a lane runs before yielding its thread to other lanes. */
+    private static final int MAX_BATCH = 128;
+
+    private final ExecutorService executor;
+    private final Lane[] lanes;
+
+    public RoomDispatcher(ExecutorService executor, int stripes) {
+        if (stripes < 1) throw new IllegalArgumentException("stripes must be positive: " + stripes);
+        this.executor = executor;
+        this.lanes = new Lane[stripes];
+        for (int i = 0; i < stripes; i++) lanes[i] = new Lane();
+    }
+
+    public static RoomDispatcher fixedPool(int threads, int stripes) {
+        AtomicInteger n = new AtomicInteger();
+        return new RoomDispatcher(Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "room-worker-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }), stripes);
+    }
+
+    public static RoomDispatcher virtualThreads(int stripes) {
+        return new RoomDispatcher(Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("room-worker-", 1).factory()), stripes);
+    }
+
+    /** {@code -Dchat.dispatch=virtual} selects virtual threads; anything else a pool of one thread per core. */
+    public static RoomDispatcher fromSystemProperties() {
+        int stripes = Integer.getInteger("chat.dispatch.stripes", DEFAULT_STRIPES);
+        if ("virtual".equalsIgnoreCase(System.getProperty("chat.dispatch"))) return virtualThreads(stripes);
+        int threads = Integer.getInteger("chat.dispatch.threads", Runtime.getRuntime().availableProcessors());
+        return fixedPool(threads, stripes);
+    }
+
+    /** Runs {@code task} after every task previously dispatched with a key on the same lane. */
+    public void dispatch(String key, Runnable task) {
+        lanes[laneOf(key)].submit(task);
+    }
+
+    public int laneOf(String key) {
+        int h = key == null ? 0 : key.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), lanes.length);
+    }
+
+    /** Tasks waiting on all lanes. */
+    public int backlog() {
+        int total = 0;
+        for (Lane lane : lanes) total += lane.size.get();
+        return total;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) executor.shutdownNow();
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Serial executor: at most one drain task per lane is scheduled on the backing executor. */
+    private final class Lane implements Runnable {
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        void submit(Runnable task) {
+            queue.add(task);
+            size.incrementAndGet();
+            schedule();
+        }
+
+        private void schedule() {
+            if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Runnable task;
+                int batch = 0;
+                while (batch++ < MAX_BATCH && (task = queue.poll()) != null) {
+                    size.decrementAndGet();
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        System.err.println("⚠️ Room task failed: " + e);
+                        e.printStackTrace();
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+            }
+            // zadatak dodat posle poll() a pre reset-a zastavice ne sme da ostane zaglavljen
+            schedule();
+        }
+    }
+}
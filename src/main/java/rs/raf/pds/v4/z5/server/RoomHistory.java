@@ -0,0 +1,151 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import main.java.rs.raf.pds.v4.z5.messages.ChatMessage;
+
+/**
+ * Fixed-capacity message ring for one room.
+ *
+ * Appends are lock-free: a writer claims the next sequence number with an
+ * atomic increment and publishes the message into slot {@code (seq - 1) % capacity},
+ * unless a writer that came later already put a newer sequence there.
+ * Readers copy whatever slots hold the sequence they expect, so a snapshot
+ * never throws and never returns a message twice; a slot whose writer has not
+ * finished yet, or that was already overwritten, is simply skipped.
+ */
+public class RoomHistory {
+
+    // ChatMessage (40) + LocalDateTime sa LocalDate/LocalTime (72); chatRoom string je zajednički za sobu
+    private static final int MESSAGE_OVERHEAD = 112;
+
+    private final AtomicInteger sequence;
+    private final AtomicReferenceArray<ChatMessage> slots;
+    private final int capacity;
+
+    public RoomHistory(int capacity) {
+        this(capacity, 0);
+    }
+
+    /** Creates a ring whose next message gets sequence {@code lastSequence + 1}. */
+    public RoomHistory(int capacity, int lastSequence) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.sequence = new AtomicInteger(lastSequence);
+    }
+
+    /** Assigns the next sequence number to the message (as its index) and stores it. */
+    public int append(ChatMessage msg) {
+        int seq = sequence.incrementAndGet();
+        msg.setIndex(seq);
+        store(seq, msg);
+        return seq;
+    }
+
+    /**
+     * Stores a message that already carries its sequence number, e.g. during
+     * log replay. A newer copy of the same sequence (an edit) replaces the
+     * older one; a message that was already pushed out of the ring is ignored.
+     */
+    public void restore(ChatMessage msg) {
+        int seq = msg.getIndex();
+        if (seq < 1) return;
+        sequence.accumulateAndGet(seq, Math::max);
+        store(seq, msg);
+    }
+
+    /** Makes the next appended message get at least {@code lastSequence + 1}, e.g. after a room handoff. */
+    public void advanceTo(int lastSequence) {
+        sequence.accumulateAndGet(lastSequence, Math::max);
+    }
+
+    /** Returns the message with the given sequence, or null if it was never stored or has been evicted. */
+    public ChatMessage get(int seq) {
+        if (seq < 1 || seq > sequence.get()) return null;
+        ChatMessage msg = slots.get(slot(seq));
+        return msg != null && msg.getIndex() == seq ? msg : null;
+    }
+
+    /** Up to {@code n} most recent messages, oldest first. */
+    public List<ChatMessage> last(int n) {
+        return before(sequence.get() + 1, n);
+    }
+
+    /** Up to {@code n} messages with sequence lower than {@code beforeSeq}, oldest first. */
+    public List<ChatMessage> before(int beforeSeq, int n) {
+        int hi = Math.min(beforeSeq - 1, sequence.get());
+        int lo = Math.max(1, Math.max(hi - capacity + 1, hi - n + 1));
+        List<ChatMessage> out = new ArrayList<>(Math.max(0, hi - lo + 1));
+        for (int seq = lo; seq <= hi; seq++) {
+            ChatMessage msg = slots.get(slot(seq));
+            if (msg != null && msg.getIndex() == seq) out.add(msg);
+        }
+        return out;
+    }
+
+    public List<ChatMessage> snapshot() {
+        return last(capacity);
+    }
+
+    /**
+     * Rough heap footprint of the stored messages: object headers, the
+     * timestamp and the strings (compact Latin-1 or UTF-16), not the ring itself.
+     */
+    public long estimatedBytes() {
+        long bytes = 0;
+        for (int i = 0; i < capacity; i++) {
+            ChatMessage msg = slots.get(i);
+            if (msg != null) bytes += MESSAGE_OVERHEAD + stringBytes(msg.getUser()) + stringBytes(msg.getTxt());
+        }
+        return bytes;
+    }
+
+    /** Messages currently held in the ring. */
+    public int size() {
+        int n = 0;
+        for (int i = 0; i < capacity; i++) {
+            if (slots.get(i) != null) n++;
+        }
+        return n;
+    }
+
+    private static long stringBytes(String s) {
+        if (s == null) return 0;
+        boolean latin1 = true;
+        for (int i = 0; i < s.length() && latin1; i++) latin1 = s.charAt(i) < 256;
+        return 40 + (long) s.length() * (latin1 ? 1 : 2);
+    }
+
+    public int lastSequence() {
+        return sequence.get();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /** A copy with another capacity, the same numbering and the newest messages that fit. */
+    public RoomHistory resized(int capacity) {
+        RoomHistory copy = new RoomHistory(capacity, lastSequence());
+        for (ChatMessage msg : snapshot()) copy.restore(msg);
+        return copy;
+    }
+
+    // pisac koji je zastao posle incrementAndGet ne sme da pregazi noviju poruku iz sledećeg kruga
+    private void store(int seq, ChatMessage msg) {
+        int slot = slot(seq);
+        ChatMessage current;
+        do {
+            current = slots.get(slot);
+            if (current != null && current.getIndex() > seq) return;
+        } while (!slots.compareAndSet(slot, current, msg));
+    }
+
+    private int slot(int seq) {
+        return (seq - 1) % capacity;
+    }
+}
@@ -0,0 +1,129 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import com.esotericsoftware.kryonet.Connection;
+
+/**
+ * Room membership index: room id → ids of the users whose active room it is.
+ * Fan-out walks only the members of one room, so its cost depends on the
+ * room size and not on how many users are connected to the server.
+ *
+ * Room and user ids come from {@link Symbols}. Members are kept in an
+ * {@link IntSet} per room, the active room of every user in an int array and
+ * the user's connection in an {@link IdArray}, so nothing here hashes a name.
+ */
+public class RoomIndex {
+
+    private final IdArray<IntSet> members = new IdArray<>();
+    private final IdArray<Connection> connections = new IdArray<>();
+    private volatile AtomicIntegerArray activeRooms = newActiveRooms(16);
+
+    /** Makes {@code room} the active room of the user, leaving the previous one. */
+    public synchronized void enter(int user, Connection conn, int room) {
+        int previous = activeRoom(user);
+        ensure(user).set(user, room);
+        connections.set(user, conn);
+        if (previous != Symbols.NONE && previous != room) removeMember(previous, user);
+        IntSet set = members.computeIfAbsent(room, k -> new IntSet());
+        synchronized (set) {
+            set.add(user);
+        }
+    }
+
+    /** Removes the user from its active room; returns that room or {@link Symbols#NONE}. */
+    public synchronized int leave(int user) {
+        return leave(user, connections.get(user));
+    }
+
+    /**
+     * Like {@link #leave(int)}, but only while the id is still in the index
+     * for {@code conn}: after a relogin under the same name the id belongs to
+     * the new connection, and the old session must not take it out.
+     */
+    public synchronized int leave(int user, Connection conn) {
+        int previous = activeRoom(user);
+        if (previous == Symbols.NONE || connections.get(user) != conn) return Symbols.NONE;
+        activeRooms.set(user, Symbols.NONE);
+        connections.set(user, null);
+        removeMember(previous, user);
+        return previous;
+    }
+
+    public int activeRoom(int user) {
+        AtomicIntegerArray a = activeRooms;
+        return user >= 0 && user < a.length() ? a.get(user) : Symbols.NONE;
+    }
+
+    public int size(int room) {
+        IntSet set = members.get(room);
+        if (set == null) return 0;
+        synchronized (set) {
+            return set.size();
+        }
+    }
+
+    /** Ids of the rooms that currently have at least one member. */
+    public IntSet rooms() {
+        IntSet rooms = new IntSet();
+        members.forEach((set, room) -> {
+            synchronized (set) {
+                if (!set.isEmpty()) rooms.add(room);
+            }
+        });
+        return rooms;
+    }
+
+    /** Calls {@code action} with the id of every member of the room. */
+    public void forEachMember(int room, IntConsumer action) {
+        for (int user : snapshot(room)) action.accept(user);
+    }
+
+    /**
+     * Calls {@code action} for every live connection in the room. Members are
+     * copied out under the room's lock and visited without it, so joins and
+     * leaves don't wait for a fan-out.
+     */
+    public void forEachLive(int room, Consumer<Connection> action) {
+        for (int user : snapshot(room)) {
+            Connection c = connections.get(user);
+            // id je mogao u međuvremenu da pripadne drugom korisniku u drugoj sobi
+            if (c != null && c.isConnected() && activeRoom(user) == room) action.accept(c);
+        }
+    }
+
+    private int[] snapshot(int room) {
+        IntSet set = members.get(room);
+        if (set == null) return new int[0];
+        synchronized (set) {
+            return set.toArray();
+        }
+    }
+
+    private void removeMember(int room, int user) {
+        IntSet set = members.get(room);
+        if (set == null) return;
+        synchronized (set) {
+            set.remove(user);
+        }
+    }
+
+    private AtomicIntegerArray ensure(int user) {
+        AtomicIntegerArray a = activeRooms;
+        if (user < a.length()) return a;
+        int length = a.length();
+        while (length <= user) length *= 2;
+        AtomicIntegerArray grown = newActiveRooms(length);
+        for (int i = 0; i < a.length(); i++) grown.set(i, a.get(i));
+        activeRooms = grown;
+        return grown;
+    }
+
+    private static AtomicIntegerArray newActiveRooms(int length) {
+        AtomicIntegerArray a = new AtomicIntegerArray(length);
+        for (int i = 0; i < length; i++) a.set(i, Symbols.NONE);
+        return a;
+    }
+}
@@ -0,0 +1,175 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of one room, split into fixed-size memory-mapped segments.
+ *
+ * Record layout: {@code int length, int crc32c, byte[length] payload}. A zero
+ * length marks the end of a segment. On open every segment is replayed; the
+ * first record with a bad length or checksum is treated as a torn write from
+ * a crash and the rest of that segment is discarded.
+ *
+ * The first segment is created and mapped by the first append, so a room
+ * that never gets a message costs an empty directory, not a mapped segment.
+ *
+ * Appends only copy into the mapping. Forcing pages to disk, including a
+ * segment that just filled up, and deleting segments past the limit are
+ * left to {@link #force()}, which the background flusher calls.
+ */
+class RoomLog {
+
+    static final String SEGMENT_SUFFIX = ".seg";
+    private static final int HEADER_SIZE = 8;
+
+    private final Path dir;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    private MappedByteBuffer current; // null dok prvi zapis ne napravi segment
+    private long currentId;
+    private List<MappedByteBuffer> sealed = new ArrayList<>(); // puni segmenti koje force() još nije upisao
+
+    RoomLog(Path dir, int segmentSize, int maxSegments) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+    }
+
+    /** Replays all records in order and leaves the log positioned after the last valid one. */
+    synchronized void open(Consumer<byte[]> replay) {
+        try {
+            Files.createDirectories(dir);
+            List<Long> ids = segmentIds();
+            for (long id : ids) {
+                MappedByteBuffer segment = map(id);
+                readSegment(segment, replay);
+                current = segment;
+                currentId = id;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open room log " + dir, e);
+        }
+    }
+
+    synchronized void append(byte[] payload) throws IOException {
+        int recordSize = HEADER_SIZE + payload.length;
+        if (recordSize > segmentSize) {
+            throw new IOException("Record of " + payload.length + " bytes does not fit a " + segmentSize + " byte segment");
+        }
+        if (current == null) current = map(currentId);
+        else if (current.remaining() < recordSize) roll();
+
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        current.putInt(payload.length);
+        current.putInt((int) crc.getValue());
+        current.put(payload);
+    }
+
+    /**
+     * Writes dirty pages to disk, segments filled since the last call first,
+     * then drops segments beyond the limit. The lock is held only to take the
+     * list, so appends do not wait for the disk.
+     */
+    void force() {
+        List<MappedByteBuffer> full;
+        MappedByteBuffer active;
+        long activeId;
+        synchronized (this) {
+            full = sealed;
+            sealed = new ArrayList<>();
+            active = current;
+            activeId = currentId;
+        }
+        for (MappedByteBuffer segment : full) segment.force();
+        if (active != null) active.force();
+        if (!full.isEmpty()) deleteOldSegments(activeId);
+    }
+
+    private void readSegment(MappedByteBuffer segment, Consumer<byte[]> replay) {
+        CRC32C crc = new CRC32C();
+        while (segment.remaining() >= HEADER_SIZE) {
+            int start = segment.position();
+            int length = segment.getInt();
+            int checksum = segment.getInt();
+            if (length <= 0 || length > segment.remaining()) {
+                discardFrom(segment, start, length != 0);
+                return;
+            }
+            byte[] payload = new byte[length];
+            segment.get(payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                discardFrom(segment, start, true);
+                return;
+            }
+            replay.accept(payload);
+        }
+    }
+
+    // ostatak segmenta posle pokidanog zapisa se briše da ga kasniji upisi ne bi "oživeli"
+    private void discardFrom(MappedByteBuffer segment, int position, boolean torn) {
+        if (torn) {
+            System.err.println("⚠️ Torn record in " + dir + " at offset " + position + ", truncating.");
+            segment.position(position);
+            while (segment.hasRemaining()) segment.put((byte) 0);
+        }
+        segment.position(position);
+    }
+
+    private void roll() throws IOException {
+        sealed.add(current);
+        currentId++;
+        current = map(currentId);
+    }
+
+    private void deleteOldSegments(long activeId) {
+        try {
+            for (long id : segmentIds()) {
+                if (id > activeId - maxSegments) continue;
+                try {
+                    Files.deleteIfExists(segmentPath(id));
+                } catch (IOException ignored) {
+                    // segment je možda još mapiran (Windows); pokušaće se ponovo posle sledećeg roll-a
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("⚠️ Cannot list room log " + dir + ": " + e.getMessage());
+        }
+    }
+
+    private MappedByteBuffer map(long id) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(id),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private Path segmentPath(long id) {
+        return dir.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX));
+    }
+
+    private List<Long> segmentIds() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(p -> p.getFileName().toString())
+                 .filter(n -> n.endsWith(SEGMENT_SUFFIX))
+                 .forEach(n -> ids.add(Long.parseLong(n.substring(0, n.length() - SEGMENT_SUFFIX.length()))));
+        }
+        ids.sort(null);
+        return ids;
+    }
+}
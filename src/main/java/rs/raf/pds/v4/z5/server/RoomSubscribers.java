@@ -0,0 +1,57 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import main.java.rs.raf.pds.v4.z5.messages.ChatMessage;
+
+/**
+ * Non-KryoNet listeners of a room (e.g. gRPC streams). They get every new or
+ * edited message of the room on its lane as it is stored, so a listener sees
+ * the same order as the room's connections. Listeners must not block.
+ */
+public class RoomSubscribers {
+
+    private final ConcurrentMap<String, List<Consumer<ChatMessage>>> subscribers = new ConcurrentHashMap<>();
+
+    /** Returns true if this is the room's first listener. */
+    public synchronized boolean add(String room, Consumer<ChatMessage> listener) {
+        List<Consumer<ChatMessage>> list = subscribers.computeIfAbsent(room, k -> new CopyOnWriteArrayList<>());
+        list.add(listener);
+        return list.size() == 1;
+    }
+
+    /** Returns true if this was the room's last listener. */
+    public synchronized boolean remove(String room, Consumer<ChatMessage> listener) {
+        List<Consumer<ChatMessage>> list = subscribers.get(room);
+        if (list == null || !list.remove(listener) || !list.isEmpty()) return false;
+        subscribers.remove(room);
+        return true;
+    }
+
+    /** Rooms with at least one listener. */
+    public List<String> rooms() {
+        return new ArrayList<>(subscribers.keySet());
+    }
+
+    public void publish(String room, ChatMessage msg) {
+        List<Consumer<ChatMessage>> list = subscribers.get(room);
+        if (list == null) return;
+        for (Consumer<ChatMessage> listener : list) {
+            try {
+                listener.accept(msg);
+            } catch (RuntimeException e) {
+                System.err.println("⚠️ Room subscriber failed in '" + room + "': " + e);
+            }
+        }
+    }
+
+    public int count(String room) {
+        List<Consumer<ChatMessage>> list = subscribers.get(room);
+        return list == null ? 0 : list.size();
+    }
+}
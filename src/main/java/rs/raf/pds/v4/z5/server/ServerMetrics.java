@@ -0,0 +1,317 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Runtime instrumentation of one chat server: per-room message rates and
+ * fan-out times, serialized bytes, connected users, history footprint and
+ * handler latency per message/command type.
+ *
+ * Everything is readable over JMX under {@value #DOMAIN} (one Server bean,
+ * one Room bean per room, one Handler bean per message type, all tagged with
+ * the server port) and as text via {@link #dump(int)}. Recording is a few
+ * LongAdder increments, so it stays on the hot path. Room counters are
+ * indexed by the room's interned id, so recording does not hash the name.
+ */
+public class ServerMetrics {
+
+    public static final String DOMAIN = "rs.raf.pds.chat";
+
+    /** JMX view of the whole server. */
+    public interface ServerMBean {
+        int getConnectedUsers();
+        int getRooms();
+        long getMessagesIn();
+        long getMessagesOut();
+        long getSerializedBytes();
+        long getSerializedObjects();
+        long getCompressedFrames();
+        long getCompressionSavedBytes();
+        int getOutboundQueued();
+        int getOutboundMaxQueue();
+        long getSlowConsumerDisconnects();
+        int getDispatchBacklog();
+        String dump();
+    }
+
+    /** JMX view of one room. */
+    public interface RoomMBean {
+        long getMessagesIn();
+        long getMessagesOut();
+        long getBytesOut();
+        long getFanouts();
+        double getFanoutP50Micros();
+        double getFanoutP99Micros();
+        double getFanoutMaxMicros();
+        int getMembers();
+        int getHistoryMessages();
+        long getHistoryBytes();
+    }
+
+    /** JMX view of one message or command handler. */
+    public interface HandlerMBean {
+        long getCount();
+        double getP50Micros();
+        double getP99Micros();
+        double getMaxMicros();
+    }
+
+    private final String port;
+    private final IntSupplier connectedUsers;
+    private final IntFunction<String> roomNames;
+    private final IntUnaryOperator roomMembers;
+    private final HistoryStore histories;
+    private final FrameSerialization serialization;
+    private final OutboundQueues outbound;
+    private final RoomDispatcher dispatcher;
+
+    private final IdArray<Room> rooms = new IdArray<>();
+    private final AtomicInteger roomCount = new AtomicInteger();
+    private final ConcurrentMap<String, Handler> handlers = new ConcurrentHashMap<>();
+    private final List<ObjectName> registered = new ArrayList<>();
+    private volatile MBeanServer mbeanServer;
+
+    /**
+     * @param roomNames   name of a room id, for reports and bean names
+     * @param roomMembers current member count of a room id
+     */
+    public ServerMetrics(int port, IntSupplier connectedUsers, IntFunction<String> roomNames, IntUnaryOperator roomMembers,
+                         HistoryStore histories, FrameSerialization serialization,
+                         OutboundQueues outbound, RoomDispatcher dispatcher) {
+        this.port = String.valueOf(port);
+        this.connectedUsers = connectedUsers;
+        this.roomNames = roomNames;
+        this.roomMembers = roomMembers;
+        this.histories = histories;
+        this.serialization = serialization;
+        this.outbound = outbound;
+        this.dispatcher = dispatcher;
+    }
+
+    public void recordMessageIn(int room) {
+        room(room).messagesIn.increment();
+    }
+
+    /** Messages stored in the room since start. */
+    public long messagesIn(int room) {
+        Room r = rooms.get(room);
+        return r == null ? 0 : r.messagesIn.sum();
+    }
+
+    /** One frame written to {@code recipients} members of the room in {@code nanos}. */
+    public void recordFanout(int room, int recipients, int frameBytes, long nanos) {
+        Room r = room(room);
+        r.messagesOut.add(recipients);
+        r.bytesOut.add((long) recipients * frameBytes);
+        r.fanout.record(nanos);
+    }
+
+    /** Time spent handling one message of {@code type} on a room lane. */
+    public void recordHandler(String type, long nanos) {
+        Handler h = handlers.get(type);
+        if (h == null) h = handlers.computeIfAbsent(type, this::newHandler);
+        h.latency.record(nanos);
+    }
+
+    /** Wraps a lane task so its run time is recorded under {@code type}. */
+    public Runnable timed(String type, Runnable task) {
+        return () -> {
+            long t0 = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                recordHandler(type, System.nanoTime() - t0);
+            }
+        };
+    }
+
+    /** Registers the Server bean and every known Room/Handler bean with the platform MBean server. */
+    public synchronized void registerMBeans() {
+        if (mbeanServer != null) return;
+        mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        register(new StandardMBean(serverView(), ServerMBean.class, false), "type=Server");
+        rooms.forEach((room, id) -> registerRoom(room));
+        handlers.forEach((name, handler) -> registerHandler(name, handler));
+    }
+
+    public synchronized void unregisterMBeans() {
+        if (mbeanServer == null) return;
+        for (ObjectName name : registered) {
+            try {
+                mbeanServer.unregisterMBean(name);
+            } catch (JMException ignored) {
+                // već odjavljen
+            }
+        }
+        registered.clear();
+        mbeanServer = null;
+    }
+
+    /** Plain-text report; rooms are sorted by outgoing messages and cut at {@code maxRooms}. */
+    public String dump(int maxRooms) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("users %d  rooms %d  in %d  out %d  serialized %s in %d objects  compressed %d frames, saved %s%n",
+                connectedUsers.getAsInt(), roomCount.get(), messagesIn(), messagesOut(),
+                bytes(serialization.serializedBytes()), serialization.serializedObjects(),
+                serialization.compressedFrames(), bytes(serialization.compressionSavedBytes())));
+        sb.append(String.format("outbound %s  dispatch backlog %d%n", outbound, dispatcher.backlog()));
+
+        List<Room> top = new ArrayList<>();
+        rooms.forEach((room, id) -> top.add(room));
+        top.sort(Comparator.comparingLong((Room r) -> r.messagesOut.sum()).reversed());
+        sb.append(String.format("%-20s %7s %8s %9s %9s %22s %14s%n",
+                "room", "members", "in", "out", "bytesOut", "fanout p50/p99/max µs", "history"));
+        for (Room r : top.subList(0, Math.min(maxRooms, top.size()))) {
+            sb.append(String.format("%-20s %7d %8d %9d %9s %22s %5d / %6s%n",
+                    r.name, r.getMembers(), r.getMessagesIn(), r.getMessagesOut(), bytes(r.getBytesOut()),
+                    triple(r.fanout), r.getHistoryMessages(), bytes(r.getHistoryBytes())));
+        }
+        if (top.size() > maxRooms) sb.append("... ").append(top.size() - maxRooms).append(" more rooms\n");
+
+        sb.append(String.format("%-20s %8s %22s%n", "handler", "count", "p50/p99/max µs"));
+        handlers.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(e -> sb.append(String.format("%-20s %8d %22s%n",
+                        e.getKey(), e.getValue().latency.count(), triple(e.getValue().latency))));
+        return sb.toString();
+    }
+
+    private long messagesIn() {
+        long[] n = new long[1];
+        rooms.forEach((r, id) -> n[0] += r.messagesIn.sum());
+        return n[0];
+    }
+
+    private long messagesOut() {
+        long[] n = new long[1];
+        rooms.forEach((r, id) -> n[0] += r.messagesOut.sum());
+        return n[0];
+    }
+
+    private Room room(int id) {
+        Room r = rooms.get(id);
+        return r != null ? r : rooms.computeIfAbsent(id, this::newRoom);
+    }
+
+    private Room newRoom(int id) {
+        Room r = new Room(id, roomNames.apply(id));
+        roomCount.incrementAndGet();
+        if (mbeanServer != null) registerRoom(r);
+        return r;
+    }
+
+    private Handler newHandler(String type) {
+        Handler h = new Handler();
+        if (mbeanServer != null) registerHandler(type, h);
+        return h;
+    }
+
+    private void registerRoom(Room room) {
+        register(new StandardMBean(room, RoomMBean.class, false), "type=Room,name=" + ObjectName.quote(room.name));
+    }
+
+    private void registerHandler(String name, Handler handler) {
+        register(new StandardMBean(handler, HandlerMBean.class, false), "type=Handler,name=" + ObjectName.quote(name));
+    }
+
+    private synchronized void register(StandardMBean bean, String keys) {
+        MBeanServer server = mbeanServer;
+        if (server == null) return;
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":port=" + port + "," + keys);
+            server.registerMBean(bean, name);
+            registered.add(name);
+        } catch (JMException e) {
+            System.err.println("⚠️ Cannot register MBean " + keys + ": " + e.getMessage());
+        }
+    }
+
+    private ServerMBean serverView() {
+        return new ServerMBean() {
+            @Override public int getConnectedUsers() { return connectedUsers.getAsInt(); }
+            @Override public int getRooms() { return roomCount.get(); }
+            @Override public long getMessagesIn() { return messagesIn(); }
+            @Override public long getMessagesOut() { return messagesOut(); }
+            @Override public long getSerializedBytes() { return serialization.serializedBytes(); }
+            @Override public long getSerializedObjects() { return serialization.serializedObjects(); }
+            @Override public long getCompressedFrames() { return serialization.compressedFrames(); }
+            @Override public long getCompressionSavedBytes() { return serialization.compressionSavedBytes(); }
+            @Override public int getOutboundQueued() { return outbound.totalDepth(); }
+            @Override public int getOutboundMaxQueue() { return outbound.maxDepth(); }
+            @Override public long getSlowConsumerDisconnects() { return outbound.slowConsumerDisconnects(); }
+            @Override public int getDispatchBacklog() { return dispatcher.backlog(); }
+            @Override public String dump() { return ServerMetrics.this.dump(Integer.MAX_VALUE); }
+        };
+    }
+
+    private static String triple(LatencyHistogram h) {
+        return String.format("%.1f/%.1f/%.1f", h.percentile(50) / 1000.0, h.percentile(99) / 1000.0, h.max() / 1000.0);
+    }
+
+    private static String bytes(long n) {
+        if (n < 1024) return n + " B";
+        if (n < 1024 * 1024) return String.format("%.1f KB", n / 1024.0);
+        return String.format("%.1f MB", n / (1024.0 * 1024));
+    }
+
+    private final class Room implements RoomMBean {
+        private final int id;
+        private final String name;
+        final LongAdder messagesIn = new LongAdder();
+        final LongAdder messagesOut = new LongAdder();
+        final LongAdder bytesOut = new LongAdder();
+        // hiljade soba: grub histogram, ~2 KB umesto ~30 KB po sobi
+        final LatencyHistogram fanout = LatencyHistogram.coarse();
+
+        Room(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        @Override public long getMessagesIn() { return messagesIn.sum(); }
+        @Override public long getMessagesOut() { return messagesOut.sum(); }
+        @Override public long getBytesOut() { return bytesOut.sum(); }
+        @Override public long getFanouts() { return fanout.count(); }
+        @Override public double getFanoutP50Micros() { return fanout.percentile(50) / 1000.0; }
+        @Override public double getFanoutP99Micros() { return fanout.percentile(99) / 1000.0; }
+        @Override public double getFanoutMaxMicros() { return fanout.max() / 1000.0; }
+        @Override public int getMembers() { return roomMembers.applyAsInt(id); }
+
+        @Override
+        public int getHistoryMessages() {
+            RoomHistory history = histories.find(name);
+            return history == null ? 0 : history.size();
+        }
+
+        @Override
+        public long getHistoryBytes() {
+            RoomHistory history = histories.find(name);
+            return history == null ? 0 : history.estimatedBytes();
+        }
+    }
+
+    private static final class Handler implements HandlerMBean {
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        @Override public long getCount() { return latency.count(); }
+        @Override public double getP50Micros() { return latency.percentile(50) / 1000.0; }
+        @Override public double getP99Micros() { return latency.percentile(99) / 1000.0; }
+        @Override public double getMaxMicros() { return latency.max() / 1000.0; }
+    }
+}
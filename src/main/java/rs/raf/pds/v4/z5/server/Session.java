@@ -0,0 +1,77 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import com.esotericsoftware.kryonet.Connection;
+
+/**
+ * Everything the server keeps about one logged-in connection: the user, its
+ * interned id and the ids of every room the connection has joined. Closing
+ * the session walks only its own rooms, so cleanup does not depend on how
+ * many rooms or users the server has.
+ *
+ * The id belongs to the session until {@link SessionRegistry#release}; code
+ * that indexes by it synchronizes on the session and checks
+ * {@link #isClosed()} first, so a recycled id is never written by a stale
+ * session.
+ */
+public class Session {
+
+    private final int id;
+    private final Connection connection;
+    private final String user;
+    private final boolean compressed;
+    private final IntSet rooms = new IntSet(); // guarded by this
+    private boolean closed; // guarded by this
+
+    Session(int id, Connection connection, String user, boolean compressed) {
+        this.id = id;
+        this.connection = connection;
+        this.user = user;
+        this.compressed = compressed;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    /** Whether the client asked for large frames to be sent compressed. */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /** Ids of the rooms this session joined. */
+    public synchronized int[] rooms() {
+        return rooms.toArray();
+    }
+
+    synchronized boolean hasRoom(int room) {
+        return rooms.contains(room);
+    }
+
+    synchronized boolean addRoom(int room) {
+        return !closed && rooms.add(room);
+    }
+
+    synchronized boolean removeRoom(int room) {
+        return rooms.remove(room);
+    }
+
+    /** Marks the session closed and returns the rooms it was in. */
+    synchronized int[] close() {
+        closed = true;
+        int[] joined = rooms.toArray();
+        rooms.clear();
+        return joined;
+    }
+}
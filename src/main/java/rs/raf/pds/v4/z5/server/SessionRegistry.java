@@ -0,0 +1,171 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+import com.esotericsoftware.kryonet.Connection;
+
+/**
+ * Known rooms and the sessions that joined them. Rooms and users are interned
+ * in {@link Symbols}: room ids are permanent, user ids are given at login and
+ * released with the session. Membership is kept on both sides (room →
+ * user ids, session → room ids) in {@link IntSet}s, so joining, leaving and
+ * closing a session are constant-time per room instead of a scan of every
+ * room's member list.
+ */
+public class SessionRegistry {
+
+    private final Symbols rooms = new Symbols();
+    private final Symbols users = new Symbols();
+    private final ConcurrentMap<Connection, Session> byConnection = new ConcurrentHashMap<>();
+    private final IdArray<Session> byUser = new IdArray<>();
+    // id korisnika se dodeljuje i oslobađa pod istom bravom: inače bi release stare sesije oslobodio id nove
+    private final Object userIds = new Object();
+    // soba postoji ako ima skup, makar prazan
+    private final IdArray<IntSet> joined = new IdArray<>();
+
+    /** The room's id, assigned on first use; the room itself exists only after {@link #addRoom}. */
+    public int roomId(String room) {
+        return rooms.intern(room);
+    }
+
+    public String roomName(int room) {
+        return rooms.name(room);
+    }
+
+    /** Registers the room; returns false if it already existed. */
+    public boolean addRoom(String room) {
+        return addRoom(roomId(room));
+    }
+
+    public boolean hasRoom(String room) {
+        int id = rooms.id(room);
+        return id != Symbols.NONE && joined.get(id) != null;
+    }
+
+    public List<String> roomNames() {
+        List<String> names = new ArrayList<>();
+        joined.forEach((members, room) -> names.add(rooms.name(room)));
+        return names;
+    }
+
+    /**
+     * Starts a session for a login. Any earlier session of the user or of the
+     * connection has to be closed and released first.
+     */
+    public Session open(Connection conn, String user, boolean compressed) {
+        Session session;
+        synchronized (userIds) {
+            session = new Session(users.intern(user), conn, user, compressed);
+            byUser.set(session.getId(), session);
+        }
+        byConnection.put(conn, session);
+        return session;
+    }
+
+    public Session get(Connection conn) {
+        return byConnection.get(conn);
+    }
+
+    /** The user's live session, or null if the user is not logged in here. */
+    public Session find(String user) {
+        int id = users.id(user);
+        return id == Symbols.NONE ? null : byUser.get(id);
+    }
+
+    public String userName(int user) {
+        return users.name(user);
+    }
+
+    /** Adds the session to the room, creating the room if needed; returns true if it was created. */
+    public boolean join(Session session, String room) {
+        int id = roomId(room);
+        boolean created = addRoom(id);
+        synchronized (session) { // close() između dva koraka bi ostavio mrtvog člana
+            if (session.addRoom(id)) {
+                IntSet members = joined.get(id);
+                synchronized (members) {
+                    members.add(session.getId());
+                }
+            }
+        }
+        return created;
+    }
+
+    public void leave(Session session, String room) {
+        int id = rooms.id(room);
+        if (id == Symbols.NONE) return;
+        synchronized (session) {
+            if (session.removeRoom(id)) removeMember(id, session.getId());
+        }
+    }
+
+    /**
+     * Ends the connection's session and removes it from every room it joined;
+     * null if it had none. The user id stays reserved until {@link #release}.
+     * If a relogin under the same name already holds the id, rooms the new
+     * session joined keep the id as their member.
+     */
+    public Session close(Connection conn) {
+        Session session = byConnection.remove(conn);
+        if (session == null) return null;
+        int[] rooms = session.close();
+        synchronized (userIds) { // open ne može da dodeli id između provere i brisanja
+            Session owner = byUser.get(session.getId());
+            if (owner == null || owner == session) {
+                for (int room : rooms) removeMember(room, session.getId());
+            } else {
+                synchronized (owner) { // ni join nove sesije
+                    for (int room : rooms) if (!owner.hasRoom(room)) removeMember(room, session.getId());
+                }
+            }
+        }
+        return session;
+    }
+
+    /** Frees the user id of a closed session, unless a newer session of the user already has it. */
+    public void release(Session session) {
+        synchronized (userIds) {
+            if (byUser.remove(session.getId(), session)) users.release(session.getId());
+        }
+    }
+
+    public int size() {
+        return byConnection.size();
+    }
+
+    public void forEach(Consumer<Session> action) {
+        byConnection.values().forEach(action);
+    }
+
+    public List<String> userNames() {
+        List<String> names = new ArrayList<>(byConnection.size());
+        for (Session session : byConnection.values()) names.add(session.getUser());
+        return names;
+    }
+
+    /** Sessions that joined the room, active there or not. */
+    public int members(String room) {
+        int id = rooms.id(room);
+        IntSet members = id == Symbols.NONE ? null : joined.get(id);
+        if (members == null) return 0;
+        synchronized (members) {
+            return members.size();
+        }
+    }
+
+    private boolean addRoom(int room) {
+        return joined.putIfAbsent(room, new IntSet()) == null;
+    }
+
+    private void removeMember(int room, int user) {
+        IntSet members = joined.get(room);
+        if (members == null) return;
+        synchronized (members) {
+            members.remove(user);
+        }
+    }
+}
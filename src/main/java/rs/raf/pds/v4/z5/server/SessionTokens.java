@@ -0,0 +1,181 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Signed session tokens: {@code user.issuedAt.hmac}, checked by recomputing
+ * the HMAC-SHA256, so the server keeps nothing per token. With the key kept
+ * in the data directory a token stays valid across a restart, which is when
+ * all clients come back at once.
+ *
+ * The one thing kept per user is a revocation floor: {@link #revoke} rejects
+ * every token issued to the user before it, so a client that was replaced by
+ * a newer login cannot resume even if it never got the frame telling it so.
+ * Floors are appended to a file next to the key and forgotten once they are
+ * older than the TTL, when every token they could reject has expired anyway.
+ */
+public class SessionTokens {
+
+    public static final long DEFAULT_TTL_MS = 24 * 60 * 60 * 1000L;
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int KEY_BYTES = 32;
+
+    private final SecretKeySpec key;
+    private final long ttlMillis;
+    private final ThreadLocal<Mac> macs;
+    private final ConcurrentMap<String, Long> notBefore = new ConcurrentHashMap<>();
+    private final Path revocations; // null: opozivi žive samo dok radi proces
+
+    public SessionTokens(byte[] key, long ttlMillis) {
+        this(key, ttlMillis, null);
+    }
+
+    public SessionTokens(byte[] key, long ttlMillis, Path revocations) {
+        this.key = new SecretKeySpec(key, ALGORITHM);
+        this.ttlMillis = ttlMillis;
+        this.macs = ThreadLocal.withInitial(this::newMac);
+        this.revocations = revocations;
+        newMac(); // neispravan ključ se prijavi odmah, ne pri prvom login-u
+        if (revocations != null) loadRevocations();
+    }
+
+    /**
+     * Key from {@code -Dchat.session.key} (hex), else from {@code dataDir/session.key},
+     * created with a random key on first start. If that file cannot be written the
+     * key lives only as long as the process, and tokens stop working after a restart.
+     */
+    public static SessionTokens fromSystemProperties(Path dataDir) {
+        String hex = System.getProperty("chat.session.key");
+        Path revoked = dataDir.resolve("session.revoked");
+        if (hex != null) return new SessionTokens(HexFormat.of().parseHex(hex), DEFAULT_TTL_MS, revoked);
+        Path file = dataDir.resolve("session.key");
+        try {
+            if (Files.exists(file)) {
+                byte[] key = Files.readAllBytes(file);
+                if (key.length == KEY_BYTES) return new SessionTokens(key, DEFAULT_TTL_MS, revoked);
+                System.err.println("⚠️ Session key " + file + " is damaged, creating a new one.");
+            }
+        } catch (IOException e) {
+            System.err.println("⚠️ Cannot read session key " + file + ": " + e.getMessage());
+        }
+        byte[] key = new byte[KEY_BYTES];
+        new SecureRandom().nextBytes(key);
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Files.write(file, key);
+        } catch (IOException e) {
+            System.err.println("⚠️ Cannot write session key " + file + ": " + e.getMessage());
+        }
+        return new SessionTokens(key, DEFAULT_TTL_MS, revoked);
+    }
+
+    public String issue(String user) {
+        // token izdat u istoj milisekundi kao opoziv ipak mora da prođe
+        long issuedAt = Math.max(System.currentTimeMillis(), notBefore.getOrDefault(user, 0L));
+        String body = encode(user) + "." + issuedAt;
+        return body + "." + encode(mac(body));
+    }
+
+    /** Rejects every token issued to the user so far; tokens issued from now on are valid. */
+    public void revoke(String user) {
+        long now = System.currentTimeMillis();
+        // i iznad prethodnog praga: token izdat na tom pragu u ovoj milisekundi je takođe star
+        long floor = notBefore.merge(user, now + 1, (previous, next) -> Math.max(previous + 1, next));
+        notBefore.values().removeIf(f -> f <= now - ttlMillis);
+        if (revocations == null) return;
+        synchronized (this) {
+            try {
+                Files.writeString(revocations, encode(user) + " " + floor + "\n", StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println("⚠️ Cannot record revoked session of " + user + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /** True if the token was issued by this key to this user, after its last revocation, and has not expired. */
+    public boolean verify(String user, String token) {
+        if (user == null || token == null) return false;
+        int macStart = token.lastIndexOf('.');
+        int issuedStart = token.lastIndexOf('.', macStart - 1);
+        if (issuedStart < 0) return false;
+        String body = token.substring(0, macStart);
+        byte[] expected = mac(body);
+        byte[] actual;
+        long issuedAt;
+        try {
+            actual = Base64.getUrlDecoder().decode(token.substring(macStart + 1));
+            issuedAt = Long.parseLong(token.substring(issuedStart + 1, macStart));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        long age = System.currentTimeMillis() - issuedAt;
+        return MessageDigest.isEqual(expected, actual)
+                && token.substring(0, issuedStart).equals(encode(user))
+                && age < ttlMillis
+                && issuedAt >= notBefore.getOrDefault(user, 0L);
+    }
+
+    // učitava opozive koji još mogu nešto da odbiju i prepisuje fajl bez isteklih
+    private void loadRevocations() {
+        if (!Files.exists(revocations)) return;
+        long expired = System.currentTimeMillis() - ttlMillis;
+        try {
+            for (String line : Files.readAllLines(revocations, StandardCharsets.UTF_8)) {
+                int space = line.indexOf(' ');
+                if (space < 0) continue;
+                try {
+                    String user = new String(Base64.getUrlDecoder().decode(line.substring(0, space)), StandardCharsets.UTF_8);
+                    long floor = Long.parseLong(line.substring(space + 1));
+                    if (floor > expired) notBefore.merge(user, floor, Math::max);
+                } catch (IllegalArgumentException e) {
+                    // oštećen red (npr. prekinut upis) se preskače
+                }
+            }
+            List<String> kept = new ArrayList<>(notBefore.size());
+            for (Map.Entry<String, Long> e : notBefore.entrySet()) kept.add(encode(e.getKey()) + " " + e.getValue());
+            Files.write(revocations, kept, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("⚠️ Cannot read revoked sessions " + revocations + ": " + e.getMessage());
+        }
+    }
+
+    private byte[] mac(String body) {
+        return macs.get().doFinal(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot create " + ALGORITHM, e);
+        }
+    }
+
+    private static String encode(String s) {
+        return encode(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,88 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Interning table that gives every distinct name a small int id. Names are
+ * looked up once where they arrive (a Login, a room name in a message);
+ * past that point the server indexes by id. Ids are dense and a released
+ * id is handed out again, so tables indexed by id stay as large as the
+ * peak number of live names.
+ *
+ * Lookups are optimistic reads validated against the lock that assignment
+ * and {@link #release} take, so a lookup never returns an id that was being
+ * freed, and perhaps handed to another name, while it read.
+ */
+public final class Symbols {
+
+    public static final int NONE = -1;
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final IdArray<String> names = new IdArray<>();
+    private final StampedLock lock = new StampedLock();
+    private int[] free = new int[8]; // guarded by lock
+    private int freeCount; // guarded by lock
+    private int next; // guarded by lock
+
+    /** Returns the name's id, assigning one on first use. */
+    public int intern(String name) {
+        long stamp = lock.tryOptimisticRead();
+        Integer id = ids.get(name);
+        return id != null && lock.validate(stamp) ? id : assign(name);
+    }
+
+    /** Returns the name's id, or {@link #NONE} if it has none. */
+    public int id(String name) {
+        long stamp = lock.tryOptimisticRead();
+        Integer id = ids.get(name);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                id = ids.get(name);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return id == null ? NONE : id;
+    }
+
+    public String name(int id) {
+        return names.get(id);
+    }
+
+    /** Forgets the name behind the id; the id may be given to the next new name. */
+    public void release(int id) {
+        long stamp = lock.writeLock();
+        try {
+            String name = names.get(id);
+            if (name == null) return;
+            ids.remove(name);
+            names.set(id, null);
+            if (freeCount == free.length) free = Arrays.copyOf(free, free.length * 2);
+            free[freeCount++] = id;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    private int assign(String name) {
+        long stamp = lock.writeLock();
+        try {
+            Integer existing = ids.get(name);
+            if (existing != null) return existing;
+            int id = freeCount > 0 ? free[--freeCount] : next++;
+            names.set(id, name); // ime je upisano pre nego što id postane vidljiv
+            ids.put(name, id);
+            return id;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package main.java.rs.raf.pds.v4.z5;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import main.java.rs.raf.pds.v4.z5.messages.ListUsers;
+import main.java.rs.raf.pds.v4.z5.messages.ListUsersPart;
+
+class ChatServerTest {
+
+    @Test
+    void smallUserListIsOneFrame() {
+        ListUsers users = new ListUsers("room", new String[] { "a", "b" }, 7);
+        assertEquals(List.of(users), ChatServer.userListFrames(users));
+    }
+
+    @Test
+    void largeUserListIsSplitIntoPartsThatFitTheHeadroom() {
+        String[] names = new String[3_000];
+        for (int i = 0; i < names.length; i++) names[i] = "user-with-a-long-name-" + i;
+        List<ListUsers> frames = ChatServer.userListFrames(new ListUsers("room", names, 7));
+
+        assertTrue(frames.size() > 1);
+        List<String> joined = new ArrayList<>();
+        for (int i = 0; i < frames.size(); i++) {
+            ListUsers frame = frames.get(i);
+            assertEquals(i < frames.size() - 1, frame instanceof ListUsersPart);
+            assertEquals("room", frame.getRoom());
+            assertEquals(7, frame.getVersion());
+            int bytes = 0;
+            for (String name : frame.getUsers()) bytes += name.length() * 3 + 2;
+            assertTrue(bytes <= ChatServer.MAX_HISTORY_BATCH_BYTES, "frame " + i + " is " + bytes + " bytes");
+            joined.addAll(List.of(frame.getUsers()));
+        }
+        assertEquals(List.of(names), joined);
+        assertSame(ListUsers.class, frames.get(frames.size() - 1).getClass());
+        assertFalse(frames.get(0).getUsers().length == 0);
+    }
+}
@@ -0,0 +1,70 @@
+package main.java.rs.raf.pds.v4.z5;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import main.java.rs.raf.pds.v4.z5.messages.ChatMessage;
+
+class ChatTranscriptTest {
+
+    private static ChatMessage message(String room, int index, String txt) {
+        ChatMessage msg = new ChatMessage("user", txt, room);
+        msg.setIndex(index);
+        return msg;
+    }
+
+    @Test
+    void sameIndexUpdatesTheLineInPlace() {
+        ChatTranscript transcript = new ChatTranscript(100);
+        transcript.put(message("room", 1, "first"));
+        ChatTranscript.Line line = transcript.find("room", 1);
+        transcript.put(message("room", 1, "edited"));
+
+        assertEquals(1, transcript.size());
+        assertSame(line, transcript.find("room", 1));
+        assertTrue(line.getText().endsWith("edited"));
+    }
+
+    @Test
+    void resetKeepsOldLinesButGivesRenumberedMessagesNewOnes() {
+        ChatTranscript transcript = new ChatTranscript(100);
+        transcript.addAll(List.of(message("room", 1, "old"), message("other", 1, "kept")));
+        ChatTranscript.Line old = transcript.find("room", 1);
+
+        transcript.reset("room");
+        transcript.put(message("room", 1, "new"));
+
+        assertEquals(3, transcript.size());
+        assertTrue(old.getText().endsWith("old"));
+        assertNull(old.getMessage());
+        ChatTranscript.Line renumbered = transcript.find("room", 1);
+        assertNotSame(old, renumbered);
+        assertTrue(renumbered.getText().endsWith("new"));
+        assertTrue(transcript.find("other", 1).getText().endsWith("kept"));
+    }
+
+    @Test
+    void trimmingALineFromBeforeAResetKeepsTheNewLine() {
+        ChatTranscript transcript = new ChatTranscript(3);
+        transcript.put(message("room", 1, "old"));
+        transcript.reset("room");
+        transcript.add("a");
+        transcript.add("b");
+        transcript.put(message("room", 1, "new"));
+        transcript.add("c"); // skraćuje na poslednja tri reda: stari red ispada
+
+        assertEquals(3, transcript.size());
+        ChatTranscript.Line renumbered = transcript.find("room", 1);
+        assertTrue(renumbered.getText().endsWith("new"));
+        transcript.put(message("room", 1, "edited"));
+        assertEquals(3, transcript.size());
+        assertTrue(renumbered.getText().endsWith("edited"));
+    }
+}
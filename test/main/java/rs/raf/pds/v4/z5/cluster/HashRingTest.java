@@ -0,0 +1,55 @@
+package main.java.rs.raf.pds.v4.z5.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class HashRingTest {
+
+    private static final int ROOMS = 3000;
+
+    @Test
+    void everyNodeComputesTheSameOwner() {
+        HashRing a = new HashRing(List.of("node-a", "node-b", "node-c"));
+        HashRing b = new HashRing(List.of("node-c", "node-a", "node-b"));
+        for (int i = 0; i < ROOMS; i++) assertEquals(a.ownerOf("room-" + i), b.ownerOf("room-" + i));
+    }
+
+    @Test
+    void emptyRingHasNoOwner() {
+        assertNull(new HashRing(List.of()).ownerOf("room"));
+    }
+
+    @Test
+    void roomsSpreadEvenly() {
+        HashRing ring = new HashRing(List.of("node-a", "node-b", "node-c", "node-d"));
+        Map<String, Integer> owned = new HashMap<>();
+        for (int i = 0; i < ROOMS; i++) owned.merge(ring.ownerOf("room-" + i), 1, Integer::sum);
+
+        assertEquals(4, owned.size());
+        // 128 virtuelnih čvorova: svaki čvor dobija četvrtinu, uz razumno odstupanje
+        owned.values().forEach(n -> assertTrue(n > ROOMS / 4 * 0.7 && n < ROOMS / 4 * 1.3, "owns " + n));
+    }
+
+    @Test
+    void joiningNodeTakesAboutItsShareAndNothingElseMoves() {
+        HashRing before = new HashRing(List.of("node-a", "node-b", "node-c"));
+        HashRing after = new HashRing(List.of("node-a", "node-b", "node-c", "node-d"));
+        int moved = 0;
+        for (int i = 0; i < ROOMS; i++) {
+            String room = "room-" + i;
+            String old = before.ownerOf(room);
+            String now = after.ownerOf(room);
+            if (old.equals(now)) continue;
+            assertEquals("node-d", now, room + " moved between old nodes");
+            moved++;
+        }
+        assertTrue(moved > ROOMS / 4 * 0.7 && moved < ROOMS / 4 * 1.3, "moved " + moved);
+    }
+}
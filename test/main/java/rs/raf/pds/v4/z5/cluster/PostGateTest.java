@@ -0,0 +1,73 @@
+package main.java.rs.raf.pds.v4.z5.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import main.java.rs.raf.pds.v4.z5.messages.ChatMessage;
+
+class PostGateTest {
+
+    private static RoomPost post(String origin, int seq) {
+        return new RoomPost("room", origin, seq, new ChatMessage("user", origin + seq, "room"), 0);
+    }
+
+    private static List<Integer> seqs(List<RoomPost> posts) {
+        return posts.stream().map(RoomPost::getOriginSeq).toList();
+    }
+
+    @Test
+    void postsInOrderPassStraightThrough() {
+        PostGate gate = new PostGate(false);
+        for (int seq = 5; seq <= 8; seq++) assertEquals(List.of(seq), seqs(gate.admit(post("a", seq), 0)));
+        assertFalse(gate.hasGaps());
+        assertEquals(8, gate.lastOf("a"));
+    }
+
+    @Test
+    void postAheadOfItsOriginWaitsForTheMissingOnes() {
+        PostGate gate = new PostGate(false);
+        gate.admit(post("a", 1), 0);
+
+        assertEquals(List.of(), seqs(gate.admit(post("a", 4), 0)));
+        assertEquals(List.of(), seqs(gate.admit(post("a", 3), 0)));
+        assertTrue(gate.hasGaps());
+        assertEquals(List.of(5), seqs(gate.admit(post("b", 5), 0))); // drugi izvor ne čeka
+        assertEquals(List.of(2, 3, 4), seqs(gate.admit(post("a", 2), 0)));
+        assertFalse(gate.hasGaps());
+    }
+
+    @Test
+    void gapIsGivenUpAfterTheTimeout() {
+        PostGate gate = new PostGate(false);
+        gate.admit(post("a", 1), 0);
+        gate.admit(post("a", 3), 100);
+
+        assertEquals(List.of(), seqs(gate.expire(100 + PostGate.GAP_TIMEOUT_MILLIS - 1)));
+        assertEquals(List.of(3), seqs(gate.expire(100 + PostGate.GAP_TIMEOUT_MILLIS)));
+        assertFalse(gate.hasGaps());
+        // izgubljena poruka koja ipak stigne ide dalje, van reda
+        assertEquals(List.of(2), seqs(gate.admit(post("a", 2), 5000)));
+        assertEquals(List.of(4), seqs(gate.admit(post("a", 4), 5000)));
+    }
+
+    @Test
+    void strictGateStartsUnknownOriginsAtOne() {
+        PostGate gate = new PostGate(true);
+        assertEquals(List.of(), seqs(gate.admit(post("a", 2), 0)));
+        assertEquals(List.of(2), seqs(gate.pending()));
+        assertEquals(List.of(1, 2), seqs(gate.admit(post("a", 1), 0)));
+    }
+
+    @Test
+    void handedOverPositionIsKept() {
+        PostGate gate = new PostGate(true);
+        gate.setLast("a", 10);
+        assertEquals(List.of(11), seqs(gate.admit(post("a", 11), 0)));
+        assertEquals(List.of("a"), List.of(gate.originIds()));
+    }
+}
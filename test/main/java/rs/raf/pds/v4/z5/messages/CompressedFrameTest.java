@@ -0,0 +1,79 @@
+package main.java.rs.raf.pds.v4.z5.messages;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Output;
+
+class CompressedFrameTest {
+
+    private final Kryo kryo = new Kryo();
+    private final Deflater deflater = CompressedFrame.newDeflater();
+
+    CompressedFrameTest() {
+        kryo.setRegistrationRequired(true);
+        KryoUtil.registerKryoClasses(kryo);
+    }
+
+    @AfterEach
+    void end() {
+        deflater.end();
+    }
+
+    private byte[] encode(Object object) {
+        Output output = new Output(1024, -1);
+        kryo.writeClassAndObject(output, object);
+        return output.toBytes();
+    }
+
+    @Test
+    void packedFrameUnpacksToTheSameMessage() {
+        ChatMessage msg = new ChatMessage("user", "hello ".repeat(500), "room");
+        msg.setIndex(42);
+        byte[] frame = encode(msg);
+
+        CompressedFrame packed = CompressedFrame.pack(frame, deflater);
+        assertNotNull(packed);
+        assertTrue(packed.getData().length < frame.length / 10);
+        ChatMessage unpacked = (ChatMessage) packed.unpack(kryo);
+        assertEquals(msg.getTxt(), unpacked.getTxt());
+        assertEquals(42, unpacked.getIndex());
+    }
+
+    @Test
+    void oneDeflaterPacksManyFrames() {
+        for (int i = 0; i < 10; i++) {
+            ChatMessage msg = new ChatMessage("user", ("message " + i + " ").repeat(200), "room");
+            CompressedFrame packed = CompressedFrame.pack(encode(msg), deflater);
+            assertEquals(msg.getTxt(), ((ChatMessage) packed.unpack(kryo)).getTxt());
+        }
+    }
+
+    @Test
+    void incompressibleFrameIsNotPacked() {
+        byte[] random = new byte[2048];
+        new Random(1).nextBytes(random);
+        assertNull(CompressedFrame.pack(random, deflater));
+        assertNull(CompressedFrame.pack(new byte[4], deflater));
+    }
+
+    @Test
+    void truncatedFrameFailsInsteadOfReadingGarbage() {
+        CompressedFrame packed = CompressedFrame.pack(encode(new ChatMessage("user", "x".repeat(4000), "room")), deflater);
+        CompressedFrame truncated = new CompressedFrame(packed.getLength(),
+                Arrays.copyOf(packed.getData(), packed.getData().length / 2));
+        assertThrows(KryoException.class, () -> truncated.unpack(kryo));
+    }
+}
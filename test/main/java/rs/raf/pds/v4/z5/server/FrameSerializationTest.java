@@ -0,0 +1,119 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryonet.KryoSerialization;
+
+import main.java.rs.raf.pds.v4.z5.messages.ChatMessage;
+import main.java.rs.raf.pds.v4.z5.messages.CompressedFrame;
+import main.java.rs.raf.pds.v4.z5.messages.KryoUtil;
+
+class FrameSerializationTest {
+
+    private final FrameSerialization serialization = new FrameSerialization(KryoUtil::registerKryoClasses);
+    // klijentski Kryo za raspakivanje, kao u ChatClient; Kryo nije thread-safe
+    private final ThreadLocal<Kryo> clientKryo = ThreadLocal.withInitial(() -> {
+        Kryo kryo = new KryoSerialization().getKryo();
+        KryoUtil.registerKryoClasses(kryo);
+        return kryo;
+    });
+
+    private static ChatMessage message(String txt) {
+        return new ChatMessage("user", txt, "room");
+    }
+
+    // ono što klijent dobije: raspakovan CompressedFrame ili sama poruka
+    private ChatMessage receive(EncodedFrame frame) {
+        Object object = serialization.decode(frame.bytes());
+        if (object instanceof CompressedFrame compressed) object = compressed.unpack(clientKryo.get());
+        return (ChatMessage) object;
+    }
+
+    @Test
+    void largeFrameIsCompressedOnceAndKeepsItsType() {
+        EncodedFrame frame = serialization.encode(message("repeat ".repeat(1000)));
+        EncodedFrame packed = serialization.compress(frame);
+
+        assertNotSame(frame, packed);
+        assertTrue(packed.length() < frame.length());
+        assertSame(ChatMessage.class, packed.getType());
+        assertSame(packed, serialization.compress(frame));
+        assertEquals(1, serialization.compressedFrames());
+        assertEquals(frame.length() - packed.length(), serialization.compressionSavedBytes());
+        assertEquals("repeat ".repeat(1000), receive(packed).getTxt());
+    }
+
+    @Test
+    void frameThatDoesNotShrinkIsSentAsIs() {
+        EncodedFrame frame = serialization.encode(message("hi"));
+        assertSame(frame, serialization.compress(frame));
+        assertEquals(0, serialization.compressedFrames());
+    }
+
+    @Test
+    void compressionStillWorksAfterClose() {
+        serialization.compress(serialization.encode(message("warm up the pool ".repeat(100))));
+        serialization.close();
+
+        EncodedFrame packed = serialization.compress(serialization.encode(message("after close ".repeat(100))));
+        assertEquals("after close ".repeat(100), receive(packed).getTxt());
+    }
+
+    /**
+     * More threads than pooled Deflaters compress different frames while the
+     * serialization is closed halfway. Every frame must still come back
+     * intact: a Deflater is never shared, and none is used after it ended.
+     */
+    @Test
+    void concurrentCompressionAcrossClose() throws InterruptedException {
+        int threads = FrameSerialization.DEFLATER_POOL_SIZE * 2;
+        int perThread = 300;
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch halfway = new CountDownLatch(threads);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers.add(new Thread(() -> {
+                boolean counted = false;
+                try {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        if (i == perThread / 2) {
+                            halfway.countDown();
+                            counted = true;
+                        }
+                        String txt = ("thread " + thread + " message " + i + " ").repeat(40);
+                        EncodedFrame packed = serialization.compress(serialization.encode(message(txt)));
+                        if (!txt.equals(receive(packed).getTxt())) failure.compareAndSet(null, new AssertionError(txt));
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    if (!counted) halfway.countDown();
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        start.countDown();
+        halfway.await();
+        serialization.close();
+        for (Thread t : workers) t.join();
+
+        assertNull(failure.get());
+        assertEquals((long) threads * perThread, serialization.compressedFrames());
+    }
+}
@@ -0,0 +1,58 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import main.java.rs.raf.pds.v4.z5.messages.ChatMessage;
+
+class HistoryStoreTest {
+
+    @AfterEach
+    void clearProperties() {
+        System.clearProperty("chat.history.capacity");
+        System.clearProperty("chat.history.capacities");
+    }
+
+    private static List<Integer> indexes(RoomHistory history) {
+        return history.snapshot().stream().map(ChatMessage::getIndex).toList();
+    }
+
+    @Test
+    void capacitiesComeFromSystemPropertiesBeforeAnyRingExists() {
+        System.setProperty("chat.history.capacity", "20");
+        System.setProperty("chat.history.capacities", "big=500, small=2,broken=x,=3");
+        HistoryStore store = HistoryStore.fromSystemProperties(10);
+
+        assertEquals(20, store.history("other").capacity());
+        assertEquals(500, store.history("big").capacity());
+        assertEquals(2, store.history("small").capacity());
+        assertEquals(20, store.history("broken").capacity());
+    }
+
+    @Test
+    void liveRingIsResizedWithItsNewestMessagesAndNumbering() {
+        HistoryStore store = new HistoryStore(4);
+        RoomHistory history = store.history("room");
+        for (int i = 0; i < 6; i++) history.append(new ChatMessage("user", "m" + i, "room"));
+
+        store.setCapacity("room", 2);
+        assertEquals(2, store.history("room").capacity());
+        assertEquals(List.of(5, 6), indexes(store.history("room")));
+
+        store.setCapacity("room", 8);
+        RoomHistory grown = store.history("room");
+        assertEquals(7, grown.append(new ChatMessage("user", "next", "room")));
+        assertEquals(List.of(5, 6, 7), indexes(grown));
+    }
+
+    @Test
+    void capacityMustBePositive() {
+        HistoryStore store = new HistoryStore(4);
+        assertThrows(IllegalArgumentException.class, () -> store.setCapacity("room", 0));
+    }
+}
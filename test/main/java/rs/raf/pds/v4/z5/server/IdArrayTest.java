@@ -0,0 +1,84 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class IdArrayTest {
+
+    @Test
+    void growsAndKeepsEarlierValues() {
+        IdArray<String> array = new IdArray<>();
+        for (int id = 0; id < 1_000; id += 3) array.set(id, "v" + id);
+        for (int id = 0; id < 1_000; id++) assertEquals(id % 3 == 0 ? "v" + id : null, array.get(id));
+        assertNull(array.get(-1));
+        assertNull(array.get(5_000));
+    }
+
+    @Test
+    void removeOnlyClearsTheExpectedValue() {
+        IdArray<String> array = new IdArray<>();
+        array.set(4, "new");
+        assertFalse(array.remove(4, "old"));
+        assertEquals("new", array.get(4));
+        assertTrue(array.remove(4, "new"));
+        assertNull(array.get(4));
+    }
+
+    @Test
+    void putIfAbsentKeepsTheFirstValue() {
+        IdArray<String> array = new IdArray<>();
+        assertNull(array.putIfAbsent(2, "first"));
+        assertEquals("first", array.putIfAbsent(2, "second"));
+        assertEquals("first", array.get(2));
+    }
+
+    /** Threads racing on the same ids, while others force the array to grow, must all see one value per id. */
+    @Test
+    void concurrentComputeIfAbsentCreatesOneValuePerId() throws InterruptedException {
+        IdArray<Object> array = new IdArray<>();
+        int ids = 2_000;
+        AtomicInteger created = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Object[][] seen = new Object[4][ids];
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < seen.length; t++) {
+            Object[] mine = seen[t];
+            threads.add(new Thread(() -> {
+                await(start);
+                for (int id = 0; id < ids; id++) {
+                    mine[id] = array.computeIfAbsent(id, k -> {
+                        created.incrementAndGet();
+                        return new Object();
+                    });
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread t : threads) t.join();
+
+        assertEquals(ids, created.get());
+        for (int id = 0; id < ids; id++) {
+            for (Object[] mine : seen) assertSame(array.get(id), mine[id]);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
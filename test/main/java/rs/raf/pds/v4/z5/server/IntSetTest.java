@@ -0,0 +1,53 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class IntSetTest {
+
+    @Test
+    void addRemoveAndContains() {
+        IntSet set = new IntSet();
+        assertTrue(set.add(0));
+        assertTrue(set.add(7));
+        assertFalse(set.add(7));
+        assertTrue(set.contains(0));
+        assertTrue(set.remove(0));
+        assertFalse(set.remove(0));
+        assertFalse(set.contains(0));
+        assertEquals(1, set.size());
+        set.clear();
+        assertTrue(set.isEmpty());
+    }
+
+    /** Random adds and removes past several resizes must match a HashSet, probe chains included. */
+    @Test
+    void matchesHashSetThroughGrowthAndRemoval() {
+        IntSet set = new IntSet();
+        Set<Integer> expected = new HashSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            int value = random.nextInt(2_000);
+            if (random.nextBoolean()) assertEquals(expected.add(value), set.add(value));
+            else assertEquals(expected.remove(value), set.remove(value));
+        }
+        assertEquals(expected.size(), set.size());
+        for (int value = 0; value < 2_000; value++) assertEquals(expected.contains(value), set.contains(value));
+
+        int[] values = set.toArray();
+        Arrays.sort(values);
+        assertArrayEquals(expected.stream().mapToInt(Integer::intValue).sorted().toArray(), values);
+        Set<Integer> visited = new HashSet<>();
+        set.forEach(visited::add);
+        assertEquals(expected, visited);
+    }
+}
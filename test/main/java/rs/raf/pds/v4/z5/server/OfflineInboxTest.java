@@ -0,0 +1,233 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import main.java.rs.raf.pds.v4.z5.messages.InboxBatch;
+import main.java.rs.raf.pds.v4.z5.messages.KryoUtil;
+import main.java.rs.raf.pds.v4.z5.messages.PrivateMessage;
+
+class OfflineInboxTest {
+
+    private static final long TTL = 60_000;
+
+    private final FrameSerialization serialization = new FrameSerialization(KryoUtil::registerKryoClasses);
+    private final List<OfflineInbox> created = new ArrayList<>();
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void close() {
+        created.forEach(OfflineInbox::close);
+        serialization.close();
+    }
+
+    private OfflineInbox inbox(int maxPerUser, int maxBytes, int maxPerSender, int maxTotal, Path file) {
+        OfflineInbox inbox = new OfflineInbox(serialization, maxPerUser, maxBytes, maxPerSender, maxTotal, TTL, file);
+        created.add(inbox);
+        return inbox;
+    }
+
+    private OfflineInbox inbox(int maxPerUser, int maxPerSender, int maxTotal) {
+        return inbox(maxPerUser, 8192, maxPerSender, maxTotal, null);
+    }
+
+    private static PrivateMessage mail(String from, String to, String txt) {
+        return new PrivateMessage(from, txt, to);
+    }
+
+    private static List<String> texts(InboxBatch batch) {
+        return Arrays.stream(batch.getMessages()).map(PrivateMessage::getTxt).toList();
+    }
+
+    @Test
+    void deliversInOrderOnce() {
+        OfflineInbox inbox = inbox(10, 10, 100);
+        assertTrue(inbox.offer(mail("a", "bob", "1")));
+        assertTrue(inbox.offer(mail("c", "bob", "2")));
+        assertTrue(inbox.has("bob"));
+
+        InboxBatch batch = inbox.take("bob");
+        assertEquals(List.of("1", "2"), texts(batch));
+        assertEquals(0, batch.getDropped());
+        assertNull(inbox.take("bob"));
+        assertEquals(0, inbox.size());
+    }
+
+    @Test
+    void fullMailboxDropsItsOldestMessages() {
+        OfflineInbox inbox = inbox(3, 10, 100);
+        for (int i = 0; i < 5; i++) assertTrue(inbox.offer(mail("a", "bob", "m" + i)));
+
+        InboxBatch batch = inbox.take("bob");
+        assertEquals(List.of("m2", "m3", "m4"), texts(batch));
+        assertEquals(2, batch.getDropped());
+    }
+
+    @Test
+    void byteLimitKeepsTheBatchInOneFrame() {
+        OfflineInbox inbox = inbox(100, 200, 100, 1000, null);
+        String text = "x".repeat(60);
+        for (int i = 0; i < 5; i++) inbox.offer(mail("a", "bob", text));
+        assertFalse(inbox.offer(mail("a", "bob", "y".repeat(300))), "one message over the limit is refused");
+
+        InboxBatch batch = inbox.take("bob");
+        assertTrue(batch.getMessages().length < 5);
+        assertEquals(5, batch.getMessages().length + batch.getDropped());
+    }
+
+    @Test
+    void oneSenderCannotFillTheInboxWithMailToManyNames() {
+        OfflineInbox inbox = inbox(10, 3, 100);
+        for (int i = 0; i < 3; i++) assertTrue(inbox.offer(mail("spammer", "name" + i, "hi")));
+        assertFalse(inbox.offer(mail("spammer", "name3", "hi")));
+        assertTrue(inbox.offer(mail("friend", "name3", "hi")));
+
+        // kad primalac preuzme poštu, pošiljalac opet ima mesta
+        inbox.take("name0");
+        assertTrue(inbox.offer(mail("spammer", "name3", "again")));
+    }
+
+    @Test
+    void serverLimitRefusesNewMailButAFullMailboxStillRotates() {
+        OfflineInbox inbox = inbox(2, 100, 3);
+        assertTrue(inbox.offer(mail("a", "bob", "1")));
+        assertTrue(inbox.offer(mail("a", "bob", "2")));
+        assertTrue(inbox.offer(mail("a", "ann", "3")));
+        assertFalse(inbox.offer(mail("a", "eve", "4")));
+        assertTrue(inbox.offer(mail("a", "bob", "5")));
+
+        assertEquals(3, inbox.size());
+        assertEquals(List.of("2", "5"), texts(inbox.take("bob")));
+    }
+
+    @Test
+    void mailPastItsTimeToLiveIsNotDelivered() throws InterruptedException {
+        OfflineInbox inbox = new OfflineInbox(serialization, 10, 8192, 10, 100, 100, null);
+        created.add(inbox);
+        PrivateMessage sentYesterday = mail("a", "bob", "old");
+        sentYesterday.setTimestamp(LocalDateTime.now().minusDays(1));
+        // rok se računa od vremena slanja zapisanog u poruci
+        assertFalse(inbox.offer(sentYesterday));
+
+        assertTrue(inbox.offer(mail("a", "bob", "1")));
+        Thread.sleep(200);
+        assertTrue(inbox.offer(mail("a", "bob", "2")));
+
+        InboxBatch batch = inbox.take("bob");
+        assertEquals(List.of("2"), texts(batch));
+        assertEquals(1, batch.getDropped());
+        assertEquals(0, inbox.size());
+    }
+
+    @Test
+    void survivesARestart() {
+        Path file = dir.resolve("inbox.bin");
+        OfflineInbox before = inbox(10, 8192, 10, 100, file);
+        before.offer(mail("a", "bob", "1"));
+        before.offer(mail("a", "ann", "2"));
+        before.take("ann");
+        before.close();
+
+        OfflineInbox after = inbox(10, 8192, 10, 100, file);
+        assertEquals(1, after.size());
+        assertEquals(List.of("1"), texts(after.take("bob")));
+        assertFalse(after.has("ann"));
+    }
+
+    @Test
+    void damagedFileKeepsTheMessagesBeforeTheDamage() throws IOException {
+        Path file = dir.resolve("inbox.bin");
+        OfflineInbox before = inbox(10, 8192, 10, 100, file);
+        before.offer(mail("a", "bob", "1"));
+        before.offer(mail("a", "bob", "2"));
+        before.close();
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+        OfflineInbox after = inbox(10, 8192, 10, 100, file);
+        assertEquals(List.of("1"), texts(after.take("bob")));
+    }
+
+    /**
+     * Senders offer to a few recipients while those recipients log in and
+     * take their mail. Every accepted message is delivered exactly once or
+     * counted as dropped, and the per-sender counts go back to zero.
+     */
+    @Test
+    void concurrentOffersAndTakesLoseNothing() throws InterruptedException {
+        int senders = 4;
+        int perSender = 5_000;
+        String[] recipients = { "r0", "r1", "r2" };
+        OfflineInbox inbox = inbox(50, 8192, 100, 1_000_000, null);
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger delivered = new AtomicInteger();
+        AtomicInteger dropped = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch sent = new CountDownLatch(senders);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int s = 0; s < senders; s++) {
+            String sender = "s" + s;
+            threads.add(new Thread(() -> {
+                await(start);
+                for (int i = 0; i < perSender; i++) {
+                    if (inbox.offer(mail(sender, recipients[i % recipients.length], sender + ":" + i))) accepted.incrementAndGet();
+                }
+                sent.countDown();
+            }));
+        }
+        threads.add(new Thread(() -> {
+            await(start);
+            do {
+                for (String r : recipients) {
+                    InboxBatch batch = inbox.take(r);
+                    if (batch == null) continue;
+                    delivered.addAndGet(batch.getMessages().length);
+                    dropped.addAndGet(batch.getDropped());
+                }
+            } while (sent.getCount() > 0);
+        }));
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread t : threads) t.join();
+        for (String r : recipients) {
+            InboxBatch batch = inbox.take(r);
+            if (batch == null) continue;
+            delivered.addAndGet(batch.getMessages().length);
+            dropped.addAndGet(batch.getDropped());
+        }
+
+        assertEquals(accepted.get(), delivered.get() + dropped.get());
+        assertEquals(0, inbox.size());
+        for (int s = 0; s < senders; s++) {
+            for (int i = 0; i < 100; i++) assertTrue(inbox.offer(mail("s" + s, "later", "m")), "s" + s + " still counted");
+            inbox.take("later");
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
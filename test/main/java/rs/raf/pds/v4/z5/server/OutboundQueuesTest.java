@@ -0,0 +1,213 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.esotericsoftware.kryonet.Connection;
+
+import main.java.rs.raf.pds.v4.z5.messages.InfoMessage;
+import main.java.rs.raf.pds.v4.z5.messages.ListUsers;
+import main.java.rs.raf.pds.v4.z5.messages.ListUsersPart;
+
+class OutboundQueuesTest {
+
+    private static final int BUFFER = 100;
+    private static final int HEADROOM = 10;
+
+    /** A connection whose write buffer is full until the test empties it. */
+    private static final class FakeConnection extends Connection {
+        final List<Object> written = new ArrayList<>();
+        volatile boolean full;
+        volatile boolean open = true;
+
+        @Override
+        public synchronized int sendTCP(Object object) {
+            written.add(object);
+            return 1;
+        }
+
+        @Override
+        public int getTcpWriteBufferSize() {
+            return full ? BUFFER : 0;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        synchronized List<Object> written() {
+            return new ArrayList<>(written);
+        }
+    }
+
+    private final List<OutboundQueues> created = new ArrayList<>();
+
+    private OutboundQueues queues(OutboxPolicy policy) {
+        OutboundQueues queues = new OutboundQueues(BUFFER, HEADROOM, policy);
+        created.add(queues);
+        return queues;
+    }
+
+    @AfterEach
+    void close() {
+        created.forEach(OutboundQueues::close);
+    }
+
+    @Test
+    void writesStraightThroughWhileTheBufferHasRoom() {
+        OutboundQueues queues = queues(OutboxPolicy.DEFAULT);
+        FakeConnection conn = new FakeConnection();
+        queues.send(conn, "a");
+        queues.send(conn, "b");
+        assertEquals(List.of("a", "b"), conn.written());
+        assertEquals(0, queues.depth(conn));
+    }
+
+    @Test
+    void queuedMessagesGoOutInOrderOnceTheBufferDrains() {
+        OutboundQueues queues = queues(OutboxPolicy.DEFAULT);
+        FakeConnection conn = new FakeConnection();
+        conn.full = true;
+        queues.send(conn, "a");
+        queues.send(conn, "b");
+        assertEquals(2, queues.depth(conn));
+
+        conn.full = false;
+        queues.send(conn, "c"); // ne preskače red
+        assertEquals(List.of("a", "b", "c"), conn.written());
+        assertEquals(0, queues.depth(conn));
+    }
+
+    @Test
+    void onlyTheNewestWholeUserListWaits() {
+        OutboundQueues queues = queues(OutboxPolicy.DEFAULT);
+        FakeConnection conn = new FakeConnection();
+        conn.full = true;
+        ListUsersPart part = new ListUsersPart("room", new String[] { "a" }, 2);
+        ListUsers end = new ListUsers("room", new String[] { "b" }, 2);
+        queues.send(conn, new ListUsers("room", new String[] { "old" }, 1));
+        queues.send(conn, part);
+        queues.send(conn, end);
+
+        conn.full = false;
+        queues.drain(conn);
+        assertEquals(List.of(part, end), conn.written());
+        assertEquals(1, queues.coalescedPresenceUpdates());
+    }
+
+    @Test
+    void oldestInfoIsDroppedWhenTheQueueIsFull() {
+        OutboundQueues queues = queues(new OutboxPolicy(2, true, true, 10_000));
+        FakeConnection conn = new FakeConnection();
+        conn.full = true;
+        InfoMessage info = new InfoMessage("info");
+        queues.send(conn, info);
+        queues.send(conn, "a");
+        queues.send(conn, "b");
+
+        conn.full = false;
+        queues.drain(conn);
+        assertEquals(List.of("a", "b"), conn.written());
+        assertEquals(1, queues.droppedInfoMessages());
+        assertTrue(conn.open);
+    }
+
+    @Test
+    void overflowWithoutDroppableMessagesDisconnects() {
+        OutboundQueues queues = queues(new OutboxPolicy(2, true, true, 10_000));
+        FakeConnection conn = new FakeConnection();
+        conn.full = true;
+        for (int i = 0; i < 3; i++) queues.send(conn, "m" + i);
+        assertFalse(conn.open);
+        assertEquals(1, queues.slowConsumerDisconnects());
+    }
+
+    /** Nothing is sent to or drained from the client after it stops reading; the timer still drops it. */
+    @Test
+    void clientThatStopsReadingInAQuietRoomIsDropped() throws InterruptedException {
+        OutboundQueues queues = queues(new OutboxPolicy(256, true, true, 50));
+        FakeConnection conn = new FakeConnection();
+        conn.full = true;
+        queues.send(conn, "last message");
+
+        for (int i = 0; i < 50 && conn.open; i++) Thread.sleep(20);
+        assertFalse(conn.open);
+        assertEquals(1, queues.slowConsumerDisconnects());
+        assertEquals(0, queues.depth(conn));
+    }
+
+    /**
+     * Several lanes send to one connection while its buffer keeps filling
+     * and emptying and the update thread drains it. Every message must be
+     * written exactly once and each lane's messages in the order it sent them.
+     */
+    @Test
+    void concurrentSendersAndDrainKeepEachLanesOrder() throws InterruptedException {
+        OutboundQueues queues = queues(new OutboxPolicy(1_000_000, true, true, 60_000));
+        FakeConnection conn = new FakeConnection();
+        int lanes = 4;
+        int perLane = 20_000;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean sending = new AtomicBoolean(true);
+
+        List<Thread> senders = new ArrayList<>();
+        for (int l = 0; l < lanes; l++) {
+            int lane = l;
+            senders.add(new Thread(() -> {
+                await(start);
+                for (int i = 0; i < perLane; i++) queues.send(conn, new int[] { lane, i });
+            }));
+        }
+        Thread updater = new Thread(() -> {
+            await(start);
+            while (sending.get()) {
+                conn.full = !conn.full;
+                queues.drain(conn);
+            }
+        });
+        senders.forEach(Thread::start);
+        updater.start();
+        start.countDown();
+        for (Thread t : senders) t.join();
+        sending.set(false);
+        updater.join();
+        conn.full = false;
+        queues.drain(conn);
+
+        AtomicReference<String> failure = new AtomicReference<>();
+        int[] next = new int[lanes];
+        for (Object o : conn.written()) {
+            int[] m = (int[]) o;
+            if (m[1] != next[m[0]]) failure.compareAndSet(null, "lane " + m[0] + " got " + m[1] + " after " + (next[m[0]] - 1));
+            next[m[0]] = m[1] + 1;
+        }
+        assertNull(failure.get());
+        for (int l = 0; l < lanes; l++) assertEquals(perLane, next[l]);
+        assertTrue(conn.open);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
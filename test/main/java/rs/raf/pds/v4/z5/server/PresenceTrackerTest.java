@@ -0,0 +1,129 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import main.java.rs.raf.pds.v4.z5.messages.ListUsers;
+import main.java.rs.raf.pds.v4.z5.messages.PresenceDelta;
+
+class PresenceTrackerTest {
+
+    private static final long WINDOW_MILLIS = 50;
+    private static final String ROOM = "room";
+
+    private final Set<String> members = ConcurrentHashMap.newKeySet();
+    private final List<PresenceDelta> published = Collections.synchronizedList(new ArrayList<>());
+    private final RoomDispatcher dispatcher = RoomDispatcher.fixedPool(1, 4);
+    private final PresenceTracker presence = new PresenceTracker(dispatcher, WINDOW_MILLIS,
+            room -> new ArrayList<>(members), (room, delta) -> published.add(delta));
+
+    @AfterEach
+    void close() {
+        presence.close();
+        dispatcher.close();
+    }
+
+    private void join(String user) {
+        members.add(user);
+        presence.changed(ROOM);
+    }
+
+    private void leave(String user) {
+        members.remove(user);
+        presence.changed(ROOM);
+    }
+
+    private ListUsers snapshotOnLane() {
+        CompletableFuture<ListUsers> snapshot = new CompletableFuture<>();
+        dispatcher.dispatch(ROOM, () -> snapshot.complete(presence.snapshot(ROOM)));
+        return snapshot.join();
+    }
+
+    // čeka zakazani flush i sve što je posle njega stiglo na traku
+    private void settle() throws InterruptedException {
+        Thread.sleep(WINDOW_MILLIS * 4);
+        CompletableFuture<Void> drained = new CompletableFuture<>();
+        dispatcher.dispatch(ROOM, () -> drained.complete(null));
+        drained.join();
+    }
+
+    /** What a client shows: the snapshot plus every later delta, like ChatClient.applyPresence. */
+    private Set<String> clientView(ListUsers snapshot) {
+        Set<String> view = new TreeSet<>(List.of(snapshot.getUsers()));
+        long version = snapshot.getVersion();
+        synchronized (published) {
+            for (PresenceDelta delta : published) {
+                if (delta.getVersion() <= version) continue;
+                assertEquals(version + 1, delta.getVersion(), "delta skipped a version");
+                view.addAll(List.of(delta.getJoined()));
+                view.removeAll(List.of(delta.getLeft()));
+                version = delta.getVersion();
+            }
+        }
+        return view;
+    }
+
+    @Test
+    void userWhoJoinsAndLeavesAroundASnapshotIsNotLeftBehind() throws InterruptedException {
+        join("a");
+        settle();
+
+        join("x");
+        join("joiner");
+        ListUsers snapshot = snapshotOnLane();
+        leave("x");
+        settle();
+
+        assertEquals(Set.of("a", "joiner"), clientView(snapshot));
+    }
+
+    @Test
+    void userWhoLeavesBeforeASnapshotAndComesBackIsShown() throws InterruptedException {
+        join("a");
+        join("x");
+        settle();
+
+        leave("x");
+        join("joiner");
+        ListUsers snapshot = snapshotOnLane();
+        join("x");
+        settle();
+
+        assertEquals(Set.of("a", "joiner", "x"), clientView(snapshot));
+    }
+
+    @Test
+    void changesWithinTheWindowAreOneDelta() throws InterruptedException {
+        join("a");
+        join("b");
+        leave("a");
+        settle();
+
+        assertEquals(1, published.size());
+        assertEquals(List.of("b"), List.of(published.get(0).getJoined()));
+        assertEquals(0, published.get(0).getLeft().length);
+    }
+
+    @Test
+    void userWhoLeavesAndComesBackWithinTheWindowCostsNothing() throws InterruptedException {
+        join("a");
+        settle();
+        published.clear();
+
+        leave("a");
+        join("a");
+        settle();
+
+        assertEquals(List.of(), published);
+    }
+}
@@ -0,0 +1,188 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import main.java.rs.raf.pds.v4.z5.messages.ChatMessage;
+
+class RoomHistoryTest {
+
+    private static ChatMessage message(String txt) {
+        return new ChatMessage("user", txt, "room");
+    }
+
+    private static ChatMessage message(int index, String txt) {
+        ChatMessage msg = message(txt);
+        msg.setIndex(index);
+        return msg;
+    }
+
+    @Test
+    void keepsTheLastCapacityMessagesInOrder() {
+        RoomHistory history = new RoomHistory(4);
+        for (int i = 1; i <= 10; i++) assertEquals(i, history.append(message("m" + i)));
+
+        List<ChatMessage> last = history.last(10);
+        assertEquals(4, last.size());
+        for (int i = 0; i < 4; i++) assertEquals(7 + i, last.get(i).getIndex());
+        assertNull(history.get(6));
+        assertEquals("m10", history.get(10).getTxt());
+        assertEquals(List.of(7, 8), history.before(9, 5).stream().map(ChatMessage::getIndex).toList());
+    }
+
+    @Test
+    void olderSequenceDoesNotReplaceNewerOneInTheSameSlot() {
+        RoomHistory history = new RoomHistory(4);
+        ChatMessage newer = message(6, "newer");
+        history.restore(newer);
+        // kao pisac koji je dobio 2 pa zastao dok je drugi upisao 6 u isti slot
+        history.restore(message(2, "stale"));
+
+        assertSame(newer, history.get(6));
+        assertNull(history.get(2));
+    }
+
+    @Test
+    void editOfTheSameSequenceReplacesIt() {
+        RoomHistory history = new RoomHistory(4);
+        history.append(message("first"));
+        history.restore(message(1, "edited"));
+
+        assertEquals("edited", history.get(1).getTxt());
+        assertEquals(1, history.lastSequence());
+    }
+
+    @Test
+    void editedCopyReplacesTheStoredMessageWithoutChangingIt() {
+        RoomHistory history = new RoomHistory(4);
+        history.append(message("first"));
+        ChatMessage original = history.get(1);
+        ChatMessage edited = original.withTxt("edited (Edited)");
+        history.restore(edited);
+
+        assertSame(edited, history.get(1));
+        assertEquals("first", original.getTxt()); // ko je već čitao original ne vidi pola izmene
+        assertEquals(original.getTimestamp(), edited.getTimestamp());
+        assertEquals(original.getUser(), edited.getUser());
+    }
+
+    @Test
+    void startsAfterTheGivenSequence() {
+        RoomHistory history = new RoomHistory(4, 41);
+        assertEquals(42, history.append(message("next")));
+        history.advanceTo(100);
+        assertEquals(101, history.append(message("after handoff")));
+    }
+
+    /**
+     * Many writers wrap a small ring many times while readers take snapshots.
+     * Snapshots must be strictly ascending, and once the writers are done the
+     * ring must hold exactly the newest {@code capacity} sequences.
+     */
+    @Test
+    void concurrentWritersKeepTheNewestMessages() throws InterruptedException {
+        int capacity = 8;
+        int writers = 8;
+        int perWriter = 20_000;
+        RoomHistory history = new RoomHistory(capacity);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            threads.add(new Thread(() -> {
+                await(start);
+                for (int i = 0; i < perWriter; i++) history.append(message(writer + ":" + i));
+            }));
+        }
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 2; r++) {
+            readers.add(new Thread(() -> {
+                await(start);
+                while (writing.get()) {
+                    int previous = 0;
+                    for (ChatMessage msg : history.snapshot()) {
+                        if (msg.getIndex() <= previous) failure.compareAndSet(null, "snapshot out of order at " + msg.getIndex());
+                        previous = msg.getIndex();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        readers.forEach(Thread::start);
+        start.countDown();
+        for (Thread t : threads) t.join();
+        writing.set(false);
+        for (Thread t : readers) t.join();
+
+        assertNull(failure.get());
+        int last = writers * perWriter;
+        assertEquals(last, history.lastSequence());
+        List<ChatMessage> kept = history.snapshot();
+        assertEquals(capacity, kept.size());
+        for (int i = 0; i < capacity; i++) assertEquals(last - capacity + 1 + i, kept.get(i).getIndex());
+        assertEquals(capacity, history.size());
+    }
+
+    /**
+     * A one-slot ring makes every writer race for the same slot. Once a
+     * sequence has been seen there, no older one may show up again: that
+     * would be a writer that stalled after taking its number and overwrote
+     * a newer message.
+     */
+    @Test
+    void stalledWriterNeverOverwritesANewerMessage() throws InterruptedException {
+        int writers = 8;
+        int perWriter = 100_000;
+        RoomHistory history = new RoomHistory(1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            threads.add(new Thread(() -> {
+                await(start);
+                for (int i = 0; i < perWriter; i++) history.append(message("m"));
+            }));
+        }
+        Thread checker = new Thread(() -> {
+            await(start);
+            int seen = 0;
+            while (writing.get()) {
+                for (ChatMessage msg : history.last(1)) seen = Math.max(seen, msg.getIndex());
+                for (int older = Math.max(1, seen - writers); older < seen; older++) {
+                    if (history.get(older) != null) failure.compareAndSet(null, older + " replaced " + seen);
+                }
+            }
+        });
+        threads.forEach(Thread::start);
+        checker.start();
+        start.countDown();
+        for (Thread t : threads) t.join();
+        writing.set(false);
+        checker.join();
+
+        assertNull(failure.get());
+        assertEquals(writers * perWriter, history.get(writers * perWriter).getIndex());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
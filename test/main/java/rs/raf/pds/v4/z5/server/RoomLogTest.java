@@ -0,0 +1,149 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RoomLogTest {
+
+    private static final int SEGMENT_SIZE = 256;
+    private static final int HEADER_SIZE = 8;
+
+    @TempDir
+    Path dir;
+
+    private static byte[] record(int i) {
+        return ("record " + i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private List<String> reopen() {
+        List<String> replayed = new ArrayList<>();
+        new RoomLog(dir, SEGMENT_SIZE, 100).open(bytes -> replayed.add(new String(bytes, StandardCharsets.UTF_8)));
+        return replayed;
+    }
+
+    private RoomLog write(int records) throws IOException {
+        RoomLog log = new RoomLog(dir, SEGMENT_SIZE, 100);
+        log.open(bytes -> { });
+        for (int i = 0; i < records; i++) log.append(record(i));
+        log.force();
+        return log;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.toString().endsWith(RoomLog.SEGMENT_SUFFIX)).sorted().toList();
+        }
+    }
+
+    // upisuje preko mape, kao delimičan upis pre pada
+    private void overwrite(Path segment, int offset, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), offset);
+        }
+    }
+
+    private static int offsetOf(int record) {
+        return record * (HEADER_SIZE + record(0).length);
+    }
+
+    @Test
+    void replaysRecordsAcrossSegments() throws IOException {
+        write(40);
+
+        assertEquals(3, segments().size());
+        List<String> replayed = reopen();
+        assertEquals(40, replayed.size());
+        for (int i = 0; i < 40; i++) assertEquals("record " + i, replayed.get(i));
+    }
+
+    @Test
+    void stopsAtARecordWithABadChecksumAndTruncatesTheRest() throws IOException {
+        write(5);
+        // jedan bajt sadržaja četvrtog zapisa
+        overwrite(segments().get(0), offsetOf(3) + HEADER_SIZE, new byte[] { 'X' });
+
+        assertEquals(List.of("record 0", "record 1", "record 2"), reopen());
+        // ostatak je obrisan: ni ponovno otvaranje ne vidi zapis 4
+        assertEquals(List.of("record 0", "record 1", "record 2"), reopen());
+    }
+
+    @Test
+    void stopsAtATornLength() throws IOException {
+        write(5);
+        overwrite(segments().get(0), offsetOf(2), ByteBuffer.allocate(4).putInt(SEGMENT_SIZE * 2).array());
+
+        assertEquals(List.of("record 0", "record 1"), reopen());
+    }
+
+    @Test
+    void appendsAfterRecoveryFollowTheLastGoodRecord() throws IOException {
+        write(5);
+        overwrite(segments().get(0), offsetOf(3) + HEADER_SIZE, new byte[] { 'X' });
+
+        RoomLog log = new RoomLog(dir, SEGMENT_SIZE, 100);
+        log.open(bytes -> { });
+        log.append("after crash".getBytes(StandardCharsets.UTF_8));
+        log.force();
+
+        assertEquals(List.of("record 0", "record 1", "record 2", "after crash"), reopen());
+    }
+
+    @Test
+    void dropsSegmentsBeyondTheLimit() throws IOException {
+        RoomLog log = new RoomLog(dir, SEGMENT_SIZE, 2);
+        log.open(bytes -> { });
+        for (int i = 0; i < 100; i++) log.append(record(i));
+        log.force();
+
+        List<Path> kept = segments();
+        assertEquals(2, kept.size());
+        List<String> replayed = reopen();
+        assertEquals("record 99", replayed.get(replayed.size() - 1));
+    }
+
+    @Test
+    void mapsNoSegmentUntilTheFirstAppend() throws IOException {
+        RoomLog log = write(0);
+        assertEquals(List.of(), segments());
+        assertEquals(List.of(), reopen());
+
+        log.append(record(0));
+        log.force();
+        assertEquals(1, segments().size());
+        assertEquals(List.of("record 0"), reopen());
+    }
+
+    @Test
+    void roomWithoutMessagesSurvivesARestart() {
+        MessageLog log = new MessageLog(dir, SEGMENT_SIZE, 100);
+        log.replay((room, bytes) -> { });
+        log.createRoom("empty room");
+        log.close();
+
+        MessageLog restarted = new MessageLog(dir, SEGMENT_SIZE, 100);
+        restarted.replay((room, bytes) -> { });
+        assertTrue(restarted.rooms().contains("empty room"));
+        restarted.close();
+    }
+
+    @Test
+    void refusesARecordLargerThanASegment() throws IOException {
+        RoomLog log = write(0);
+        assertThrows(IOException.class, () -> log.append(new byte[SEGMENT_SIZE]));
+    }
+}
@@ -0,0 +1,130 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import com.esotericsoftware.kryonet.Connection;
+
+class SessionRegistryTest {
+
+    private static Connection connection() {
+        return new Connection() {};
+    }
+
+    @Test
+    void closingAnOldSessionAfterReloginKeepsTheNewOne() {
+        SessionRegistry sessions = new SessionRegistry();
+        RoomIndex index = new RoomIndex();
+        Connection oldConn = connection();
+        Session old = sessions.open(oldConn, "bob", false);
+        sessions.join(old, "room");
+        sessions.join(old, "other");
+        index.enter(old.getId(), oldConn, sessions.roomId("room"));
+
+        // nova prijava stiže pre nego što se stara sesija zatvori na svojoj traci
+        Connection newConn = connection();
+        Session relogin = sessions.open(newConn, "bob", false);
+        sessions.join(relogin, "room");
+        index.enter(relogin.getId(), newConn, sessions.roomId("room"));
+
+        assertSame(old, sessions.close(oldConn));
+        assertEquals(Symbols.NONE, index.leave(old.getId(), oldConn));
+        sessions.release(old);
+
+        assertSame(relogin, sessions.find("bob"));
+        assertEquals("bob", sessions.userName(relogin.getId()));
+        assertEquals(sessions.roomId("room"), index.activeRoom(relogin.getId()));
+        assertEquals(1, index.size(sessions.roomId("room")));
+        assertEquals(1, sessions.members("room"));
+        assertEquals(0, sessions.members("other"));
+    }
+
+    @Test
+    void leaveWithTheOwningConnectionLeaves() {
+        RoomIndex index = new RoomIndex();
+        Connection conn = connection();
+        index.enter(3, conn, 1);
+        assertEquals(Symbols.NONE, index.leave(3, connection()));
+        assertEquals(1, index.leave(3, conn));
+        assertEquals(Symbols.NONE, index.activeRoom(3));
+        assertEquals(0, index.size(1));
+    }
+
+    /**
+     * One user relogs over and over while another lane closes and releases
+     * the sessions it replaced, and a third thread logs other users in and
+     * out. The stale releases must never free the id the live session of
+     * the user holds, or another user would be handed the same id.
+     */
+    @Test
+    void staleReleaseNeverFreesTheIdOfARelogin() throws InterruptedException {
+        SessionRegistry sessions = new SessionRegistry();
+        int rounds = 20_000;
+        BlockingQueue<Session> replaced = new LinkedBlockingQueue<>();
+        Session poison = new Session(-1, connection(), "", false);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<String> failure = new AtomicReference<>();
+        AtomicReference<Session> last = new AtomicReference<>();
+
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(() -> {
+            await(start);
+            for (int i = 0; i < rounds; i++) {
+                Session session = sessions.open(connection(), "bob", false);
+                Session previous = last.getAndSet(session);
+                if (previous != null) replaced.add(previous);
+                if (!"bob".equals(sessions.userName(session.getId()))) {
+                    failure.compareAndSet(null, "bob's id " + session.getId() + " named " + sessions.userName(session.getId()));
+                }
+            }
+            replaced.add(poison);
+        }));
+        threads.add(new Thread(() -> {
+            await(start);
+            try {
+                for (Session old; (old = replaced.take()) != poison;) {
+                    sessions.close(old.getConnection());
+                    sessions.release(old);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        threads.add(new Thread(() -> {
+            await(start);
+            for (int i = 0; i < rounds; i++) {
+                Connection conn = connection();
+                Session other = sessions.open(conn, "other" + (i % 4), false);
+                Session bob = sessions.find("bob");
+                if (bob != null && bob.getId() == other.getId()) failure.compareAndSet(null, "id " + other.getId() + " shared with bob");
+                sessions.close(conn);
+                sessions.release(other);
+            }
+        }));
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread t : threads) t.join();
+
+        assertNull(failure.get());
+        assertSame(last.get(), sessions.find("bob"));
+        assertEquals("bob", sessions.userName(last.get().getId()));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
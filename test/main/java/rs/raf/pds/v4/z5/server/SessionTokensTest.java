@@ -0,0 +1,122 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SessionTokensTest {
+
+    private static final byte[] KEY = new byte[32];
+    private static final long TTL = 60_000;
+
+    @Test
+    void tokenIsValidOnlyForItsUserAndKey() {
+        SessionTokens tokens = new SessionTokens(KEY, TTL);
+        String token = tokens.issue("bob");
+        assertTrue(tokens.verify("bob", token));
+        assertFalse(tokens.verify("alice", token));
+        assertFalse(tokens.verify("bob", token.substring(0, token.length() - 2) + "AA"));
+        assertFalse(tokens.verify("bob", "garbage"));
+        assertFalse(tokens.verify("bob", null));
+
+        byte[] otherKey = new byte[32];
+        otherKey[0] = 1;
+        assertFalse(new SessionTokens(otherKey, TTL).verify("bob", token));
+    }
+
+    @Test
+    void expiredTokenIsRejected() throws InterruptedException {
+        SessionTokens tokens = new SessionTokens(KEY, 20);
+        String token = tokens.issue("bob");
+        Thread.sleep(40);
+        assertFalse(tokens.verify("bob", token));
+    }
+
+    @Test
+    void revokeRejectsEarlierTokensButNotLaterOnes() {
+        SessionTokens tokens = new SessionTokens(KEY, TTL);
+        String old = tokens.issue("bob");
+        String other = tokens.issue("alice");
+        tokens.revoke("bob");
+        // izdat u istoj milisekundi kao opoziv
+        String fresh = tokens.issue("bob");
+
+        assertFalse(tokens.verify("bob", old));
+        assertTrue(tokens.verify("bob", fresh));
+        assertTrue(tokens.verify("alice", other));
+    }
+
+    @Test
+    void revocationSurvivesARestart(@TempDir Path dir) {
+        Path file = dir.resolve("session.revoked");
+        SessionTokens before = new SessionTokens(KEY, TTL, file);
+        String old = before.issue("bob");
+        before.revoke("bob");
+        String fresh = before.issue("bob");
+
+        SessionTokens after = new SessionTokens(KEY, TTL, file);
+        assertFalse(after.verify("bob", old));
+        assertTrue(after.verify("bob", fresh));
+    }
+
+    @Test
+    void expiredRevocationsAreDroppedOnLoad(@TempDir Path dir) throws IOException, InterruptedException {
+        Path file = dir.resolve("session.revoked");
+        new SessionTokens(KEY, 10, file).revoke("bob");
+        new SessionTokens(KEY, 10, file).revoke("alice");
+        Files.writeString(file, "not a line\n", java.nio.file.StandardOpenOption.APPEND);
+        Thread.sleep(20); // prag je milisekundu ispred opoziva
+
+        new SessionTokens(KEY, 10, file);
+        assertTrue(Files.readAllLines(file).isEmpty());
+    }
+
+    /**
+     * Every thread revokes and reissues the tokens of its own user while the
+     * others do the same to theirs. A token issued after the user's revoke
+     * must always verify, and one issued before it never.
+     */
+    @Test
+    void concurrentRevokeAndIssue() throws InterruptedException {
+        SessionTokens tokens = new SessionTokens(KEY, TTL);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            String user = "user" + t;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                String previous = tokens.issue(user);
+                for (int i = 0; i < 5_000; i++) {
+                    tokens.revoke(user);
+                    String token = tokens.issue(user);
+                    if (!tokens.verify(user, token)) failure.compareAndSet(null, "fresh token of " + user + " rejected");
+                    if (tokens.verify(user, previous) && !previous.equals(token)) {
+                        failure.compareAndSet(null, "revoked token of " + user + " accepted");
+                    }
+                    previous = token;
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread t : threads) t.join();
+        assertNull(failure.get());
+    }
+}
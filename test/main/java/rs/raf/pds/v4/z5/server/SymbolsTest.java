@@ -0,0 +1,76 @@
+package main.java.rs.raf.pds.v4.z5.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+class SymbolsTest {
+
+    @Test
+    void releasedIdsAreReused() {
+        Symbols symbols = new Symbols();
+        int a = symbols.intern("a");
+        int b = symbols.intern("b");
+        assertEquals(a, symbols.intern("a"));
+        symbols.release(a);
+        assertEquals(Symbols.NONE, symbols.id("a"));
+        assertNull(symbols.name(a));
+        assertEquals(a, symbols.intern("c"));
+        assertEquals("b", symbols.name(b));
+    }
+
+    /**
+     * Threads intern and release their own names while sharing the id pool.
+     * An id a thread holds must keep naming that thread's name, and no two
+     * live names may ever share an id.
+     */
+    @Test
+    void concurrentInternAndReleaseNeverShareAnId() throws InterruptedException {
+        Symbols symbols = new Symbols();
+        int threads = 8;
+        int rounds = 20_000;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String name = "user" + t;
+            workers.add(new Thread(() -> {
+                await(start);
+                for (int i = 0; i < rounds; i++) {
+                    int id = symbols.intern(name);
+                    if (symbols.id(name) != id) failure.compareAndSet(null, name + " lost id " + id);
+                    if (!name.equals(symbols.name(id))) failure.compareAndSet(null, id + " renamed to " + symbols.name(id));
+                    symbols.release(id);
+                }
+                symbols.intern(name);
+            }));
+        }
+        workers.forEach(Thread::start);
+        start.countDown();
+        for (Thread t : workers) t.join();
+
+        assertNull(failure.get());
+        boolean[] used = new boolean[threads];
+        for (int t = 0; t < threads; t++) {
+            int id = symbols.id("user" + t);
+            assertEquals("user" + t, symbols.name(id));
+            assertEquals(false, used[id], "id " + id + " given twice");
+            used[id] = true;
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}